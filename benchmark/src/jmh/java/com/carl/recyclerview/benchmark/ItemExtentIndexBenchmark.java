@@ -0,0 +1,67 @@
+package com.carl.recyclerview.benchmark;
+
+import com.carl.recyclerview.ItemExtentIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of mapping a fling distance to a target index, and of recording a measurement, in a
+ * carousel of items with mixed widths
+ *
+ * @author carl
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ItemExtentIndexBenchmark extends SampledBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int itemCount;
+
+    private final ItemExtentIndex mIndex = new ItemExtentIndex();
+    private final long[] mOffsets = new long[SAMPLE_COUNT];
+    private final int[] mPositions = new int[SAMPLE_COUNT];
+    private final int[] mExtents = new int[SAMPLE_COUNT];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mIndex.reset(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            mIndex.setExtent(i, 300 + random.nextInt(900));
+        }
+        long total = mIndex.getTotalExtent();
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            mOffsets[i] = (long) (random.nextDouble() * total);
+            mPositions[i] = random.nextInt(itemCount);
+            mExtents[i] = 300 + random.nextInt(900);
+        }
+    }
+
+    @Benchmark
+    public int findIndexNearestTo() {
+        return mIndex.findIndexNearestTo(mOffsets[next()]);
+    }
+
+    @Benchmark
+    public long getStart() {
+        return mIndex.getStart(mPositions[next()]);
+    }
+
+    @Benchmark
+    public long setExtent() {
+        int i = next();
+        mIndex.setExtent(mPositions[i], mExtents[i]);
+        return mIndex.getTotalExtent();
+    }
+}
@@ -0,0 +1,101 @@
+package com.carl.recyclerview.benchmark;
+
+import com.carl.recyclerview.ListDiff;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of diffing a refresh of a 10k items list that inserts, removes and changes a few items,
+ * which is what AsyncListUpdater spends off the main thread
+ *
+ * @author carl
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListDiffBenchmark {
+
+    private static final int ITEM_COUNT = 10000;
+
+    @Param({"10", "100"})
+    public int editCount;
+
+    private int[] mOldIds;
+    private int[] mNewIds;
+    private int[] mNewContents;
+    private ListDiff.Callback mCallback;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mOldIds = new int[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            mOldIds[i] = i;
+        }
+        // Every edit removes an item, inserts another elsewhere and changes a third
+        boolean[] removed = new boolean[ITEM_COUNT];
+        for (int e = 0; e < editCount; e++) {
+            removed[random.nextInt(ITEM_COUNT)] = true;
+        }
+        int[] ids = new int[ITEM_COUNT + editCount];
+        int size = 0;
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            if (!removed[i]) {
+                ids[size++] = i;
+            }
+        }
+        for (int e = 0; e < editCount; e++) {
+            int position = random.nextInt(size + 1);
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = ITEM_COUNT + e;
+            size++;
+        }
+        mNewIds = Arrays.copyOf(ids, size);
+        mNewContents = new int[size];
+        for (int e = 0; e < editCount; e++) {
+            mNewContents[random.nextInt(size)] = 1;
+        }
+        mCallback = new ListDiff.Callback() {
+            @Override
+            public int getOldListSize() {
+                return mOldIds.length;
+            }
+
+            @Override
+            public int getNewListSize() {
+                return mNewIds.length;
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return mOldIds[oldPosition] == mNewIds[newPosition];
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return mNewContents[newPosition] == 0;
+            }
+        };
+    }
+
+    @Benchmark
+    public ListDiff calculate() {
+        return ListDiff.calculate(mCallback, false);
+    }
+
+    @Benchmark
+    public ListDiff calculateDetectingMoves() {
+        return ListDiff.calculate(mCallback, true);
+    }
+}
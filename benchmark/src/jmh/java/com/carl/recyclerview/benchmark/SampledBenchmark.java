@@ -0,0 +1,22 @@
+package com.carl.recyclerview.benchmark;
+
+/**
+ * Base of benchmarks that cycle through a ring of {@link #SAMPLE_COUNT} inputs generated in
+ * setup, so that the measured calls see varied inputs without paying for generating them
+ *
+ * @author carl
+ */
+public abstract class SampledBenchmark {
+
+    protected static final int SAMPLE_COUNT = 1024;
+    private static final int SAMPLE_MASK = SAMPLE_COUNT - 1;
+
+    private int mSample;
+
+    /**
+     * @return index of the next input in the ring
+     */
+    protected final int next() {
+        return mSample++ & SAMPLE_MASK;
+    }
+}
@@ -0,0 +1,80 @@
+package com.carl.recyclerview.benchmark;
+
+import com.carl.recyclerview.ItemExtentIndex;
+import com.carl.recyclerview.SnapMath;
+import com.carl.recyclerview.SplineFlingModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-fling cost of computing the fling target as the layout manager does: the scroller speed
+ * from {@link SnapMath}, the distance from {@link SplineFlingModel} and the target from
+ * {@link ItemExtentIndex}, and of the {@link SnapMath} fallback used before any item is measured
+ *
+ * @author carl
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SnapMathBenchmark extends SampledBenchmark {
+
+    private static final int DENSITY_DPI = 480;
+    private static final int ITEM_COUNT = 10000;
+    private static final int CHILD_WIDTH = 900;
+    private static final int PARENT_WIDTH = 1080;
+    private static final int FIRST = ITEM_COUNT / 2;
+
+    private final int[] mVelocities = new int[SAMPLE_COUNT];
+    private final int[] mDistances = new int[SAMPLE_COUNT];
+    private final int[] mViewStarts = new int[SAMPLE_COUNT];
+    private final SplineFlingModel mFlingModel = SplineFlingModel.forDensity(DENSITY_DPI);
+    private final ItemExtentIndex mExtentIndex = new ItemExtentIndex();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mExtentIndex.reset(ITEM_COUNT);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            mExtentIndex.setExtent(i, CHILD_WIDTH);
+        }
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            // Fling velocities between -24000 and 24000 px/s, never zero
+            int velocity = random.nextInt(24000) + 1;
+            mVelocities[i] = random.nextBoolean() ? velocity : -velocity;
+            mDistances[i] = (int) mFlingModel.getDistance(mVelocities[i]);
+            mViewStarts[i] = random.nextInt(PARENT_WIDTH * 2) - PARENT_WIDTH;
+        }
+    }
+
+    @Benchmark
+    public void computeScrollToItemIndex(Blackhole blackhole) {
+        int i = next();
+        int velocity = mVelocities[i];
+        blackhole.consume(SnapMath.computeScrollerSpeed(DENSITY_DPI, velocity, 0.7F));
+        int distance = (int) mFlingModel.getDistance(velocity);
+        long scrollOffset = mExtentIndex.getStart(FIRST) - mViewStarts[i];
+        blackhole.consume(mExtentIndex.findIndexNearestTo(scrollOffset + distance));
+    }
+
+    @Benchmark
+    public int computeTargetIndexFallback() {
+        int i = next();
+        return SnapMath.computeTargetIndex(FIRST, mViewStarts[i], CHILD_WIDTH, mDistances[i],
+                ITEM_COUNT);
+    }
+
+    @Benchmark
+    public float convertPixelPerSecondToMillisPerInch() {
+        return SnapMath.convertPixelPerSecondToMillisPerInch(DENSITY_DPI, mVelocities[next()]);
+    }
+}
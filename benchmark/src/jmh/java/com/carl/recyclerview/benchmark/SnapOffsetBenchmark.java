@@ -0,0 +1,50 @@
+package com.carl.recyclerview.benchmark;
+
+import com.carl.recyclerview.SnapMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link SnapMath#calculateDtToFit(int, int, int, int, int)}, run by the snapping
+ * scroller for every snap, with each snap method
+ *
+ * @author carl
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SnapOffsetBenchmark extends SampledBenchmark {
+
+    private static final int CHILD_WIDTH = 900;
+    private static final int PARENT_WIDTH = 1080;
+
+    @Param({"0", "1", "2", "3"})
+    public int snapMethod;
+
+    private final int[] mViewStarts = new int[SAMPLE_COUNT];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            mViewStarts[i] = random.nextInt(PARENT_WIDTH * 2) - PARENT_WIDTH;
+        }
+    }
+
+    @Benchmark
+    public int calculateDtToFit() {
+        int viewStart = mViewStarts[next()];
+        return SnapMath.calculateDtToFit(viewStart, viewStart + CHILD_WIDTH, 0, PARENT_WIDTH,
+                snapMethod);
+    }
+}
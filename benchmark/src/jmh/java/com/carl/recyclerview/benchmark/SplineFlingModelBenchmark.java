@@ -0,0 +1,63 @@
+package com.carl.recyclerview.benchmark;
+
+import com.carl.recyclerview.SplineFlingModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-fling cost of the table lookups of {@link SplineFlingModel}, compared to evaluating the
+ * spline formulas directly
+ *
+ * @author carl
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SplineFlingModelBenchmark extends SampledBenchmark {
+
+    private static final int DENSITY_DPI = 480;
+    private static final double DECELERATION_RATE = Math.log(0.78D) / Math.log(0.9D);
+    private static final double FRICTION_COEFF =
+            0.015D * 9.80665D * 39.37D * DENSITY_DPI * 0.84D;
+
+    private final SplineFlingModel mModel = SplineFlingModel.forDensity(DENSITY_DPI);
+    private final float[] mVelocities = new float[SAMPLE_COUNT];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            mVelocities[i] = random.nextInt(24000) + 1;
+        }
+    }
+
+    @Benchmark
+    public float lookUpDistanceAndDuration() {
+        float velocity = mVelocities[next()];
+        return mModel.getDistance(velocity) + mModel.getDuration(velocity);
+    }
+
+    @Benchmark
+    public double evaluateFormulas() {
+        float velocity = mVelocities[next()];
+        double deceleration = Math.log(0.35D * velocity / FRICTION_COEFF);
+        double distance = FRICTION_COEFF
+                * Math.exp(DECELERATION_RATE / (DECELERATION_RATE - 1D) * deceleration);
+        double duration = 1000D * Math.exp(deceleration / (DECELERATION_RATE - 1D));
+        return distance + duration;
+    }
+
+    @Benchmark
+    public float lookUpPosition() {
+        return SplineFlingModel.getPosition((next() + 0.5F) / SAMPLE_COUNT);
+    }
+}
@@ -0,0 +1,63 @@
+package com.carl.recyclerview.benchmark;
+
+import com.carl.recyclerview.MathUtils;
+import com.carl.recyclerview.SwipeDecision;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the swipe commit decision made when the finger lifts, and of {@link MathUtils#lerp}
+ * which runs for every animated property on every frame
+ *
+ * @author carl
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SwipeDecisionBenchmark extends SampledBenchmark {
+
+    private static final float DENSITY = 3F;
+    private static final float PARENT_HEIGHT = 1920F;
+
+    private final float[] mVelocities = new float[SAMPLE_COUNT];
+    private final float[] mDistances = new float[SAMPLE_COUNT];
+    private final float[] mProgresses = new float[SAMPLE_COUNT];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            mVelocities[i] = (random.nextFloat() - 0.5F) * 2F * 6000F;
+            mDistances[i] = (random.nextFloat() - 0.5F) * 2F * PARENT_HEIGHT;
+            mProgresses[i] = random.nextFloat();
+        }
+    }
+
+    @Benchmark
+    public boolean shouldCommit() {
+        int i = next();
+        return SwipeDecision.shouldCommit(mVelocities[i], DENSITY, mDistances[i], PARENT_HEIGHT,
+                800F, 0.4F);
+    }
+
+    @Benchmark
+    public float lerpFloat() {
+        int i = next();
+        return MathUtils.lerp(mDistances[i], 0F, mProgresses[i]);
+    }
+
+    @Benchmark
+    public double lerpDouble() {
+        int i = next();
+        return MathUtils.lerp((double) mDistances[i], 0D, (double) mProgresses[i]);
+    }
+}
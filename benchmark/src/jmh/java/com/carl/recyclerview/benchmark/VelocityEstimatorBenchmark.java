@@ -0,0 +1,54 @@
+package com.carl.recyclerview.benchmark;
+
+import com.carl.recyclerview.VelocityEstimator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of feeding a touch sample to {@link VelocityEstimator}, which happens for every move event
+ * of a swipe, and of the least squares fit made when the finger lifts
+ *
+ * @author carl
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VelocityEstimatorBenchmark {
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 8;
+
+    private final VelocityEstimator mEstimator = new VelocityEstimator();
+    private long mTime;
+    private float mY;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < 20; i++) {
+            addSample();
+        }
+    }
+
+    private void addSample() {
+        mTime += SAMPLE_INTERVAL_MILLIS;
+        mY += 12F;
+        mEstimator.addSample(0, mTime, 0F, mY);
+    }
+
+    @Benchmark
+    public void feedSample() {
+        addSample();
+    }
+
+    @Benchmark
+    public float computeVelocity() {
+        return mEstimator.getYVelocity(0);
+    }
+}
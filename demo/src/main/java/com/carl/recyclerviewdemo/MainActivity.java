@@ -14,13 +14,15 @@ import android.widget.TextView;
 
 import com.carl.recyclerview.SnappingSwipingViewBuilder;
 import com.carl.recyclerview.SnappyLinearLayoutManager;
+import com.carl.recyclerview.SwipeBatch;
 import com.carl.recyclerview.SwipeGestureHelper;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-public class MainActivity extends AppCompatActivity implements SwipeGestureHelper.OnSwipeListener {
+public class MainActivity extends AppCompatActivity
+        implements SwipeGestureHelper.OnBatchSwipeListener {
     static final String[] TEST_STRINGS = {"ONE", "TWO", "THREE", "FOUR", "FIVE", "SIX",
             "SEVEN", "EIGHT", "NINE", "TEN", "ELEVEN", "TWELVE"};
     private static final String TAG = "MainActivity";
@@ -40,7 +42,7 @@ public class MainActivity extends AppCompatActivity implements SwipeGestureHelpe
                 .setAdapter(mAdapter)
                 .setHeadTailExtraMarginDp(17F)
                 .setItemMarginDp(8F, 20F, 8F, 20F)
-                .setOnSwipeListener(this)
+                .setOnBatchSwipeListener(this)
                 .setSnapMethod(SnappyLinearLayoutManager.SnappyLinearSmoothScroller.SNAP_CENTER)
                 .build();
 
@@ -52,8 +54,10 @@ public class MainActivity extends AppCompatActivity implements SwipeGestureHelpe
     }
 
     @Override
-    public void onSwipe(RecyclerView rv, int adapterPosition, float dy) {
-        mAdapter.removeItem(adapterPosition);
+    public void onBatchSwipe(RecyclerView rv, SwipeBatch batch) {
+        for (int i = 0; i < batch.getRangeCount(); i++) {
+            mAdapter.removeItems(batch.getRangeStart(i), batch.getRangeItemCount(i));
+        }
         rv.invalidateItemDecorations();
     }
 
@@ -74,9 +78,9 @@ public class MainActivity extends AppCompatActivity implements SwipeGestureHelpe
             this.mDataSet = dataSet;
         }
 
-        public void removeItem(int adapterPos) {
-            mDataSet.remove(adapterPos);
-            notifyItemRemoved(adapterPos);
+        public void removeItems(int positionStart, int itemCount) {
+            mDataSet.subList(positionStart, positionStart + itemCount).clear();
+            notifyItemRangeRemoved(positionStart, itemCount);
         }
 
         @Override
@@ -0,0 +1,284 @@
+package com.carl.recyclerview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v4.os.TraceCompat;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps the list of an adapter and replaces it with the lists submitted to
+ * {@link #submitList(List)}: the difference of the current and the new list is calculated by
+ * {@link ListDiff} on a background executor, then the new list is set and the adapter notified of
+ * the inserted, removed, moved and changed items only, so that a refresh rebinds changed items
+ * instead of all of them.
+ * <p>
+ * When attached to a RecyclerView laid out by {@link SnappyLinearLayoutManager}, the snapped item
+ * stays under the snapping anchor through the update, wherever it moved in the list. If it was
+ * removed, the layout manager keeps its own anchor.
+ * <p>
+ * Submitted lists are read from the background thread, they must not be modified afterwards.
+ * The adapter reads items through {@link #getCurrentList()}:
+ * <pre>
+ * public int getItemCount() {
+ *     return mUpdater.getCurrentList().size();
+ * }
+ * </pre>
+ *
+ * @author carl
+ */
+public class AsyncListUpdater<T> {
+
+    private static final String TAG = "AsyncListUpdater";
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    private static final String TRACE_DISPATCH = "AsyncListUpdater.dispatch";
+    private static Executor sDefaultExecutor;
+
+    private final RecyclerView.Adapter mAdapter;
+    private final ItemCallback<T> mItemCallback;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private Executor mExecutor;
+    private RecyclerView mRecyclerView;
+    private boolean mDetectMoves = true;
+    private List<T> mList = Collections.emptyList();
+    /*
+     * Incremented on every submission, so that a stale difference is dropped
+     */
+    private int mGeneration;
+    private OnListUpdatedListener<T> mOnListUpdatedListener;
+
+    /**
+     * @param adapter the adapter to notify, which reads its items from {@link #getCurrentList()}
+     * @param itemCallback compares the items of the lists
+     */
+    public AsyncListUpdater(RecyclerView.Adapter adapter, ItemCallback<T> itemCallback) {
+        mAdapter = adapter;
+        mItemCallback = itemCallback;
+    }
+
+    /**
+     * Keeps the snapped item of given RecyclerView in place through updates, pass null to detach
+     * @return this for chaining calls
+     */
+    public AsyncListUpdater<T> attachToRecyclerView(RecyclerView rv) {
+        mRecyclerView = rv;
+        return this;
+    }
+
+    /**
+     * Sets the executor calculating differences, a shared background thread by default
+     * @return this for chaining calls
+     */
+    public AsyncListUpdater<T> setExecutor(Executor executor) {
+        mExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Sets whether items that changed places are notified as moves, true by default. Detecting
+     * moves costs a search of the inserted items for every removed one.
+     * @return this for chaining calls
+     */
+    public AsyncListUpdater<T> setDetectMoves(boolean detectMoves) {
+        mDetectMoves = detectMoves;
+        return this;
+    }
+
+    /**
+     * Sets the listener called on the main thread once a submitted list is the current one
+     * @return this for chaining calls
+     */
+    public AsyncListUpdater<T> setOnListUpdatedListener(OnListUpdatedListener<T> listener) {
+        mOnListUpdatedListener = listener;
+        return this;
+    }
+
+    /**
+     * @return the list the adapter currently shows, not to be modified
+     */
+    public List<T> getCurrentList() {
+        return mList;
+    }
+
+    /**
+     * Replaces the current list with given one, must be called on the main thread. Lists from
+     * the first one and to an empty one are set at once, others once their difference with the
+     * current list is calculated. A list submitted while a difference is calculated supersedes
+     * the pending one.
+     * @param newList the new list, null for an empty one
+     */
+    public void submitList(List<T> newList) {
+        if (newList == null) {
+            newList = Collections.emptyList();
+        }
+        if (newList == mList) {
+            return;
+        }
+        final int generation = ++mGeneration;
+        final List<T> oldList = mList;
+        if (oldList.isEmpty() || newList.isEmpty()) {
+            mList = newList;
+            if (!oldList.isEmpty()) {
+                mAdapter.notifyItemRangeRemoved(0, oldList.size());
+            } else if (!newList.isEmpty()) {
+                mAdapter.notifyItemRangeInserted(0, newList.size());
+            }
+            notifyListUpdated();
+            return;
+        }
+        final List<T> submitted = newList;
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final long start = DEBUG ? System.nanoTime() : 0;
+                final ListDiff diff = ListDiff.calculate(new ListDiff.Callback() {
+                    @Override
+                    public int getOldListSize() {
+                        return oldList.size();
+                    }
+
+                    @Override
+                    public int getNewListSize() {
+                        return submitted.size();
+                    }
+
+                    @Override
+                    public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                        return mItemCallback.areItemsTheSame(oldList.get(oldPosition),
+                                submitted.get(newPosition));
+                    }
+
+                    @Override
+                    public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                        return mItemCallback.areContentsTheSame(oldList.get(oldPosition),
+                                submitted.get(newPosition));
+                    }
+                }, mDetectMoves);
+                if (DEBUG) {
+                    Log.d(TAG, String.format("diffed %d to %d items in %dus", oldList.size(),
+                            submitted.size(), (System.nanoTime() - start) / 1000));
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            dispatch(submitted, diff);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void dispatch(List<T> newList, ListDiff diff) {
+        TraceCompat.beginSection(TRACE_DISPATCH);
+        try {
+            SnappyLinearLayoutManager.SavedState snapState = null;
+            SnappyLinearLayoutManager lm = getIdleLayoutManager();
+            if (lm != null) {
+                snapState = lm.captureSnappedItem();
+            }
+            mList = newList;
+            diff.dispatchUpdatesTo(new ListDiff.UpdateCallback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    mAdapter.notifyItemRangeInserted(position, count);
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                    mAdapter.notifyItemRangeRemoved(position, count);
+                }
+
+                @Override
+                public void onMoved(int fromPosition, int toPosition) {
+                    mAdapter.notifyItemMoved(fromPosition, toPosition);
+                }
+
+                @Override
+                public void onChanged(int position, int count) {
+                    mAdapter.notifyItemRangeChanged(position, count);
+                }
+            });
+            if (snapState != null && snapState.getSnapIndex() < diff.getOldListSize()) {
+                int position = diff.convertOldPositionToNew(snapState.getSnapIndex());
+                if (position != ListDiff.NO_POSITION) {
+                    lm.keepSnappedItem(snapState, position);
+                }
+            }
+            notifyListUpdated();
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /*
+     * The layout manager of the attached RecyclerView, unless it's scrolling on its own
+     */
+    private SnappyLinearLayoutManager getIdleLayoutManager() {
+        if (mRecyclerView == null || mRecyclerView.getAdapter() != mAdapter
+                || mRecyclerView.getScrollState() != RecyclerView.SCROLL_STATE_IDLE
+                || !(mRecyclerView.getLayoutManager() instanceof SnappyLinearLayoutManager)) {
+            return null;
+        }
+        return (SnappyLinearLayoutManager) mRecyclerView.getLayoutManager();
+    }
+
+    private void notifyListUpdated() {
+        if (mOnListUpdatedListener != null) {
+            mOnListUpdatedListener.onListUpdated(mList);
+        }
+    }
+
+    private Executor getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = getDefaultExecutor();
+        }
+        return mExecutor;
+    }
+
+    private static synchronized Executor getDefaultExecutor() {
+        if (sDefaultExecutor == null) {
+            sDefaultExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, TAG);
+                }
+            });
+        }
+        return sDefaultExecutor;
+    }
+
+    /**
+     * Compares items of the lists, called on the background executor
+     */
+    public abstract static class ItemCallback<T> {
+        /**
+         * @return whether the two items stand for the same entity, usually by comparing ids
+         */
+        public abstract boolean areItemsTheSame(T oldItem, T newItem);
+
+        /**
+         * Only called for items that are the same
+         * @return whether the two items show the same, so that the old one needs no rebind
+         */
+        public abstract boolean areContentsTheSame(T oldItem, T newItem);
+    }
+
+    public interface OnListUpdatedListener<T> {
+        void onListUpdated(List<T> list);
+    }
+}
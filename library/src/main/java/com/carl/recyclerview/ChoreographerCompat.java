@@ -0,0 +1,110 @@
+package com.carl.recyclerview;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+/**
+ * Wrapper of {@link Choreographer} that falls back to posting on a {@link Handler} every frame
+ * interval on API levels that don't have it. Frame callbacks cache their platform counterparts,
+ * so posting the same callback again allocates nothing.
+ *
+ * @author carl
+ */
+abstract class ChoreographerCompat {
+
+    private static final long FALLBACK_FRAME_DELAY_MILLIS = 16;
+    private static final boolean HAS_CHOREOGRAPHER =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+
+    private static ChoreographerCompat sInstance;
+
+    /**
+     * @return the instance for the main thread, must be called on the main thread
+     */
+    static ChoreographerCompat getInstance() {
+        if (sInstance == null) {
+            sInstance = HAS_CHOREOGRAPHER ? new PlatformChoreographer()
+                    : new HandlerChoreographer();
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return true if frame times reported to callbacks are real vsync times
+     */
+    static boolean isVsyncAligned() {
+        return HAS_CHOREOGRAPHER;
+    }
+
+    abstract void postFrameCallback(FrameCallback callback);
+
+    abstract void removeFrameCallback(FrameCallback callback);
+
+    abstract static class FrameCallback {
+        private Choreographer.FrameCallback mFrameCallback;
+        private Runnable mRunnable;
+
+        /**
+         * @param frameTimeNanos the time the frame started rendering, in
+         *                       {@link System#nanoTime()} time base
+         */
+        abstract void doFrame(long frameTimeNanos);
+
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+        Choreographer.FrameCallback getFrameCallback() {
+            if (mFrameCallback == null) {
+                mFrameCallback = new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        FrameCallback.this.doFrame(frameTimeNanos);
+                    }
+                };
+            }
+            return mFrameCallback;
+        }
+
+        Runnable getRunnable() {
+            if (mRunnable == null) {
+                mRunnable = new Runnable() {
+                    @Override
+                    public void run() {
+                        doFrame(System.nanoTime());
+                    }
+                };
+            }
+            return mRunnable;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class PlatformChoreographer extends ChoreographerCompat {
+        private final Choreographer mChoreographer = Choreographer.getInstance();
+
+        @Override
+        void postFrameCallback(FrameCallback callback) {
+            mChoreographer.postFrameCallback(callback.getFrameCallback());
+        }
+
+        @Override
+        void removeFrameCallback(FrameCallback callback) {
+            mChoreographer.removeFrameCallback(callback.getFrameCallback());
+        }
+    }
+
+    private static class HandlerChoreographer extends ChoreographerCompat {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        void postFrameCallback(FrameCallback callback) {
+            mHandler.postDelayed(callback.getRunnable(), FALLBACK_FRAME_DELAY_MILLIS);
+        }
+
+        @Override
+        void removeFrameCallback(FrameCallback callback) {
+            mHandler.removeCallbacks(callback.getRunnable());
+        }
+    }
+}
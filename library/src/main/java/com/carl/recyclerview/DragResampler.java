@@ -0,0 +1,162 @@
+package com.carl.recyclerview;
+
+import android.view.MotionEvent;
+
+/**
+ * Coalesces the move events of a drag into one position update per frame. Positions of the
+ * tracked pointer, including historical samples of each event, are buffered and resampled at the
+ * frame time: interpolated between the two samples around it, or extrapolated from the last two
+ * samples when touch input lags behind the display. Views are then moved once per frame to where
+ * the finger is when the frame is shown, no matter how fast the touch panel reports.
+ *
+ * @author carl
+ */
+class DragResampler {
+
+    /*
+     * Samples are resampled this long before the frame time, so that most frames interpolate
+     * between two real samples
+     */
+    private static final long RESAMPLE_LATENCY_MILLIS = 5;
+    /*
+     * Limits of extrapolation, and the shortest sample interval to extrapolate from
+     */
+    private static final long MAX_PREDICTION_MILLIS = 8;
+    private static final long MIN_INTERVAL_MILLIS = 2;
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final int HISTORY_SIZE = 8;
+
+    private final Callback mCallback;
+    private final long[] mTimes = new long[HISTORY_SIZE];
+    private final float[] mXs = new float[HISTORY_SIZE];
+    private final float[] mYs = new float[HISTORY_SIZE];
+    private int mHead;
+    private int mSize;
+    private int mPointerId = MotionEvent.INVALID_POINTER_ID;
+    private boolean mFrameCallbackPosted;
+    private final ChoreographerCompat.FrameCallback mFrameCallback =
+            new ChoreographerCompat.FrameCallback() {
+                @Override
+                void doFrame(long frameTimeNanos) {
+                    mFrameCallbackPosted = false;
+                    onFrame(frameTimeNanos / NANOS_PER_MILLI);
+                }
+            };
+
+    DragResampler(Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Starts tracking a pointer, forgetting samples of the previous drag
+     * @param pointerId id of the pointer that drags
+     */
+    void start(int pointerId) {
+        stop();
+        mPointerId = pointerId;
+    }
+
+    /**
+     * Stops tracking, no more updates are delivered
+     */
+    void stop() {
+        if (mFrameCallbackPosted) {
+            ChoreographerCompat.getInstance().removeFrameCallback(mFrameCallback);
+            mFrameCallbackPosted = false;
+        }
+        mPointerId = MotionEvent.INVALID_POINTER_ID;
+        mSize = 0;
+    }
+
+    boolean isStarted() {
+        return mPointerId != MotionEvent.INVALID_POINTER_ID;
+    }
+
+    /**
+     * Buffers the samples of the tracked pointer in given event, an update is delivered with
+     * the next frame
+     */
+    void addMovement(MotionEvent e) {
+        int pointerIndex = e.findPointerIndex(mPointerId);
+        if (pointerIndex < 0) {
+            return;
+        }
+        int historySize = e.getHistorySize();
+        for (int h = 0; h < historySize; h++) {
+            addSample(e.getHistoricalEventTime(h), e.getHistoricalX(pointerIndex, h),
+                    e.getHistoricalY(pointerIndex, h));
+        }
+        addSample(e.getEventTime(), e.getX(pointerIndex), e.getY(pointerIndex));
+        if (!mFrameCallbackPosted) {
+            mFrameCallbackPosted = true;
+            ChoreographerCompat.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    /**
+     * Delivers the latest real sample right away, for example when the finger lifts and the
+     * final position matters more than smoothness
+     */
+    void flush() {
+        if (mSize > 0) {
+            mCallback.onDragUpdate(mXs[mHead], mYs[mHead]);
+        }
+    }
+
+    private void addSample(long timeMillis, float x, float y) {
+        mHead = mSize == 0 ? 0 : (mHead + 1) % HISTORY_SIZE;
+        mTimes[mHead] = timeMillis;
+        mXs[mHead] = x;
+        mYs[mHead] = y;
+        mSize = Math.min(mSize + 1, HISTORY_SIZE);
+    }
+
+    private void onFrame(long frameTimeMillis) {
+        if (mSize == 0) {
+            return;
+        }
+        long sampleTime = frameTimeMillis - RESAMPLE_LATENCY_MILLIS;
+        int latest = mHead;
+        if (mSize == 1) {
+            mCallback.onDragUpdate(mXs[latest], mYs[latest]);
+            return;
+        }
+        int previous = (latest + HISTORY_SIZE - 1) % HISTORY_SIZE;
+        if (mTimes[latest] >= sampleTime) {
+            // Find the two samples around the sample time and interpolate
+            int older = previous;
+            int newer = latest;
+            for (int i = 2; i < mSize && mTimes[older] > sampleTime; i++) {
+                newer = older;
+                older = (older + HISTORY_SIZE - 1) % HISTORY_SIZE;
+            }
+            long interval = mTimes[newer] - mTimes[older];
+            float fraction = interval <= 0 ? 1F
+                    : (float) (sampleTime - mTimes[older]) / interval;
+            fraction = Math.max(0F, Math.min(1F, fraction));
+            deliver(older, newer, fraction);
+        } else {
+            // Touch input lags behind, predict a little from the last two samples
+            long interval = mTimes[latest] - mTimes[previous];
+            if (interval < MIN_INTERVAL_MILLIS) {
+                mCallback.onDragUpdate(mXs[latest], mYs[latest]);
+                return;
+            }
+            long prediction = Math.min(sampleTime - mTimes[latest],
+                    Math.min(interval / 2, MAX_PREDICTION_MILLIS));
+            deliver(previous, latest, 1F + (float) prediction / interval);
+        }
+    }
+
+    private void deliver(int from, int to, float fraction) {
+        mCallback.onDragUpdate(MathUtils.lerp(mXs[from], mXs[to], fraction),
+                MathUtils.lerp(mYs[from], mYs[to], fraction));
+    }
+
+    interface Callback {
+        /**
+         * Called at most once per frame with the resampled position of the dragging pointer
+         */
+        void onDragUpdate(float x, float y);
+    }
+}
@@ -0,0 +1,136 @@
+package com.carl.recyclerview;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket histogram of durations with 1ms resolution. Recording is lock-free and allocation
+ * free, so it could be done on every frame, while percentiles could be read from any thread.
+ *
+ * @author carl
+ */
+public class FrameHistogram {
+
+    /**
+     * Durations of this many milliseconds or longer all fall into the last bucket
+     */
+    public static final int MAX_TRACKED_MILLIS = 128;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(MAX_TRACKED_MILLIS + 1);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotalNanos = new AtomicLong();
+    private final AtomicLong mDroppedFrames = new AtomicLong();
+    private volatile long mFrameIntervalNanos;
+
+    /**
+     * @param frameIntervalNanos expected duration of a frame, used to count dropped frames
+     */
+    public FrameHistogram(long frameIntervalNanos) {
+        mFrameIntervalNanos = frameIntervalNanos;
+    }
+
+    public long getFrameIntervalNanos() {
+        return mFrameIntervalNanos;
+    }
+
+    public void setFrameIntervalNanos(long frameIntervalNanos) {
+        mFrameIntervalNanos = frameIntervalNanos;
+    }
+
+    /**
+     * Records a duration
+     * @param durationNanos the duration in nanoseconds
+     */
+    public void record(long durationNanos) {
+        if (durationNanos < 0) {
+            return;
+        }
+        int bucket = (int) Math.min(durationNanos / NANOS_PER_MILLI, MAX_TRACKED_MILLIS);
+        mBuckets.incrementAndGet(bucket);
+        mCount.incrementAndGet();
+        mTotalNanos.addAndGet(durationNanos);
+        long interval = mFrameIntervalNanos;
+        if (interval > 0 && durationNanos > interval + interval / 2) {
+            // Number of vsyncs that passed without a new frame
+            mDroppedFrames.addAndGet((durationNanos + interval / 2) / interval - 1);
+        }
+    }
+
+    /**
+     * @return number of recorded durations
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * @return number of frames that were skipped, assuming recorded durations are frame
+     * durations
+     */
+    public long getDroppedFrames() {
+        return mDroppedFrames.get();
+    }
+
+    /**
+     * @return the mean of recorded durations in milliseconds, 0 if nothing has been recorded
+     */
+    public float getMeanMillis() {
+        long count = mCount.get();
+        return count == 0 ? 0 : (float) mTotalNanos.get() / count / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Gets a percentile of recorded durations, precise to the resolution of buckets
+     * @param percentile the percentile in range (0, 100], 50 for the median
+     * @return upper bound of the bucket the percentile falls in, in milliseconds, or 0 if
+     * nothing has been recorded
+     */
+    public int getPercentileMillis(float percentile) {
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(count * (double) percentile / 100D);
+        long cumulative = 0;
+        for (int i = 0; i <= MAX_TRACKED_MILLIS; i++) {
+            cumulative += mBuckets.get(i);
+            if (cumulative >= threshold) {
+                return i + 1;
+            }
+        }
+        return MAX_TRACKED_MILLIS + 1;
+    }
+
+    public int getP50Millis() {
+        return getPercentileMillis(50);
+    }
+
+    public int getP90Millis() {
+        return getPercentileMillis(90);
+    }
+
+    public int getP99Millis() {
+        return getPercentileMillis(99);
+    }
+
+    public void reset() {
+        for (int i = 0; i <= MAX_TRACKED_MILLIS; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mTotalNanos.set(0);
+        mDroppedFrames.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "FrameHistogram{" +
+                "count=" + getCount() +
+                ", p50=" + getP50Millis() +
+                "ms, p90=" + getP90Millis() +
+                "ms, p99=" + getP99Millis() +
+                "ms, dropped=" + getDroppedFrames() +
+                '}';
+    }
+}
@@ -0,0 +1,243 @@
+package com.carl.recyclerview;
+
+import android.content.Context;
+import android.support.annotation.IntDef;
+import android.support.v7.widget.RecyclerView;
+import android.view.WindowManager;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records frame durations of a {@link SnappyRecyclerView} into a {@link FrameHistogram} per
+ * interaction phase: dragging, flinging, long pressing an item view and playing swipe
+ * animations. Frame callbacks are only posted while one of the phases is active, so the monitor
+ * costs nothing while the list is idle. Frame times come from {@link android.view.Choreographer},
+ * nothing is recorded on API levels before 16.
+ *
+ * @author carl
+ */
+public class FrameMonitor implements SwipeGestureHelper.OnSwipeStateChangeListener {
+
+    @IntDef({PHASE_IDLE, PHASE_DRAGGING, PHASE_FLINGING, PHASE_SWIPE_LONG_PRESS,
+            PHASE_SWIPE_ANIMATION})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Phase {
+    }
+
+    public static final int PHASE_IDLE = 0;
+    /**
+     * The user is dragging the list
+     */
+    public static final int PHASE_DRAGGING = 1;
+    /**
+     * The list is settling, usually snapping to a fling target
+     */
+    public static final int PHASE_FLINGING = 2;
+    /**
+     * The user is long pressing or dragging an item view
+     */
+    public static final int PHASE_SWIPE_LONG_PRESS = 3;
+    /**
+     * Item views are animating out or recovering
+     */
+    public static final int PHASE_SWIPE_ANIMATION = 4;
+    private static final int PHASE_COUNT = 5;
+
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+    private final FrameHistogram[] mHistograms = new FrameHistogram[PHASE_COUNT];
+    private final List<Listener> mListeners = new ArrayList<>();
+    private final RecyclerView.OnScrollListener mOnScrollListener =
+            new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                    onSourceStateChanged();
+                }
+            };
+    private final ChoreographerCompat.FrameCallback mFrameCallback =
+            new ChoreographerCompat.FrameCallback() {
+                @Override
+                void doFrame(long frameTimeNanos) {
+                    onFrame(frameTimeNanos);
+                }
+            };
+
+    private RecyclerView mRecyclerView;
+    private SwipeGestureHelper mSwipeGestureHelper;
+    private int mPhase = PHASE_IDLE;
+    private boolean mFrameCallbackPosted;
+    private long mLastFrameTimeNanos;
+
+    public FrameMonitor() {
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            mHistograms[i] = new FrameHistogram(DEFAULT_FRAME_INTERVAL_NANOS);
+        }
+    }
+
+    /**
+     * Starts monitoring scrolling and flinging of given RecyclerView
+     * @param rv the RecyclerView to monitor
+     */
+    public void attachToRecyclerView(RecyclerView rv) {
+        if (mRecyclerView != null) {
+            mRecyclerView.removeOnScrollListener(mOnScrollListener);
+        }
+        mRecyclerView = rv;
+        if (rv != null) {
+            rv.addOnScrollListener(mOnScrollListener);
+            setFrameIntervalNanos(getFrameIntervalNanos(rv.getContext()));
+        }
+        onSourceStateChanged();
+    }
+
+    /**
+     * Starts monitoring swipe gestures and animations of given helper
+     * @param helper the helper to monitor
+     */
+    public void attachToSwipeGestureHelper(SwipeGestureHelper helper) {
+        if (mSwipeGestureHelper != null) {
+            mSwipeGestureHelper.removeOnSwipeStateChangeListener(this);
+        }
+        mSwipeGestureHelper = helper;
+        if (helper != null) {
+            helper.addOnSwipeStateChangeListener(this);
+        }
+        onSourceStateChanged();
+    }
+
+    /**
+     * Stops monitoring, recorded histograms are kept
+     */
+    public void detach() {
+        attachToRecyclerView(null);
+        attachToSwipeGestureHelper(null);
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @param phase one of the PHASE_ constants except {@link #PHASE_IDLE}
+     * @return the histogram of frame durations recorded in given phase
+     */
+    public FrameHistogram getHistogram(@Phase int phase) {
+        return mHistograms[phase];
+    }
+
+    /**
+     * @return the phase being monitored currently
+     */
+    @Phase
+    public int getPhase() {
+        return mPhase;
+    }
+
+    /**
+     * Clears all recorded histograms
+     */
+    public void reset() {
+        for (FrameHistogram histogram : mHistograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Sets the expected frame interval used to count dropped frames, by default it's read from
+     * the refresh rate of the default display
+     * @param frameIntervalNanos the frame interval in nanoseconds
+     */
+    public void setFrameIntervalNanos(long frameIntervalNanos) {
+        for (FrameHistogram histogram : mHistograms) {
+            histogram.setFrameIntervalNanos(frameIntervalNanos);
+        }
+    }
+
+    @Override
+    public void onSwipeStateChanged(SwipeGestureHelper helper, int newState) {
+        onSourceStateChanged();
+    }
+
+    private void onSourceStateChanged() {
+        if (computePhase() != PHASE_IDLE && !mFrameCallbackPosted
+                && ChoreographerCompat.isVsyncAligned()) {
+            mFrameCallbackPosted = true;
+            mLastFrameTimeNanos = 0;
+            ChoreographerCompat.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    private int computePhase() {
+        if (mSwipeGestureHelper != null) {
+            switch (mSwipeGestureHelper.getSwipeState()) {
+                case SwipeGestureHelper.SWIPE_STATE_LONG_PRESS:
+                    return PHASE_SWIPE_LONG_PRESS;
+                case SwipeGestureHelper.SWIPE_STATE_ANIMATING:
+                    return PHASE_SWIPE_ANIMATION;
+            }
+        }
+        if (mRecyclerView != null) {
+            switch (mRecyclerView.getScrollState()) {
+                case RecyclerView.SCROLL_STATE_DRAGGING:
+                    return PHASE_DRAGGING;
+                case RecyclerView.SCROLL_STATE_SETTLING:
+                    return PHASE_FLINGING;
+            }
+        }
+        return PHASE_IDLE;
+    }
+
+    private void onFrame(long frameTimeNanos) {
+        // The interval since the last frame is attributed to the phase the last frame was in
+        if (mLastFrameTimeNanos != 0 && mPhase != PHASE_IDLE) {
+            mHistograms[mPhase].record(frameTimeNanos - mLastFrameTimeNanos);
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+
+        int phase = computePhase();
+        if (phase != mPhase) {
+            int finishedPhase = mPhase;
+            mPhase = phase;
+            if (finishedPhase != PHASE_IDLE) {
+                dispatchPhaseFinished(finishedPhase);
+            }
+        }
+        if (phase != PHASE_IDLE) {
+            ChoreographerCompat.getInstance().postFrameCallback(mFrameCallback);
+        } else {
+            mFrameCallbackPosted = false;
+        }
+    }
+
+    private void dispatchPhaseFinished(int phase) {
+        for (int i = mListeners.size() - 1; i >= 0; i--) {
+            mListeners.get(i).onPhaseFinished(this, phase, mHistograms[phase]);
+        }
+    }
+
+    private static long getFrameIntervalNanos(Context context) {
+        WindowManager wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        float refreshRate = wm == null ? 0 : wm.getDefaultDisplay().getRefreshRate();
+        if (refreshRate < 10F) {
+            return DEFAULT_FRAME_INTERVAL_NANOS;
+        }
+        return (long) (1000000000L / refreshRate);
+    }
+
+    public interface Listener {
+        /**
+         * Called on the main thread when the list leaves a phase
+         * @param monitor the monitor
+         * @param phase the phase that just finished, one of the PHASE_ constants
+         * @param histogram the cumulative histogram of frames recorded in this phase
+         */
+        void onPhaseFinished(FrameMonitor monitor, @Phase int phase, FrameHistogram histogram);
+    }
+}
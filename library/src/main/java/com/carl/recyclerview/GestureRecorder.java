@@ -0,0 +1,116 @@
+package com.carl.recyclerview;
+
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+/**
+ * Records the touch events hitting a {@link SnappyRecyclerView} into a {@link GestureTrace}, see
+ * {@link SnappyRecyclerView#setGestureRecorder(GestureRecorder)}. Recording copies every event, so
+ * it's meant for capturing gestures to reproduce, not for staying on in production.
+ *
+ * @author carl
+ */
+public class GestureRecorder {
+
+    private final GestureTrace mTrace = new GestureTrace();
+    private boolean mRecording;
+    private long mStartTime = -1;
+
+    /**
+     * Starts recording into a fresh trace
+     */
+    public void start() {
+        mTrace.clear();
+        mStartTime = -1;
+        mRecording = true;
+    }
+
+    /**
+     * Stops recording, the trace is kept until the next {@link #start()}
+     */
+    public void stop() {
+        mRecording = false;
+    }
+
+    public boolean isRecording() {
+        return mRecording;
+    }
+
+    public GestureTrace getTrace() {
+        return mTrace;
+    }
+
+    /**
+     * Appends a copy of given event to the trace if recording
+     */
+    public void record(MotionEvent e) {
+        if (!mRecording) {
+            return;
+        }
+        if (mStartTime < 0) {
+            mStartTime = e.getDownTime();
+        }
+        int pointerCount = e.getPointerCount();
+        int historySize = e.getHistorySize();
+        int[] pointerIds = new int[pointerCount];
+        for (int p = 0; p < pointerCount; p++) {
+            pointerIds[p] = e.getPointerId(p);
+        }
+        long[] sampleTimes = new long[historySize + 1];
+        float[] coords = new float[(historySize + 1) * pointerCount * 2];
+        int c = 0;
+        for (int h = 0; h < historySize; h++) {
+            sampleTimes[h] = e.getHistoricalEventTime(h) - mStartTime;
+            for (int p = 0; p < pointerCount; p++) {
+                coords[c++] = e.getHistoricalX(p, h);
+                coords[c++] = e.getHistoricalY(p, h);
+            }
+        }
+        sampleTimes[historySize] = e.getEventTime() - mStartTime;
+        for (int p = 0; p < pointerCount; p++) {
+            coords[c++] = e.getX(p);
+            coords[c++] = e.getY(p);
+        }
+        mTrace.addEvent(e.getAction(), e.getDownTime() - mStartTime, pointerIds, sampleTimes,
+                coords);
+    }
+
+    /**
+     * Rebuilds a MotionEvent from a recorded event, historical samples included. The caller
+     * must recycle it.
+     * @param event the recorded event
+     * @param timeBase uptime that trace time 0 maps to
+     * @return a new MotionEvent
+     */
+    public static MotionEvent obtainMotionEvent(GestureTrace.Event event, long timeBase) {
+        int pointerCount = event.getPointerCount();
+        MotionEvent.PointerProperties[] properties =
+                new MotionEvent.PointerProperties[pointerCount];
+        MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[pointerCount];
+        for (int p = 0; p < pointerCount; p++) {
+            properties[p] = new MotionEvent.PointerProperties();
+            properties[p].id = event.getPointerId(p);
+            properties[p].toolType = MotionEvent.TOOL_TYPE_FINGER;
+            coords[p] = new MotionEvent.PointerCoords();
+            coords[p].pressure = 1F;
+            coords[p].size = 1F;
+        }
+        setCoords(event, 0, coords);
+        MotionEvent e = MotionEvent.obtain(timeBase + event.getDownTime(),
+                timeBase + event.getSampleTime(0), event.getAction(), pointerCount, properties,
+                coords, 0, 0, 1F, 1F, 0, 0, InputDevice.SOURCE_TOUCHSCREEN, 0);
+        for (int s = 1; s < event.getSampleCount(); s++) {
+            setCoords(event, s, coords);
+            e.addBatch(timeBase + event.getSampleTime(s), coords, 0);
+        }
+        return e;
+    }
+
+    private static void setCoords(GestureTrace.Event event, int sample,
+                                  MotionEvent.PointerCoords[] coords) {
+        for (int p = 0; p < coords.length; p++) {
+            coords[p].x = event.getX(p, sample);
+            coords[p].y = event.getY(p, sample);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.carl.recyclerview;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recorded stream of touch events, as captured by {@link GestureRecorder}. Every event keeps its
+ * action, its pointer ids and all its samples, historical ones included, so that replaying it
+ * reproduces what the gesture helpers saw. Times are kept in milliseconds relative to the first
+ * recorded event, which makes traces independent of the device clock.
+ * <p>
+ * The binary format is big-endian: the magic number and the version, the event count, then for
+ * every event the action, down time, pointer count, sample count, pointer ids, and for every
+ * sample its time followed by x and y of every pointer.
+ *
+ * @author carl
+ */
+public class GestureTrace {
+
+    public static final int MAGIC = 0x53534754;
+    public static final int VERSION = 1;
+
+    private final List<Event> mEvents = new ArrayList<>();
+
+    /**
+     * Appends an event
+     * @param action the action, as returned by MotionEvent#getAction()
+     * @param downTime time of the down event of the stream, relative to the trace start
+     * @param pointerIds ids of the pointers, one per pointer
+     * @param sampleTimes times of the samples, historical ones first, relative to the trace start
+     * @param coords x and y of every pointer of every sample, sample by sample
+     */
+    public void addEvent(int action, long downTime, int[] pointerIds, long[] sampleTimes,
+                         float[] coords) {
+        if (coords.length != pointerIds.length * sampleTimes.length * 2) {
+            throw new IllegalArgumentException("Expected " + pointerIds.length
+                    * sampleTimes.length * 2 + " coordinates, got " + coords.length);
+        }
+        mEvents.add(new Event(action, downTime, pointerIds, sampleTimes, coords));
+    }
+
+    public int getEventCount() {
+        return mEvents.size();
+    }
+
+    public Event getEvent(int index) {
+        return mEvents.get(index);
+    }
+
+    public void clear() {
+        mEvents.clear();
+    }
+
+    /**
+     * Writes this trace in the binary format, the stream is not closed
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeInt(mEvents.size());
+        for (Event event : mEvents) {
+            int pointerCount = event.mPointerIds.length;
+            int sampleCount = event.mSampleTimes.length;
+            data.writeShort(event.mAction);
+            data.writeInt((int) event.mDownTime);
+            data.writeByte(pointerCount);
+            data.writeShort(sampleCount);
+            for (int id : event.mPointerIds) {
+                data.writeByte(id);
+            }
+            for (int s = 0; s < sampleCount; s++) {
+                data.writeInt((int) event.mSampleTimes[s]);
+                for (int p = 0; p < pointerCount * 2; p++) {
+                    data.writeFloat(event.mCoords[s * pointerCount * 2 + p]);
+                }
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a trace written by {@link #writeTo(OutputStream)}, the stream is not closed
+     * @throws IOException if the stream isn't a trace of a known version
+     */
+    public static GestureTrace readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a gesture trace");
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported gesture trace version " + version);
+        }
+        GestureTrace trace = new GestureTrace();
+        int eventCount = data.readInt();
+        for (int i = 0; i < eventCount; i++) {
+            int action = data.readUnsignedShort();
+            long downTime = data.readInt();
+            int pointerCount = data.readUnsignedByte();
+            int sampleCount = data.readUnsignedShort();
+            int[] pointerIds = new int[pointerCount];
+            for (int p = 0; p < pointerCount; p++) {
+                pointerIds[p] = data.readUnsignedByte();
+            }
+            long[] sampleTimes = new long[sampleCount];
+            float[] coords = new float[sampleCount * pointerCount * 2];
+            for (int s = 0; s < sampleCount; s++) {
+                sampleTimes[s] = data.readInt();
+                for (int p = 0; p < pointerCount * 2; p++) {
+                    coords[s * pointerCount * 2 + p] = data.readFloat();
+                }
+            }
+            trace.addEvent(action, downTime, pointerIds, sampleTimes, coords);
+        }
+        return trace;
+    }
+
+    public static class Event {
+        private final int mAction;
+        private final long mDownTime;
+        private final int[] mPointerIds;
+        private final long[] mSampleTimes;
+        private final float[] mCoords;
+
+        Event(int action, long downTime, int[] pointerIds, long[] sampleTimes, float[] coords) {
+            mAction = action;
+            mDownTime = downTime;
+            mPointerIds = pointerIds;
+            mSampleTimes = sampleTimes;
+            mCoords = coords;
+        }
+
+        public int getAction() {
+            return mAction;
+        }
+
+        public long getDownTime() {
+            return mDownTime;
+        }
+
+        public int getPointerCount() {
+            return mPointerIds.length;
+        }
+
+        public int getPointerId(int pointerIndex) {
+            return mPointerIds[pointerIndex];
+        }
+
+        /**
+         * @return number of samples, the last one is the current sample of the event
+         */
+        public int getSampleCount() {
+            return mSampleTimes.length;
+        }
+
+        public long getSampleTime(int sample) {
+            return mSampleTimes[sample];
+        }
+
+        /**
+         * @return time of the event, which is the time of its last sample
+         */
+        public long getEventTime() {
+            return mSampleTimes[mSampleTimes.length - 1];
+        }
+
+        public float getX(int pointerIndex, int sample) {
+            return mCoords[(sample * mPointerIds.length + pointerIndex) * 2];
+        }
+
+        public float getY(int pointerIndex, int sample) {
+            return mCoords[(sample * mPointerIds.length + pointerIndex) * 2 + 1];
+        }
+    }
+}
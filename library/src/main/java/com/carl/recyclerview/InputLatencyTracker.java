@@ -0,0 +1,223 @@
+package com.carl.recyclerview;
+
+import android.support.annotation.IntDef;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Records input-to-frame latencies into a {@link FrameHistogram} per gesture type: the time from
+ * the finger event that caused a change, as returned by {@link MotionEvent#getEventTime()}, to
+ * the frame time of the first frame that draws the change. Event times and Choreographer frame
+ * times are both on the monotonic uptime clock, so they are compared directly.
+ * <p>
+ * Gesture helpers report an input with {@link #onInput(int)}, which takes the last event that
+ * reached the {@link ViewOnTouchDelegate}, and {@link #onApplied(int)} once views reflect it. The
+ * latency is recorded at the next pre-draw of the attached view, with the time of the frame being
+ * drawn. While an input waits for its frame, a frame callback keeps track of frame times; nothing
+ * is posted while no gesture is pending, and nothing is recorded on API levels before 16.
+ *
+ * @author carl
+ */
+public class InputLatencyTracker {
+
+    @IntDef({GESTURE_LONG_PRESS, GESTURE_DRAG, GESTURE_FLING})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Gesture {
+    }
+
+    /**
+     * From the moment a long press is due to the first frame of the scale animation
+     */
+    public static final int GESTURE_LONG_PRESS = 0;
+    /**
+     * From a move event of a dragged item view to the frame that translates it
+     */
+    public static final int GESTURE_DRAG = 1;
+    /**
+     * From the up event of a fling to the first frame the snap scroller moves the list
+     */
+    public static final int GESTURE_FLING = 2;
+    private static final int GESTURE_COUNT = 3;
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+    /*
+     * Inputs that aren't applied within this time are dropped, the change never happened
+     */
+    private static final long MAX_PENDING_NANOS = 1000L * NANOS_PER_MILLI;
+    private static final long NO_TIME = -1;
+
+    private final FrameHistogram[] mHistograms = new FrameHistogram[GESTURE_COUNT];
+    /*
+     * Time of the earliest input of every gesture not drawn yet, and whether it was applied
+     */
+    private final long[] mPendingEventNanos = new long[GESTURE_COUNT];
+    private final boolean[] mApplied = new boolean[GESTURE_COUNT];
+    private final ViewTreeObserver.OnPreDrawListener mOnPreDrawListener =
+            new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    onDraw();
+                    return true;
+                }
+            };
+    private final ChoreographerCompat.FrameCallback mFrameCallback =
+            new ChoreographerCompat.FrameCallback() {
+                @Override
+                void doFrame(long frameTimeNanos) {
+                    onFrame(frameTimeNanos);
+                }
+            };
+
+    private View mView;
+    private long mLastEventTimeMillis = NO_TIME;
+    private long mFrameTimeNanos = NO_TIME;
+    private boolean mFrameCallbackPosted;
+
+    public InputLatencyTracker() {
+        for (int i = 0; i < GESTURE_COUNT; i++) {
+            // Latencies aren't frame durations, there are no dropped frames to count
+            mHistograms[i] = new FrameHistogram(0);
+            mPendingEventNanos[i] = NO_TIME;
+        }
+    }
+
+    /**
+     * Records latencies at the frames that draw given view, usually the RecyclerView
+     * @param view the view to observe, or null to stop recording
+     */
+    public void attachToView(View view) {
+        if (mView != null) {
+            mView.getViewTreeObserver().removeOnPreDrawListener(mOnPreDrawListener);
+        }
+        mView = view;
+        if (view != null) {
+            view.getViewTreeObserver().addOnPreDrawListener(mOnPreDrawListener);
+        }
+    }
+
+    /**
+     * Notes a touch event as it reaches the gesture helpers, a down event drops the inputs of
+     * the previous pointer stream
+     */
+    public void onTouchEvent(MotionEvent e) {
+        if (e.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            for (int i = 0; i < GESTURE_COUNT; i++) {
+                mPendingEventNanos[i] = NO_TIME;
+                mApplied[i] = false;
+            }
+        }
+        mLastEventTimeMillis = e.getEventTime();
+    }
+
+    /**
+     * Notes that the last touch event starts a change of given gesture
+     * @param gesture one of the GESTURE_ constants
+     */
+    public void onInput(@Gesture int gesture) {
+        if (mLastEventTimeMillis != NO_TIME) {
+            onInput(gesture, mLastEventTimeMillis);
+        }
+    }
+
+    /**
+     * Notes an input of given gesture, only the earliest input not drawn yet is kept
+     * @param gesture one of the GESTURE_ constants
+     * @param eventTimeMillis time of the input, in the {@link MotionEvent#getEventTime()} base
+     */
+    public void onInput(@Gesture int gesture, long eventTimeMillis) {
+        if (mPendingEventNanos[gesture] == NO_TIME) {
+            mPendingEventNanos[gesture] = eventTimeMillis * NANOS_PER_MILLI;
+        }
+        postFrameCallback();
+    }
+
+    /**
+     * Notes that views now reflect the pending input of given gesture, its latency is recorded
+     * when they are drawn
+     * @param gesture one of the GESTURE_ constants
+     */
+    public void onApplied(@Gesture int gesture) {
+        if (mPendingEventNanos[gesture] != NO_TIME) {
+            mApplied[gesture] = true;
+        }
+    }
+
+    /**
+     * @param gesture one of the GESTURE_ constants
+     * @return the histogram of latencies recorded for given gesture
+     */
+    public FrameHistogram getHistogram(@Gesture int gesture) {
+        return mHistograms[gesture];
+    }
+
+    /**
+     * @param gesture one of the GESTURE_ constants
+     * @param percentile the percentile in range (0, 100], 50 for the median
+     * @return the percentile of latencies of given gesture in milliseconds, see
+     * {@link FrameHistogram#getPercentileMillis(float)}
+     */
+    public int getPercentileMillis(@Gesture int gesture, float percentile) {
+        return mHistograms[gesture].getPercentileMillis(percentile);
+    }
+
+    /**
+     * Clears all recorded histograms
+     */
+    public void reset() {
+        for (FrameHistogram histogram : mHistograms) {
+            histogram.reset();
+        }
+    }
+
+    private void postFrameCallback() {
+        if (!mFrameCallbackPosted && ChoreographerCompat.isVsyncAligned()) {
+            mFrameCallbackPosted = true;
+            mFrameTimeNanos = NO_TIME;
+            ChoreographerCompat.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    /*
+     * Runs before the traversal of every frame while inputs are pending, so that pre-draw knows
+     * which frame it draws
+     */
+    private void onFrame(long frameTimeNanos) {
+        mFrameTimeNanos = frameTimeNanos;
+        boolean pending = false;
+        for (int i = 0; i < GESTURE_COUNT; i++) {
+            if (mPendingEventNanos[i] == NO_TIME) {
+                continue;
+            }
+            if (frameTimeNanos - mPendingEventNanos[i] > MAX_PENDING_NANOS) {
+                mPendingEventNanos[i] = NO_TIME;
+                mApplied[i] = false;
+            } else {
+                pending = true;
+            }
+        }
+        if (pending) {
+            ChoreographerCompat.getInstance().postFrameCallback(mFrameCallback);
+        } else {
+            mFrameCallbackPosted = false;
+        }
+    }
+
+    private void onDraw() {
+        if (mFrameTimeNanos == NO_TIME) {
+            // The frame callback hasn't run in this frame yet
+            return;
+        }
+        for (int i = 0; i < GESTURE_COUNT; i++) {
+            if (mApplied[i]) {
+                // Events handled in the frame they arrive in may be stamped after its vsync
+                mHistograms[i].record(Math.max(0, mFrameTimeNanos - mPendingEventNanos[i]));
+                mPendingEventNanos[i] = NO_TIME;
+                mApplied[i] = false;
+            }
+        }
+    }
+}
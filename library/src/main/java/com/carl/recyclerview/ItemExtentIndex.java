@@ -0,0 +1,266 @@
+package com.carl.recyclerview;
+
+import java.util.Arrays;
+
+/**
+ * Prefix-sum index over the sizes of items along the scrolling axis, backed by Fenwick trees.
+ * Items that have not been measured yet are assumed to be as large as the average of the
+ * measured ones. Recording a measurement and mapping a scroll offset to an item index are both
+ * O(log n), structural changes of the adapter rebuild the trees in O(n).
+ *
+ * @author carl
+ */
+public class ItemExtentIndex {
+
+    private static final int UNKNOWN = -1;
+
+    private int mItemCount;
+    /*
+     * Raw extents of items, UNKNOWN if not measured yet
+     */
+    private int[] mExtents = new int[0];
+    /*
+     * 1-based Fenwick trees of measured extents and of the number of measured items
+     */
+    private long[] mExtentTree = new long[1];
+    private int[] mCountTree = new int[1];
+    private long mKnownExtent;
+    private int mKnownCount;
+    private int mHighestPowerOfTwo;
+
+    public int getItemCount() {
+        return mItemCount;
+    }
+
+    /**
+     * Forgets all measurements and resizes the index to given item count
+     * @param itemCount number of items
+     */
+    public void reset(int itemCount) {
+        ensureCapacity(itemCount);
+        Arrays.fill(mExtents, 0, itemCount, UNKNOWN);
+        mItemCount = itemCount;
+        rebuild();
+    }
+
+    /**
+     * Resizes the index to given item count if it differs, keeping measurements of the items
+     * that are still in range
+     * @param itemCount number of items
+     */
+    public void setItemCount(int itemCount) {
+        if (itemCount == mItemCount) {
+            return;
+        }
+        ensureCapacity(itemCount);
+        if (itemCount > mItemCount) {
+            Arrays.fill(mExtents, mItemCount, itemCount, UNKNOWN);
+        }
+        mItemCount = itemCount;
+        rebuild();
+    }
+
+    /**
+     * Records the measured extent of the item at given position
+     * @param position position of the item
+     * @param extent size of the item along the scrolling axis, including margins and decorations
+     */
+    public void setExtent(int position, int extent) {
+        if (position < 0 || position >= mItemCount || extent < 0) {
+            return;
+        }
+        int old = mExtents[position];
+        if (old == extent) {
+            return;
+        }
+        mExtents[position] = extent;
+        if (old == UNKNOWN) {
+            update(position, extent, 1);
+        } else {
+            update(position, extent - old, 0);
+        }
+    }
+
+    /**
+     * @return measured extent of the item at given position, or the estimated one if it hasn't
+     * been measured yet
+     */
+    public int getExtent(int position) {
+        int extent = mExtents[position];
+        return extent == UNKNOWN ? getEstimatedExtent() : extent;
+    }
+
+    public boolean isMeasured(int position) {
+        return position >= 0 && position < mItemCount && mExtents[position] != UNKNOWN;
+    }
+
+    /**
+     * @return the extent assumed for items that haven't been measured, 0 if nothing has been
+     * measured yet
+     */
+    public int getEstimatedExtent() {
+        return mKnownCount == 0 ? 0 : (int) (mKnownExtent / mKnownCount);
+    }
+
+    /**
+     * @return offset of the start edge of the item at given position, relative to the start edge
+     * of the first item
+     */
+    public long getStart(int position) {
+        long extent = 0;
+        int count = 0;
+        for (int i = Math.min(position, mItemCount); i > 0; i -= i & -i) {
+            extent += mExtentTree[i];
+            count += mCountTree[i];
+        }
+        return extent + (long) (Math.min(position, mItemCount) - count) * getEstimatedExtent();
+    }
+
+    public long getTotalExtent() {
+        return getStart(mItemCount);
+    }
+
+    /**
+     * @return position of the item that contains given offset, clamped to valid positions, or
+     * -1 if the index is empty
+     */
+    public int findIndexAt(long offset) {
+        if (mItemCount == 0) {
+            return -1;
+        }
+        long estimate = getEstimatedExtent();
+        int pos = 0;
+        long remaining = offset;
+        for (int step = mHighestPowerOfTwo; step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next > mItemCount) {
+                continue;
+            }
+            long nodeExtent = mExtentTree[next] + (long) ((next & -next) - mCountTree[next])
+                    * estimate;
+            if (nodeExtent <= remaining) {
+                pos = next;
+                remaining -= nodeExtent;
+            }
+        }
+        return Math.max(0, Math.min(pos, mItemCount - 1));
+    }
+
+    /**
+     * @return position of the item whose start edge is nearest to given offset
+     */
+    public int findIndexNearestTo(long offset) {
+        int index = findIndexAt(offset);
+        if (index < 0) {
+            return index;
+        }
+        long start = getStart(index);
+        if (index < mItemCount - 1 && (offset - start) * 2 > getExtent(index)) {
+            index++;
+        }
+        return index;
+    }
+
+    public void onItemsAdded(int positionStart, int itemCount) {
+        if (itemCount <= 0 || positionStart > mItemCount) {
+            return;
+        }
+        ensureCapacity(mItemCount + itemCount);
+        System.arraycopy(mExtents, positionStart, mExtents, positionStart + itemCount,
+                mItemCount - positionStart);
+        Arrays.fill(mExtents, positionStart, positionStart + itemCount, UNKNOWN);
+        mItemCount += itemCount;
+        rebuild();
+    }
+
+    public void onItemsRemoved(int positionStart, int itemCount) {
+        if (itemCount <= 0 || positionStart >= mItemCount) {
+            return;
+        }
+        itemCount = Math.min(itemCount, mItemCount - positionStart);
+        System.arraycopy(mExtents, positionStart + itemCount, mExtents, positionStart,
+                mItemCount - positionStart - itemCount);
+        mItemCount -= itemCount;
+        rebuild();
+    }
+
+    public void onItemsMoved(int from, int to, int itemCount) {
+        if (from == to || from < 0 || to < 0 || from + itemCount > mItemCount
+                || to + itemCount > mItemCount) {
+            return;
+        }
+        int[] moved = Arrays.copyOfRange(mExtents, from, from + itemCount);
+        if (from < to) {
+            System.arraycopy(mExtents, from + itemCount, mExtents, from, to - from);
+        } else {
+            System.arraycopy(mExtents, to, mExtents, to + itemCount, from - to);
+        }
+        System.arraycopy(moved, 0, mExtents, to, itemCount);
+        rebuild();
+    }
+
+    /**
+     * Marks items as not measured, their extents will be estimated until they are measured again
+     */
+    public void invalidate(int positionStart, int itemCount) {
+        int end = Math.min(mItemCount, positionStart + itemCount);
+        boolean changed = false;
+        for (int i = Math.max(0, positionStart); i < end; i++) {
+            if (mExtents[i] != UNKNOWN) {
+                mExtents[i] = UNKNOWN;
+                changed = true;
+            }
+        }
+        if (changed) {
+            rebuild();
+        }
+    }
+
+    private void update(int position, long extentDelta, int countDelta) {
+        mKnownExtent += extentDelta;
+        mKnownCount += countDelta;
+        for (int i = position + 1; i <= mItemCount; i += i & -i) {
+            mExtentTree[i] += extentDelta;
+            mCountTree[i] += countDelta;
+        }
+    }
+
+    private void ensureCapacity(int itemCount) {
+        if (mExtents.length < itemCount) {
+            int capacity = Math.max(itemCount, mExtents.length * 2);
+            mExtents = Arrays.copyOf(mExtents, capacity);
+            mExtentTree = new long[capacity + 1];
+            mCountTree = new int[capacity + 1];
+        }
+    }
+
+    /*
+     * Builds both trees from mExtents in O(n)
+     */
+    private void rebuild() {
+        mKnownExtent = 0;
+        mKnownCount = 0;
+        mExtentTree[0] = 0;
+        mCountTree[0] = 0;
+        for (int i = 1; i <= mItemCount; i++) {
+            int extent = mExtents[i - 1];
+            if (extent == UNKNOWN) {
+                mExtentTree[i] = 0;
+                mCountTree[i] = 0;
+            } else {
+                mExtentTree[i] = extent;
+                mCountTree[i] = 1;
+                mKnownExtent += extent;
+                mKnownCount++;
+            }
+        }
+        for (int i = 1; i <= mItemCount; i++) {
+            int parent = i + (i & -i);
+            if (parent <= mItemCount) {
+                mExtentTree[parent] += mExtentTree[i];
+                mCountTree[parent] += mCountTree[i];
+            }
+        }
+        mHighestPowerOfTwo = mItemCount == 0 ? 0 : Integer.highestOneBit(mItemCount);
+    }
+}
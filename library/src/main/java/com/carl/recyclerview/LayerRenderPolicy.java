@@ -0,0 +1,154 @@
+package com.carl.recyclerview;
+
+import android.util.Log;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Promotes item views to hardware layers while they are being animated, so that complex item
+ * views are composited instead of redrawn on every frame of a scale, translation or alpha
+ * animation. Promotions are reference counted per view, the layer type a view had before its
+ * first promotion is restored when the last promotion is released or when the view is detached
+ * from window, whichever comes first. The state of a view is created on its first promotion and
+ * kept in its tag afterwards, so promoting recycled item views again doesn't allocate. A single
+ * policy could be shared by {@link SwipeGestureHelper}, {@link PanDownTransitionGestureHelper}
+ * and {@link SlideInAnimator}.
+ *
+ * @author carl
+ */
+public class LayerRenderPolicy {
+
+    private static final String TAG = "LayerRenderPolicy";
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+
+    /*
+     * Views with pending promotions, its capacity is kept once grown
+     */
+    private final List<View> mPromotedViews = new ArrayList<>();
+    private final View.OnAttachStateChangeListener mOnAttachStateChangeListener =
+            new View.OnAttachStateChangeListener() {
+                @Override
+                public void onViewAttachedToWindow(View v) {
+                }
+
+                @Override
+                public void onViewDetachedFromWindow(View v) {
+                    restore(v);
+                }
+            };
+    private boolean mEnabled = true;
+
+    /**
+     * Enables or disables promotion, disabling restores all promoted views
+     * @param enabled true to promote views passed to {@link #promote(View)}
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        if (!enabled) {
+            releaseAll();
+        }
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Promotes given view to a hardware layer, must be balanced by a call to
+     * {@link #release(View)}. Views that aren't hardware accelerated are left alone.
+     * @param view the view that is about to be animated
+     */
+    public void promote(View view) {
+        if (view == null || !mEnabled) {
+            return;
+        }
+        LayerState state = (LayerState) view.getTag(R.id.layer_render_policy_state);
+        if (state != null && state.mCount > 0) {
+            state.mCount++;
+            return;
+        }
+        if (!view.isHardwareAccelerated()) {
+            return;
+        }
+        if (state == null) {
+            state = new LayerState();
+            view.setTag(R.id.layer_render_policy_state, state);
+            // Stays registered, restoring a view only resets its count
+            view.addOnAttachStateChangeListener(mOnAttachStateChangeListener);
+        }
+        state.mPreviousLayerType = view.getLayerType();
+        state.mCount = 1;
+        mPromotedViews.add(view);
+        if (state.mPreviousLayerType != View.LAYER_TYPE_HARDWARE) {
+            view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        }
+        if (DEBUG) {
+            Log.d(TAG, "promote: " + view);
+        }
+    }
+
+    /**
+     * Releases a promotion made by {@link #promote(View)}, the layer is dropped when all
+     * promotions of the view are released
+     * @param view the view that has finished animating
+     */
+    public void release(View view) {
+        if (view == null) {
+            return;
+        }
+        LayerState state = (LayerState) view.getTag(R.id.layer_render_policy_state);
+        if (state == null || state.mCount <= 0) {
+            return;
+        }
+        if (--state.mCount == 0) {
+            restore(view);
+        }
+    }
+
+    /**
+     * Restores all promoted views regardless of pending promotions, for example when the
+     * RecyclerView is torn down
+     */
+    public void releaseAll() {
+        for (int i = mPromotedViews.size() - 1; i >= 0; i--) {
+            restore(mPromotedViews.get(i));
+        }
+    }
+
+    /**
+     * @return whether given view is currently promoted by this policy
+     */
+    public boolean isPromoted(View view) {
+        if (view == null) {
+            return false;
+        }
+        LayerState state = (LayerState) view.getTag(R.id.layer_render_policy_state);
+        return state != null && state.mCount > 0;
+    }
+
+    private void restore(View view) {
+        LayerState state = (LayerState) view.getTag(R.id.layer_render_policy_state);
+        if (state == null || state.mCount <= 0) {
+            return;
+        }
+        state.mCount = 0;
+        mPromotedViews.remove(view);
+        if (view.getLayerType() != state.mPreviousLayerType) {
+            view.setLayerType(state.mPreviousLayerType, null);
+        }
+        if (DEBUG) {
+            Log.d(TAG, "restore: " + view);
+        }
+    }
+
+    /*
+     * Layer type of a view before its first pending promotion, and the number of pending
+     * promotions, 0 while the view isn't promoted
+     */
+    private static class LayerState {
+        int mPreviousLayerType;
+        int mCount;
+    }
+}
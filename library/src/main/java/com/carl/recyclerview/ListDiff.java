@@ -0,0 +1,605 @@
+package com.carl.recyclerview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Android-free difference of two lists as the shortest script of insertions and removals, with
+ * Myers' linear space algorithm. Runs in O((N + M) * D) time, D being the length of the script,
+ * so a refresh of a long list that changes a few items costs little more than a pass over it.
+ * <p>
+ * Items matched on the script but whose contents differ are reported as changed. When moves are
+ * detected, a removed item that is the same as an inserted one is reported as moved instead,
+ * which takes a search of the inserted items for every removed one.
+ * <p>
+ * {@link #dispatchUpdatesTo(UpdateCallback)} reports updates from the end of the list to its
+ * start, coalescing adjacent ones, so that every position it reports is valid at the time it is
+ * reported, the way {@link android.support.v7.widget.RecyclerView.Adapter} notifications expect.
+ *
+ * @author carl
+ */
+public class ListDiff {
+
+    public static final int NO_POSITION = -1;
+
+    /*
+     * Status of an item, the position of its counterpart in the other list is kept above the flag
+     */
+    private static final int FLAG_NOT_CHANGED = 1;
+    private static final int FLAG_CHANGED = 2;
+    private static final int FLAG_MOVED_NOT_CHANGED = 3;
+    private static final int FLAG_MOVED_CHANGED = 4;
+    /*
+     * The move is reported when the other end of it is reached
+     */
+    private static final int FLAG_IGNORE = 5;
+    private static final int FLAG_OFFSET = 3;
+    private static final int FLAG_MASK = (1 << FLAG_OFFSET) - 1;
+
+    private final Callback mCallback;
+    /*
+     * Runs of matching items, sorted: start in the old list, start in the new list and length
+     */
+    private final int[] mSnakes;
+    private final int mSnakeCount;
+    private final int[] mOldItemStatuses;
+    private final int[] mNewItemStatuses;
+    private final boolean mDetectMoves;
+
+    private ListDiff(Callback callback, int[] snakes, int snakeCount, boolean detectMoves) {
+        mCallback = callback;
+        mSnakes = snakes;
+        mSnakeCount = snakeCount;
+        mOldItemStatuses = new int[callback.getOldListSize()];
+        mNewItemStatuses = new int[callback.getNewListSize()];
+        mDetectMoves = detectMoves;
+        findMatchingItems();
+    }
+
+    /**
+     * Calculates the difference of the two lists of given callback
+     * @param callback access to both lists
+     * @param detectMoves whether to report items that changed places as moves
+     * @return the difference
+     */
+    public static ListDiff calculate(Callback callback, boolean detectMoves) {
+        int oldSize = callback.getOldListSize();
+        int newSize = callback.getNewListSize();
+        // Backward diagonals are centered on the size difference, which may take them that far
+        int offset = (oldSize + newSize) * 2 + 2;
+        int[] forward = new int[offset * 2 + 1];
+        int[] backward = new int[offset * 2 + 1];
+        int[] middle = new int[5];
+        IntList snakes = new IntList();
+        // Pending ranges as old start, old end, new start and new end
+        IntList ranges = new IntList();
+        ranges.add(0, oldSize, 0, newSize);
+        while (ranges.size() > 0) {
+            int newEnd = ranges.pop();
+            int newStart = ranges.pop();
+            int oldEnd = ranges.pop();
+            int oldStart = ranges.pop();
+            int n = oldEnd - oldStart;
+            int m = newEnd - newStart;
+            if (n == 0 || m == 0) {
+                continue;
+            }
+            findMiddleSnake(callback, oldStart, n, newStart, m, forward, backward, offset, middle);
+            int d = middle[4];
+            if (d <= 1) {
+                addShortScript(callback, oldStart, n, newStart, m, d, snakes);
+                continue;
+            }
+            int x = middle[0];
+            int y = middle[1];
+            int u = middle[2];
+            int v = middle[3];
+            if (u > x) {
+                snakes.add(oldStart + x, newStart + y, u - x);
+            }
+            ranges.add(oldStart, oldStart + x, newStart, newStart + y);
+            ranges.add(oldStart + u, oldEnd, newStart + v, newEnd);
+        }
+        return new ListDiff(callback, sortSnakes(snakes), snakes.size() / 3, detectMoves);
+    }
+
+    /*
+     * Finds the middle snake of a range as its start, its end and the length of the script of
+     * the range, all relative to the start of the range
+     */
+    private static void findMiddleSnake(Callback callback, int oldStart, int n, int newStart,
+                                        int m, int[] forward, int[] backward, int offset,
+                                        int[] out) {
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        forward[offset + 1] = 0;
+        backward[offset + delta - 1] = n;
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+                    x = forward[offset + k + 1];
+                } else {
+                    x = forward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int startX = x;
+                while (x < n && y < m
+                        && callback.areItemsTheSame(oldStart + x, newStart + y)) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                if (odd && k >= delta - d + 1 && k <= delta + d - 1
+                        && x >= backward[offset + k]) {
+                    setMiddleSnake(out, startX, startX - k, x, y, 2 * d - 1);
+                    return;
+                }
+            }
+            for (int k = delta - d; k <= delta + d; k += 2) {
+                int x;
+                if (k == delta + d
+                        || (k != delta - d && backward[offset + k - 1] < backward[offset + k + 1])) {
+                    x = backward[offset + k - 1];
+                } else {
+                    x = backward[offset + k + 1] - 1;
+                }
+                int y = x - k;
+                int endX = x;
+                while (x > 0 && y > 0
+                        && callback.areItemsTheSame(oldStart + x - 1, newStart + y - 1)) {
+                    x--;
+                    y--;
+                }
+                backward[offset + k] = x;
+                if (!odd && k >= -d && k <= d && forward[offset + k] >= x) {
+                    setMiddleSnake(out, x, y, endX, endX - k, 2 * d);
+                    return;
+                }
+            }
+        }
+        throw new IllegalStateException("Lists changed while calculating their difference");
+    }
+
+    private static void setMiddleSnake(int[] out, int x, int y, int u, int v, int d) {
+        out[0] = x;
+        out[1] = y;
+        out[2] = u;
+        out[3] = v;
+        out[4] = d;
+    }
+
+    /*
+     * Snakes of a range with at most one insertion or removal, which always fits right after
+     * the longest common prefix
+     */
+    private static void addShortScript(Callback callback, int oldStart, int n, int newStart,
+                                       int m, int d, IntList snakes) {
+        if (d == 0) {
+            snakes.add(oldStart, newStart, n);
+            return;
+        }
+        int prefix = 0;
+        int min = Math.min(n, m);
+        while (prefix < min && callback.areItemsTheSame(oldStart + prefix, newStart + prefix)) {
+            prefix++;
+        }
+        if (prefix > 0) {
+            snakes.add(oldStart, newStart, prefix);
+        }
+        if (n > m && n - prefix > 1) {
+            snakes.add(oldStart + prefix + 1, newStart + prefix, n - prefix - 1);
+        } else if (m > n && m - prefix > 1) {
+            snakes.add(oldStart + prefix, newStart + prefix + 1, m - prefix - 1);
+        }
+    }
+
+    private static int[] sortSnakes(IntList snakes) {
+        int count = snakes.size() / 3;
+        // Snakes don't overlap, so their order on the old list is their order on the new one
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) snakes.get(i * 3) << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] sorted = new int[count * 3];
+        for (int i = 0; i < count; i++) {
+            int index = (int) keys[i];
+            sorted[i * 3] = snakes.get(index * 3);
+            sorted[i * 3 + 1] = snakes.get(index * 3 + 1);
+            sorted[i * 3 + 2] = snakes.get(index * 3 + 2);
+        }
+        return sorted;
+    }
+
+    /*
+     * Flags every item as not changed, changed or moved, walking the snakes from the end
+     */
+    private void findMatchingItems() {
+        int posOld = mOldItemStatuses.length;
+        int posNew = mNewItemStatuses.length;
+        for (int i = mSnakeCount; i >= 0; i--) {
+            int x = i == 0 ? 0 : mSnakes[(i - 1) * 3];
+            int y = i == 0 ? 0 : mSnakes[(i - 1) * 3 + 1];
+            int size = i == 0 ? 0 : mSnakes[(i - 1) * 3 + 2];
+            int endX = x + size;
+            int endY = y + size;
+            if (mDetectMoves) {
+                while (posOld > endX) {
+                    if (mOldItemStatuses[posOld - 1] == 0) {
+                        findMatchingItem(posOld, posNew, i, false);
+                    }
+                    posOld--;
+                }
+                while (posNew > endY) {
+                    if (mNewItemStatuses[posNew - 1] == 0) {
+                        findMatchingItem(posOld, posNew, i, true);
+                    }
+                    posNew--;
+                }
+            }
+            for (int j = 0; j < size; j++) {
+                int oldItem = x + j;
+                int newItem = y + j;
+                int flag = mCallback.areContentsTheSame(oldItem, newItem)
+                        ? FLAG_NOT_CHANGED : FLAG_CHANGED;
+                mOldItemStatuses[oldItem] = (newItem << FLAG_OFFSET) | flag;
+                mNewItemStatuses[newItem] = (oldItem << FLAG_OFFSET) | flag;
+            }
+            posOld = x;
+            posNew = y;
+        }
+    }
+
+    /*
+     * Looks for the counterpart of a removed item (x - 1) among the insertions, or of an
+     * inserted item (y - 1) among the removals, in the gaps before the given snake
+     */
+    private void findMatchingItem(int x, int y, int snakeIndex, boolean insertion) {
+        int item = insertion ? y - 1 : x - 1;
+        int curX = insertion ? x : x - 1;
+        int curY = insertion ? y - 1 : y;
+        for (int i = snakeIndex; i >= 0; i--) {
+            int snakeX = i == 0 ? 0 : mSnakes[(i - 1) * 3];
+            int snakeY = i == 0 ? 0 : mSnakes[(i - 1) * 3 + 1];
+            int size = i == 0 ? 0 : mSnakes[(i - 1) * 3 + 2];
+            if (insertion) {
+                for (int pos = curX - 1; pos >= snakeX + size; pos--) {
+                    if (mCallback.areItemsTheSame(pos, item)) {
+                        int flag = mCallback.areContentsTheSame(pos, item)
+                                ? FLAG_MOVED_NOT_CHANGED : FLAG_MOVED_CHANGED;
+                        mNewItemStatuses[item] = (pos << FLAG_OFFSET) | FLAG_IGNORE;
+                        mOldItemStatuses[pos] = (item << FLAG_OFFSET) | flag;
+                        return;
+                    }
+                }
+            } else {
+                for (int pos = curY - 1; pos >= snakeY + size; pos--) {
+                    if (mCallback.areItemsTheSame(item, pos)) {
+                        int flag = mCallback.areContentsTheSame(item, pos)
+                                ? FLAG_MOVED_NOT_CHANGED : FLAG_MOVED_CHANGED;
+                        mOldItemStatuses[item] = (pos << FLAG_OFFSET) | FLAG_IGNORE;
+                        mNewItemStatuses[pos] = (item << FLAG_OFFSET) | flag;
+                        return;
+                    }
+                }
+            }
+            curX = snakeX;
+            curY = snakeY;
+        }
+    }
+
+    public int getOldListSize() {
+        return mOldItemStatuses.length;
+    }
+
+    public int getNewListSize() {
+        return mNewItemStatuses.length;
+    }
+
+    /**
+     * @param oldPosition position of an item in the old list
+     * @return its position in the new list, or {@link #NO_POSITION} if it was removed
+     */
+    public int convertOldPositionToNew(int oldPosition) {
+        int status = mOldItemStatuses[oldPosition];
+        return status == 0 ? NO_POSITION : status >> FLAG_OFFSET;
+    }
+
+    /**
+     * @param newPosition position of an item in the new list
+     * @return its position in the old list, or {@link #NO_POSITION} if it was inserted
+     */
+    public int convertNewPositionToOld(int newPosition) {
+        int status = mNewItemStatuses[newPosition];
+        return status == 0 ? NO_POSITION : status >> FLAG_OFFSET;
+    }
+
+    /**
+     * Reports the updates turning the old list into the new one, from its end to its start
+     */
+    public void dispatchUpdatesTo(UpdateCallback callback) {
+        BatchingCallback batching = new BatchingCallback(callback);
+        List<PostponedUpdate> postponed = new ArrayList<>();
+        int posOld = mOldItemStatuses.length;
+        int posNew = mNewItemStatuses.length;
+        for (int i = mSnakeCount; i >= 0; i--) {
+            int x = i == 0 ? 0 : mSnakes[(i - 1) * 3];
+            int y = i == 0 ? 0 : mSnakes[(i - 1) * 3 + 1];
+            int size = i == 0 ? 0 : mSnakes[(i - 1) * 3 + 2];
+            int endX = x + size;
+            int endY = y + size;
+            if (endX < posOld) {
+                dispatchRemovals(postponed, batching, endX, posOld - endX);
+            }
+            if (endY < posNew) {
+                dispatchInsertions(postponed, batching, endX, posNew - endY, endY);
+            }
+            for (int j = size - 1; j >= 0; j--) {
+                if ((mOldItemStatuses[x + j] & FLAG_MASK) == FLAG_CHANGED) {
+                    batching.onChanged(x + j, 1);
+                }
+            }
+            posOld = x;
+            posNew = y;
+        }
+        batching.flush();
+    }
+
+    private void dispatchInsertions(List<PostponedUpdate> postponed, UpdateCallback callback,
+                                    int start, int count, int newStart) {
+        if (!mDetectMoves) {
+            callback.onInserted(start, count);
+            return;
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            int status = mNewItemStatuses[newStart + i];
+            switch (status & FLAG_MASK) {
+                case 0:
+                    callback.onInserted(start, 1);
+                    for (PostponedUpdate update : postponed) {
+                        update.mCurrentPos++;
+                    }
+                    break;
+                case FLAG_MOVED_NOT_CHANGED:
+                case FLAG_MOVED_CHANGED:
+                    PostponedUpdate removal =
+                            removePostponedUpdate(postponed, status >> FLAG_OFFSET, true);
+                    callback.onMoved(removal.mCurrentPos, start);
+                    if ((status & FLAG_MASK) == FLAG_MOVED_CHANGED) {
+                        callback.onChanged(start, 1);
+                    }
+                    break;
+                case FLAG_IGNORE:
+                    postponed.add(new PostponedUpdate(newStart + i, start, false));
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected status of inserted item "
+                            + (newStart + i) + ": " + (status & FLAG_MASK));
+            }
+        }
+    }
+
+    private void dispatchRemovals(List<PostponedUpdate> postponed, UpdateCallback callback,
+                                  int start, int count) {
+        if (!mDetectMoves) {
+            callback.onRemoved(start, count);
+            return;
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            int status = mOldItemStatuses[start + i];
+            switch (status & FLAG_MASK) {
+                case 0:
+                    callback.onRemoved(start + i, 1);
+                    for (PostponedUpdate update : postponed) {
+                        update.mCurrentPos--;
+                    }
+                    break;
+                case FLAG_MOVED_NOT_CHANGED:
+                case FLAG_MOVED_CHANGED:
+                    PostponedUpdate insertion =
+                            removePostponedUpdate(postponed, status >> FLAG_OFFSET, false);
+                    // Taking the item out shifts where it goes by one
+                    callback.onMoved(start + i, insertion.mCurrentPos - 1);
+                    if ((status & FLAG_MASK) == FLAG_MOVED_CHANGED) {
+                        callback.onChanged(insertion.mCurrentPos - 1, 1);
+                    }
+                    break;
+                case FLAG_IGNORE:
+                    postponed.add(new PostponedUpdate(start + i, start + i, true));
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected status of removed item "
+                            + (start + i) + ": " + (status & FLAG_MASK));
+            }
+        }
+    }
+
+    private static PostponedUpdate removePostponedUpdate(List<PostponedUpdate> postponed,
+                                                         int posInOwnerList, boolean removal) {
+        for (int i = postponed.size() - 1; i >= 0; i--) {
+            PostponedUpdate update = postponed.get(i);
+            if (update.mPosInOwnerList == posInOwnerList && update.mRemoval == removal) {
+                postponed.remove(i);
+                // The updates after it were reported while the item was still there
+                for (int j = i; j < postponed.size(); j++) {
+                    postponed.get(j).mCurrentPos += removal ? 1 : -1;
+                }
+                return update;
+            }
+        }
+        throw new IllegalStateException("No postponed update for item " + posInOwnerList);
+    }
+
+    /**
+     * Access to the two lists being compared, called from the thread calculating the difference
+     */
+    public abstract static class Callback {
+        public abstract int getOldListSize();
+
+        public abstract int getNewListSize();
+
+        /**
+         * @return whether the two items stand for the same entity, usually by comparing ids
+         */
+        public abstract boolean areItemsTheSame(int oldPosition, int newPosition);
+
+        /**
+         * Only called for items that are the same
+         * @return whether the two items show the same, so that the old one needs no rebind
+         */
+        public abstract boolean areContentsTheSame(int oldPosition, int newPosition);
+    }
+
+    /**
+     * Receives the updates, with the signatures of the Adapter notifications
+     */
+    public interface UpdateCallback {
+        void onInserted(int position, int count);
+
+        void onRemoved(int position, int count);
+
+        void onMoved(int fromPosition, int toPosition);
+
+        void onChanged(int position, int count);
+    }
+
+    /*
+     * A half of a move whose other half hasn't been reached yet, with its current position
+     */
+    private static class PostponedUpdate {
+        private final int mPosInOwnerList;
+        private final boolean mRemoval;
+        private int mCurrentPos;
+
+        PostponedUpdate(int posInOwnerList, int currentPos, boolean removal) {
+            mPosInOwnerList = posInOwnerList;
+            mCurrentPos = currentPos;
+            mRemoval = removal;
+        }
+    }
+
+    /*
+     * Merges single item updates of the same type that touch each other
+     */
+    private static class BatchingCallback implements UpdateCallback {
+        private static final int TYPE_NONE = 0;
+        private static final int TYPE_INSERT = 1;
+        private static final int TYPE_REMOVE = 2;
+        private static final int TYPE_CHANGE = 3;
+
+        private final UpdateCallback mWrapped;
+        private int mType = TYPE_NONE;
+        private int mPosition;
+        private int mCount;
+
+        BatchingCallback(UpdateCallback wrapped) {
+            mWrapped = wrapped;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            // Updates come from the end, so an insertion at the same place goes before the batch
+            if (mType == TYPE_INSERT && position == mPosition) {
+                mCount += count;
+                return;
+            }
+            flush();
+            set(TYPE_INSERT, position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            if (mType == TYPE_REMOVE && position + count == mPosition) {
+                mPosition = position;
+                mCount += count;
+                return;
+            }
+            flush();
+            set(TYPE_REMOVE, position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            flush();
+            mWrapped.onMoved(fromPosition, toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            if (mType == TYPE_CHANGE && position + count == mPosition) {
+                mPosition = position;
+                mCount += count;
+                return;
+            }
+            flush();
+            set(TYPE_CHANGE, position, count);
+        }
+
+        private void set(int type, int position, int count) {
+            mType = type;
+            mPosition = position;
+            mCount = count;
+        }
+
+        void flush() {
+            switch (mType) {
+                case TYPE_INSERT:
+                    mWrapped.onInserted(mPosition, mCount);
+                    break;
+                case TYPE_REMOVE:
+                    mWrapped.onRemoved(mPosition, mCount);
+                    break;
+                case TYPE_CHANGE:
+                    mWrapped.onChanged(mPosition, mCount);
+                    break;
+                default:
+                    break;
+            }
+            mType = TYPE_NONE;
+        }
+    }
+
+    /*
+     * Growable list of ints, to keep snakes and ranges unboxed
+     */
+    private static class IntList {
+        private int[] mValues = new int[48];
+        private int mSize;
+
+        void add(int a, int b, int c) {
+            ensureCapacity(3);
+            mValues[mSize++] = a;
+            mValues[mSize++] = b;
+            mValues[mSize++] = c;
+        }
+
+        void add(int a, int b, int c, int d) {
+            ensureCapacity(4);
+            mValues[mSize++] = a;
+            mValues[mSize++] = b;
+            mValues[mSize++] = c;
+            mValues[mSize++] = d;
+        }
+
+        int pop() {
+            return mValues[--mSize];
+        }
+
+        int get(int index) {
+            return mValues[index];
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (mSize + extra > mValues.length) {
+                mValues = Arrays.copyOf(mValues, Math.max(mValues.length * 2, mSize + extra));
+            }
+        }
+    }
+}
@@ -1,17 +1,34 @@
 package com.carl.recyclerview;
 
 import android.graphics.Rect;
+import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
 
+import java.util.Arrays;
+
 /**
  * Decoration that adds margin item views of RecyclerView. If you want to refresh margin settings,
- * try calling {@link RecyclerView#invalidateItemDecorations()}
+ * try calling {@link RecyclerView#invalidateItemDecorations()}. Head and tail margins are added
+ * along the scrolling axis: left/right in horizontal layouts, top/bottom in vertical ones, and
+ * left out when a {@link SnappyLinearLayoutManager} loops.
+ * <p>
+ * Margins could be overridden per view type and per range of adapter positions, range rules take
+ * precedence over view type rules, and later range rules over earlier ones. Rules are resolved
+ * into a table of one rule index per adapter position, which is rebuilt only after the adapter
+ * reports a change, so offsets of a child are looked up in O(1). The adapter is observed from
+ * {@link #attachToRecyclerView(RecyclerView)} until the decoration is attached to null, and
+ * when the RecyclerView swaps adapters, the new one is observed instead.
  *
  * @author carl
  */
 public class MarginDecoration extends RecyclerView.ItemDecoration {
 
+    /*
+     * Rule index of the uniform margins set through setMarginLeft() etc.
+     */
+    private static final int DEFAULT_RULE = 0;
+    private static final int NO_VIEW_TYPE = Integer.MIN_VALUE;
 
     private int mMarginHead;
     private int mMarginTail;
@@ -20,9 +37,128 @@ public class MarginDecoration extends RecyclerView.ItemDecoration {
     private int mMarginRight;
     private int mMarginBottom;
 
+    /*
+     * Margins of rules, 4 ints per rule in left, top, right, bottom order, rule 0 is unused
+     */
+    private int[] mRuleMargins = new int[4];
+    private int mRuleCount = 1;
+    /*
+     * Keys of rules, the view type for view type rules, NO_VIEW_TYPE and a position range
+     * [start, end) for range rules
+     */
+    private int[] mRuleViewTypes = new int[1];
+    private int[] mRuleRangeStarts = new int[1];
+    private int[] mRuleRangeEnds = new int[1];
+    private boolean mHasViewTypeRules;
+
+    private RecyclerView mRecyclerView;
+    private RecyclerView.Adapter mAdapter;
+    private int mItemCount;
+    /*
+     * Index of the rule that applies to each adapter position, null if there are no rules
+     */
+    private int[] mPositionRules;
+    private boolean mTableDirty = true;
+    private final RecyclerView.AdapterDataObserver mAdapterDataObserver =
+            new RecyclerView.AdapterDataObserver() {
+                @Override
+                public void onChanged() {
+                    mTableDirty = true;
+                }
+
+                @Override
+                public void onItemRangeChanged(int positionStart, int itemCount) {
+                    // View types of changed items may have changed as well
+                    mTableDirty |= mHasViewTypeRules;
+                }
+
+                @Override
+                public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+                    mTableDirty |= mHasViewTypeRules;
+                }
+
+                @Override
+                public void onItemRangeInserted(int positionStart, int itemCount) {
+                    mTableDirty = true;
+                }
+
+                @Override
+                public void onItemRangeRemoved(int positionStart, int itemCount) {
+                    mTableDirty = true;
+                }
+
+                @Override
+                public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                    mTableDirty = true;
+                }
+            };
+
     public MarginDecoration() {
     }
 
+    /**
+     * Adds this decoration to given RecyclerView and observes its adapter, pass null to remove
+     * it from the current one and stop observing
+     * @param rv the RecyclerView to decorate, or null
+     */
+    public void attachToRecyclerView(RecyclerView rv) {
+        if (rv == mRecyclerView) {
+            return;
+        }
+        if (mRecyclerView != null) {
+            mRecyclerView.removeItemDecoration(this);
+        }
+        mRecyclerView = rv;
+        setAdapter(rv == null ? null : rv.getAdapter());
+        if (rv != null) {
+            rv.addItemDecoration(this);
+        }
+    }
+
+    /**
+     * Overrides margins of item views of given view type
+     * @param viewType the view type returned by {@link RecyclerView.Adapter#getItemViewType(int)}
+     * @param left left margin in px
+     * @param top top margin in px
+     * @param right right margin in px
+     * @param bottom bottom margin in px
+     */
+    public void setMarginsForViewType(int viewType, int left, int top, int right, int bottom) {
+        for (int i = 1; i < mRuleCount; i++) {
+            if (mRuleViewTypes[i] == viewType) {
+                setRuleMargins(i, left, top, right, bottom);
+                return;
+            }
+        }
+        int rule = addRule(viewType, 0, 0);
+        setRuleMargins(rule, left, top, right, bottom);
+        mHasViewTypeRules = true;
+    }
+
+    /**
+     * Overrides margins of item views in a range of adapter positions
+     * @param positionStart first adapter position of the range
+     * @param itemCount number of positions in the range
+     * @param left left margin in px
+     * @param top top margin in px
+     * @param right right margin in px
+     * @param bottom bottom margin in px
+     */
+    public void setMarginsForPositionRange(int positionStart, int itemCount, int left, int top,
+                                           int right, int bottom) {
+        int rule = addRule(NO_VIEW_TYPE, positionStart, positionStart + itemCount);
+        setRuleMargins(rule, left, top, right, bottom);
+    }
+
+    /**
+     * Removes all view type and position range rules
+     */
+    public void clearMarginRules() {
+        mRuleCount = 1;
+        mHasViewTypeRules = false;
+        mTableDirty = true;
+    }
+
     public int getMarginHead() {
         return mMarginHead;
     }
@@ -74,20 +210,126 @@ public class MarginDecoration extends RecyclerView.ItemDecoration {
     @Override
     public void getItemOffsets(Rect outRect, View view, RecyclerView parent, RecyclerView.State state) {
         super.getItemOffsets(outRect, view, parent, state);
-        int adapterPos = parent.getChildAdapterPosition(view);
         RecyclerView.Adapter adapter = parent.getAdapter();
-        int itemCount = adapter.getItemCount();
+        if (adapter != mAdapter) {
+            // The adapter has been swapped, or the decoration added without attaching it
+            setAdapter(adapter);
+        }
+        if (mTableDirty) {
+            rebuildTable();
+        }
+        int adapterPos = parent.getChildAdapterPosition(view);
 
-        outRect.left = mMarginLeft;
-        outRect.top = mMarginTop;
-        outRect.right = mMarginRight;
-        outRect.bottom = mMarginBottom;
+        int rule = DEFAULT_RULE;
+        if (mPositionRules != null && adapterPos >= 0 && adapterPos < mItemCount) {
+            rule = mPositionRules[adapterPos];
+        }
+        if (rule == DEFAULT_RULE) {
+            outRect.left = mMarginLeft;
+            outRect.top = mMarginTop;
+            outRect.right = mMarginRight;
+            outRect.bottom = mMarginBottom;
+        } else {
+            int offset = rule * 4;
+            outRect.left = mRuleMargins[offset];
+            outRect.top = mRuleMargins[offset + 1];
+            outRect.right = mRuleMargins[offset + 2];
+            outRect.bottom = mRuleMargins[offset + 3];
+        }
+        RecyclerView.LayoutManager lm = parent.getLayoutManager();
+        boolean vertical = lm instanceof LinearLayoutManager
+                && ((LinearLayoutManager) lm).getOrientation() == LinearLayoutManager.VERTICAL;
+        if (lm instanceof SnappyLinearLayoutManager
+                && ((SnappyLinearLayoutManager) lm).isLoopEnabled()) {
+            // A loop has neither head nor tail
+            return;
+        }
         if (adapterPos == 0) {
-            outRect.left += mMarginHead;
+            if (vertical) {
+                outRect.top += mMarginHead;
+            } else {
+                outRect.left += mMarginHead;
+            }
         }
 
-        if (adapterPos == itemCount - 1) {
-            outRect.right += mMarginTail;
+        if (adapterPos == mItemCount - 1) {
+            if (vertical) {
+                outRect.bottom += mMarginTail;
+            } else {
+                outRect.right += mMarginTail;
+            }
+        }
+    }
+
+    private void setAdapter(RecyclerView.Adapter adapter) {
+        if (mAdapter != null) {
+            mAdapter.unregisterAdapterDataObserver(mAdapterDataObserver);
+        }
+        mAdapter = adapter;
+        if (adapter != null) {
+            adapter.registerAdapterDataObserver(mAdapterDataObserver);
+        }
+        mTableDirty = true;
+    }
+
+    private int addRule(int viewType, int rangeStart, int rangeEnd) {
+        int rule = mRuleCount++;
+        if (mRuleViewTypes.length < mRuleCount) {
+            int capacity = mRuleCount * 2;
+            mRuleViewTypes = Arrays.copyOf(mRuleViewTypes, capacity);
+            mRuleRangeStarts = Arrays.copyOf(mRuleRangeStarts, capacity);
+            mRuleRangeEnds = Arrays.copyOf(mRuleRangeEnds, capacity);
+            mRuleMargins = Arrays.copyOf(mRuleMargins, capacity * 4);
+        }
+        mRuleViewTypes[rule] = viewType;
+        mRuleRangeStarts[rule] = rangeStart;
+        mRuleRangeEnds[rule] = rangeEnd;
+        mTableDirty = true;
+        return rule;
+    }
+
+    private void setRuleMargins(int rule, int left, int top, int right, int bottom) {
+        int offset = rule * 4;
+        mRuleMargins[offset] = left;
+        mRuleMargins[offset + 1] = top;
+        mRuleMargins[offset + 2] = right;
+        mRuleMargins[offset + 3] = bottom;
+    }
+
+    /*
+     * Resolves the rule of every adapter position, O(item count + covered positions)
+     */
+    private void rebuildTable() {
+        mTableDirty = false;
+        mItemCount = mAdapter == null ? 0 : mAdapter.getItemCount();
+        if (mRuleCount == 1) {
+            mPositionRules = null;
+            return;
+        }
+        if (mPositionRules == null || mPositionRules.length < mItemCount) {
+            mPositionRules = new int[mItemCount];
+        }
+        Arrays.fill(mPositionRules, 0, mItemCount, DEFAULT_RULE);
+        if (mHasViewTypeRules) {
+            for (int pos = 0; pos < mItemCount; pos++) {
+                int viewType = mAdapter.getItemViewType(pos);
+                for (int rule = 1; rule < mRuleCount; rule++) {
+                    if (mRuleViewTypes[rule] == viewType) {
+                        mPositionRules[pos] = rule;
+                        break;
+                    }
+                }
+            }
+        }
+        for (int rule = 1; rule < mRuleCount; rule++) {
+            if (mRuleViewTypes[rule] != NO_VIEW_TYPE) {
+                continue;
+            }
+            int start = Math.max(0, mRuleRangeStarts[rule]);
+            int end = Math.min(mItemCount, mRuleRangeEnds[rule]);
+            for (int pos = start; pos < end; pos++) {
+                mPositionRules[pos] = rule;
+            }
         }
     }
 }
@@ -1,18 +1,45 @@
 package com.carl.recyclerview;
 
+import android.os.SystemClock;
 import android.support.v4.view.MotionEventCompat;
+import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
 
 /**
+ * Scales and moves an item view towards the bottom right corner of the RecyclerView while it's
+ * panned down. When the finger lifts, the transition either completes into the mini view or
+ * reverts, depending on the release velocity and how far it got, and settles on a
+ * ViewPropertyAnimator so that it finishes smoothly even when the main thread is busy.
+ * <p>
+ * The settle takes an end action rather than the single listener slot of the animator, and
+ * every settle tags the view with its own end action, so that a settle replaced by a newer one
+ * ends nothing. A settle cancelled by another animation of the view never runs its end action;
+ * it's given up without a callback once its duration has passed by more than
+ * {@link #SETTLE_TIMEOUT_SLACK}, and a view removed or recycled while settling is cancelled and
+ * reset to its original bounds without a callback.
+ *
  * @author carl
  */
 public class PanDownTransitionGestureHelper implements View.OnTouchListener {
+    public static final float DEFAULT_TARGET_SCALE = 0.6F;
+    public static final float DEFAULT_COMMIT_THRESHOLD_RATIO = 0.5F;
+    public static final float DEFAULT_COMMIT_THRESHOLD_SPEED_DP_PER_SECOND = 800F;
+    public static final long DEFAULT_SETTLE_DURATION = 300;
+    private static final long MIN_SETTLE_DURATION = 80;
+    /**
+     * Time after the expected end of a settle at which it's considered cancelled
+     */
+    public static final long SETTLE_TIMEOUT_SLACK = 500;
     private static final float DEFAULT_GESTURE_DETECTION_RANGE = 20F;
     private static final String TAG = "PanDownHelper";
+    private static final boolean DEBUG = BuildConfig.DEBUG;
     private static final float SQRT_OF_TWO = (float) Math.sqrt(2.0D);
+    private static final Interpolator SETTLE_INTERPOLATOR = new DecelerateInterpolator(1.5F);
     private float mInitX;
     private float mInitY;
     private float mDx;
@@ -20,10 +47,102 @@ public class PanDownTransitionGestureHelper implements View.OnTouchListener {
     private boolean mGestureInAction;
     private RecyclerView mRecyclerView;
     private View mSelectedView;
+    private LayerRenderPolicy mLayerRenderPolicy;
+    /*
+     * The view promoted to a hardware layer for the running gesture, if any
+     */
+    private View mLayerView;
+    private int mActivePointerId = MotionEvent.INVALID_POINTER_ID;
+    private final VelocityEstimator mVelocityEstimator = new VelocityEstimator();
+    private float mTargetScale = DEFAULT_TARGET_SCALE;
+    private float mCommitThresholdRatio = DEFAULT_COMMIT_THRESHOLD_RATIO;
+    private float mCommitThresholdSpeedDpPerSecond = DEFAULT_COMMIT_THRESHOLD_SPEED_DP_PER_SECOND;
+    private long mSettleDuration = DEFAULT_SETTLE_DURATION;
+    private OnPanTransitionListener mOnPanTransitionListener;
+    /*
+     * Bounds of the transition, cached when the pan starts so that moves only interpolate
+     */
+    private float mStartRight;
+    private float mStartBottom;
+    private float mTargetRight;
+    private float mTargetBottom;
+    private float mPanExtent;
+    private float mProgress;
+    /*
+     * The view settling after release, touches are ignored until it's done
+     */
+    private View mSettlingView;
+    private boolean mSettleCommitted;
+    private long mSettleDeadline;
+    private final DragResampler mDragResampler = new DragResampler(new DragResampler.Callback() {
+        @Override
+        public void onDragUpdate(float x, float y) {
+            if (mGestureInAction && mSelectedView != null) {
+                handlePanAction(mSelectedView, x - mInitX, y - mInitY);
+            }
+        }
+    });
 
     public PanDownTransitionGestureHelper() {
     }
 
+    public LayerRenderPolicy getLayerRenderPolicy() {
+        return mLayerRenderPolicy;
+    }
+
+    /**
+     * Sets the policy used to promote the selected view to a hardware layer while it's being
+     * scaled and moved, null by default which leaves layers untouched
+     * @param policy the policy to use, or null
+     */
+    public void setLayerRenderPolicy(LayerRenderPolicy policy) {
+        releaseLayer();
+        mLayerRenderPolicy = policy;
+    }
+
+    /**
+     * @param scale scale of the item view once the transition completes, 0.6 by default
+     */
+    public void setTargetScale(float scale) {
+        mTargetScale = scale;
+    }
+
+    /**
+     * @param ratio the transition completes on release when it has progressed further than this
+     *              ratio, 0.5 by default
+     */
+    public void setCommitThresholdRatio(float ratio) {
+        mCommitThresholdRatio = ratio;
+    }
+
+    /**
+     * @param dpPerSecond the transition completes on release when the finger moves down at least
+     *                    this fast, whatever the progress. 800dp/s by default
+     */
+    public void setCommitThresholdSpeed(float dpPerSecond) {
+        mCommitThresholdSpeedDpPerSecond = dpPerSecond;
+    }
+
+    /**
+     * @param duration longest duration of the settle animation after release, it's shortened
+     *                 to keep up with a fast release
+     */
+    public void setSettleDuration(long duration) {
+        mSettleDuration = duration;
+    }
+
+    public void setOnPanTransitionListener(OnPanTransitionListener listener) {
+        mOnPanTransitionListener = listener;
+    }
+
+    /**
+     * @return true if a released view is still animating to its final state
+     */
+    public boolean isSettling() {
+        checkSettleTimeout();
+        return mSettlingView != null;
+    }
+
     public void attachToRecyclerView(RecyclerView rv, ViewOnTouchDelegate delegate) {
         if (delegate != null) {
             delegate.addOnTouchListener(this);
@@ -31,6 +150,21 @@ public class PanDownTransitionGestureHelper implements View.OnTouchListener {
             rv.setOnTouchListener(this);
         }
         this.mRecyclerView = rv;
+        rv.addOnChildAttachStateChangeListener(new RecyclerView.OnChildAttachStateChangeListener() {
+            @Override
+            public void onChildViewAttachedToWindow(View view) {
+            }
+
+            @Override
+            public void onChildViewDetachedFromWindow(View view) {
+                if (view == mSettlingView) {
+                    // Its holder is about to be reused, it must not keep the transition
+                    ViewCompat.animate(view).cancel();
+                    resetSettle();
+                    resetViewTransformation(view);
+                }
+            }
+        });
     }
 
     @Override
@@ -38,11 +172,22 @@ public class PanDownTransitionGestureHelper implements View.OnTouchListener {
         int pointerIndex = MotionEventCompat.getActionIndex(e);
         switch (e.getAction()) {
             case MotionEvent.ACTION_DOWN:
+                mActivePointerId = MotionEventCompat.getPointerId(e, pointerIndex);
                 mInitX = MotionEventCompat.getX(e, pointerIndex);
                 mInitY = MotionEventCompat.getY(e, pointerIndex);
-                mSelectedView = mRecyclerView.findChildViewUnder(mInitX, mInitY);
+                mVelocityEstimator.clear();
+                addMovement(e);
+                checkSettleTimeout();
+                // A settling view is left alone until it has reached its final state
+                mSelectedView = mSettlingView != null ? null
+                        : mRecyclerView.findChildViewUnder(mInitX, mInitY);
                 break;
             case MotionEvent.ACTION_MOVE:
+                pointerIndex = MotionEventCompat.findPointerIndex(e, mActivePointerId);
+                if (pointerIndex < 0) {
+                    break;
+                }
+                addMovement(e);
                 float x = MotionEventCompat.getX(e, pointerIndex);
                 float y = MotionEventCompat.getY(e, pointerIndex);
                 mDx = x - mInitX;
@@ -58,56 +203,211 @@ public class PanDownTransitionGestureHelper implements View.OnTouchListener {
                 }
 
                 if (!mGestureInAction && mDy > 0 && Math.abs(mDy) > Math.abs(mDx) * SQRT_OF_TWO) {
-                    Log.d(TAG, "Pan in action");
+                    if (DEBUG) {
+                        Log.d(TAG, "Pan in action");
+                    }
                     mGestureInAction = true;
+                    cacheBounds(mSelectedView);
+                    mDragResampler.start(mActivePointerId);
+                    if (mLayerRenderPolicy != null) {
+                        mLayerView = mSelectedView;
+                        mLayerRenderPolicy.promote(mLayerView);
+                    }
                     // Elevate selected view a little bit so that it renders on top of other views
 //                    mSelectedView.setZ(0.1f);
                 }
                 if (mGestureInAction) {
-                    handlePanAction(mSelectedView, mDx, mDy);
+                    // The view is transformed once per frame by the resampler
+                    mDragResampler.addMovement(e);
                 }
                 break;
             case MotionEvent.ACTION_UP:
-                mGestureInAction = false;
+                if (mGestureInAction) {
+                    addMovement(e);
+                    mDragResampler.flush();
+                    mDragResampler.stop();
+                    mGestureInAction = false;
+                    settle(v, mSelectedView,
+                            mVelocityEstimator.getYVelocity(mActivePointerId));
+                    // Claim the up event so that it doesn't turn into a click
+                    return true;
+                }
                 break;
             case MotionEvent.ACTION_CANCEL:
-                mGestureInAction = false;
+                if (mGestureInAction) {
+                    mDragResampler.stop();
+                    mGestureInAction = false;
+                    settle(v, mSelectedView, 0F);
+                }
                 break;
         }
         return mGestureInAction;
     }
 
+    private void addMovement(MotionEvent e) {
+        int pointerIndex = MotionEventCompat.findPointerIndex(e, mActivePointerId);
+        if (pointerIndex < 0) {
+            return;
+        }
+        for (int h = 0; h < e.getHistorySize(); h++) {
+            mVelocityEstimator.addSample(mActivePointerId, e.getHistoricalEventTime(h),
+                    e.getHistoricalX(pointerIndex, h), e.getHistoricalY(pointerIndex, h));
+        }
+        mVelocityEstimator.addSample(mActivePointerId, e.getEventTime(),
+                MotionEventCompat.getX(e, pointerIndex), MotionEventCompat.getY(e, pointerIndex));
+    }
+
+    private void cacheBounds(View selectedView) {
+        mStartRight = selectedView.getRight();
+        mStartBottom = selectedView.getBottom();
+        mTargetRight = mRecyclerView.getRight();
+        mTargetBottom = mRecyclerView.getBottom();
+        mPanExtent = mTargetBottom - mInitY;
+        mProgress = 0F;
+    }
+
+    /**
+     * Completes or reverts the transition of a released view
+     * @param velocityY release velocity along Y, in pixels per second
+     */
+    private void settle(View v, View selectedView, float velocityY) {
+        float density = v.getContext().getResources().getDisplayMetrics().density;
+        boolean commit = velocityY >= 0 && SwipeDecision.shouldCommit(velocityY, density,
+                mProgress, 1F, mCommitThresholdSpeedDpPerSecond, mCommitThresholdRatio);
+        if (DEBUG) {
+            Log.d(TAG, String.format("settle: progress %f, velocity %f, commit %b",
+                    mProgress, velocityY, commit));
+        }
+        float target = commit ? 1F : 0F;
+        // Keep up with the finger: never slower than the release velocity would take
+        long duration = (long) (mSettleDuration * Math.abs(target - mProgress));
+        float remaining = Math.abs(target - mProgress) * mPanExtent;
+        if (Math.abs(velocityY) > 0F && remaining > 0F) {
+            duration = Math.min(duration, (long) (remaining / Math.abs(velocityY) * 1000F));
+        }
+        duration = Math.max(duration, MIN_SETTLE_DURATION);
+        float scale = MathUtils.lerp(1F, mTargetScale, target);
+        float right = MathUtils.lerp(mStartRight, mTargetRight, target);
+        float bottom = MathUtils.lerp(mStartBottom, mTargetBottom, target);
+        mSettlingView = selectedView;
+        mSettleCommitted = commit;
+        mSettleDeadline = SystemClock.uptimeMillis() + duration + SETTLE_TIMEOUT_SLACK;
+        final View view = selectedView;
+        Runnable endAction = new Runnable() {
+            @Override
+            public void run() {
+                // Tagged with a newer end action if the view has settled again since
+                if (view.getTag(R.id.pan_down_settle_token) == this) {
+                    onSettleEnd(view);
+                }
+            }
+        };
+        view.setTag(R.id.pan_down_settle_token, endAction);
+        ViewCompat.animate(view)
+                .scaleX(scale)
+                .scaleY(scale)
+                .x(right - view.getWidth() * scale)
+                .y(bottom - view.getHeight() * scale)
+                .setDuration(duration)
+                .setInterpolator(SETTLE_INTERPOLATOR)
+                .withEndAction(endAction)
+                .start();
+    }
+
+    /*
+     * Gives up a settle whose end action should have run by now, its animation has been
+     * cancelled or replaced by another one
+     */
+    private void checkSettleTimeout() {
+        if (mSettlingView != null && SystemClock.uptimeMillis() > mSettleDeadline) {
+            if (DEBUG) {
+                Log.d(TAG, "settle timed out");
+            }
+            resetSettle();
+        }
+    }
+
+    private void onSettleEnd(View view) {
+        if (view != mSettlingView) {
+            return;
+        }
+        resetSettle();
+        if (mOnPanTransitionListener != null) {
+            mOnPanTransitionListener.onPanTransitionEnd(mRecyclerView, view,
+                    mRecyclerView.getChildAdapterPosition(view), mSettleCommitted);
+        }
+    }
+
+    private void resetSettle() {
+        if (mSettlingView != null) {
+            mSettlingView.setTag(R.id.pan_down_settle_token, null);
+            mSettlingView = null;
+        }
+        releaseLayer();
+    }
+
+    private static void resetViewTransformation(View view) {
+        view.setScaleX(1F);
+        view.setScaleY(1F);
+        view.setTranslationX(0F);
+        view.setTranslationY(0F);
+    }
+
+    private void releaseLayer() {
+        if (mLayerView != null) {
+            if (mLayerRenderPolicy != null) {
+                mLayerRenderPolicy.release(mLayerView);
+            }
+            mLayerView = null;
+        }
+    }
+
     private void handlePanAction(View selectedView, float dx, float dy) {
-        float progress = dy / (mRecyclerView.getBottom() - mInitY);
-        applyViewTransformation(selectedView, progress);
+        float progress = mPanExtent > 0F ? dy / mPanExtent : 1F;
+        applyViewTransformation(selectedView, Math.max(0F, Math.min(1F, progress)));
     }
 
     private void applyViewTransformation(View selectedView, float progress) {
-        if (selectedView == null || progress < 0 || progress > 1.0F) {
+        if (selectedView == null) {
             return;
         }
-        float targetBottom = mRecyclerView.getBottom();
-        float targetRight = mRecyclerView.getRight();
-        float targetScale = 0.6f;
+        mProgress = progress;
+        float targetBottom = mTargetBottom;
+        float targetRight = mTargetRight;
 
-        float curScale = MathUtils.lerp(1, targetScale, progress);
+        float curScale = MathUtils.lerp(1, mTargetScale, progress);
 
-        float startRight = selectedView.getRight();
-        float startBottom = selectedView.getBottom();
+        float startRight = mStartRight;
+        float startBottom = mStartBottom;
         float curRight = MathUtils.lerp(startRight, targetRight, progress);
         float curBottom = MathUtils.lerp(startBottom, targetBottom, progress);
         float curX = curRight - (float) selectedView.getWidth() * curScale;
         float curY = curBottom - (float) selectedView.getHeight() * curScale;
 
-        Log.d(TAG, String.format("startRight: %f startBottom: %f curRight: %f curBottom %f " +
-                "targetRight: %f targetBottom: %f progress: %f curScale: %f curX: %f " +
-                "curY: %f view.getWidth(): %d view.getHeight(): %d",
-                startRight, startBottom, curRight, curBottom, targetRight, targetBottom,
-                progress, curScale, curX, curY, selectedView.getWidth(), selectedView.getHeight()));
+        if (DEBUG) {
+            Log.d(TAG, String.format("startRight: %f startBottom: %f curRight: %f curBottom %f " +
+                    "targetRight: %f targetBottom: %f progress: %f curScale: %f curX: %f " +
+                    "curY: %f view.getWidth(): %d view.getHeight(): %d",
+                    startRight, startBottom, curRight, curBottom, targetRight, targetBottom,
+                    progress, curScale, curX, curY, selectedView.getWidth(), selectedView.getHeight()));
+        }
 
         selectedView.setScaleX(curScale);
         selectedView.setScaleY(curScale);
         selectedView.setX(curX);
         selectedView.setY(curY);
     }
+
+    public interface OnPanTransitionListener {
+        /**
+         * Called once a released view has settled
+         * @param rv the RecyclerView
+         * @param view the item view
+         * @param adapterPosition adapter position of the item, or RecyclerView.NO_POSITION
+         * @param committed true if the view has completed the transition into the mini view,
+         *                  false if it has reverted to its original bounds
+         */
+        void onPanTransitionEnd(RecyclerView rv, View view, int adapterPosition,
+                                boolean committed);
+    }
 }
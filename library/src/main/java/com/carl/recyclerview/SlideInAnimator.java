@@ -1,134 +1,520 @@
 package com.carl.recyclerview;
 
-import android.support.v4.view.ViewCompat;
-import android.support.v4.view.ViewPropertyAnimatorCompat;
-import android.support.v4.view.ViewPropertyAnimatorListener;
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.TimeInterpolator;
+import android.animation.ValueAnimator;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.SimpleItemAnimator;
 import android.util.Log;
 import android.view.View;
+import android.view.animation.AccelerateInterpolator;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.LinearInterpolator;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
+ * Item animator that slides added items in, slides removed items out, and translates moved and
+ * changed items into place. Animations are kept in flat arrays indexed by a slot number stored
+ * in the tag of the item view, so finding and cancelling the animation of a holder is O(1).
+ * Every batch of animations is started in the same frame and stepped by one shared
+ * {@link ValueAnimator}: removals run first, moves and changes after removals, additions last.
+ * Slots are timed by the play time of that animator, so the animator duration scale of the
+ * developer options applies, and with animations off every slot finishes on the first frame.
+ *
  * @author carl
  */
 public class SlideInAnimator extends SimpleItemAnimator {
 
     private static final String TAG = "SlideInAnimator";
-    public Map<RecyclerView.ViewHolder, ViewPropertyAnimatorCompat>
-            mPendingAnimations = new HashMap<>();
-    private Map<RecyclerView.ViewHolder, ViewPropertyAnimatorCompat>
-            mRunningAnimations = new HashMap<>();
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+
+    private static final int TYPE_ADD = 0;
+    private static final int TYPE_REMOVE = 1;
+    private static final int TYPE_MOVE = 2;
+    private static final int TYPE_CHANGE_OLD = 3;
+    private static final int TYPE_CHANGE_NEW = 4;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long NOT_STARTED = -1;
+    /*
+     * Unscaled duration of the driver, slots still running when it ends are finished
+     */
+    private static final long DRIVER_DURATION = 60 * 60 * 1000;
+
+    private static final TimeInterpolator ADD_INTERPOLATOR = new DecelerateInterpolator();
+    private static final TimeInterpolator REMOVE_INTERPOLATOR = new AccelerateInterpolator();
+    private static final TimeInterpolator MOVE_INTERPOLATOR = new DecelerateInterpolator();
+
+    private boolean mSlideAlongX;
+    private LayerRenderPolicy mLayerRenderPolicy;
+
+    /*
+     * Animation slots, slots [0, mCount) are in use. Translations are relative to the final
+     * position of the item view.
+     */
+    private int mCount;
+    private RecyclerView.ViewHolder[] mHolders = new RecyclerView.ViewHolder[INITIAL_CAPACITY];
+    private SlotRef[] mSlotRefs = new SlotRef[INITIAL_CAPACITY];
+    private int[] mTypes = new int[INITIAL_CAPACITY];
+    private float[] mFromTranslationX = new float[INITIAL_CAPACITY];
+    private float[] mFromTranslationY = new float[INITIAL_CAPACITY];
+    private float[] mToTranslationX = new float[INITIAL_CAPACITY];
+    private float[] mToTranslationY = new float[INITIAL_CAPACITY];
+    private float[] mFromAlpha = new float[INITIAL_CAPACITY];
+    private float[] mToAlpha = new float[INITIAL_CAPACITY];
+    private long[] mDurations = new long[INITIAL_CAPACITY];
+    /*
+     * Animation time at which a slot starts, NOT_STARTED while pending
+     */
+    private long[] mStartTimes = new long[INITIAL_CAPACITY];
+
+    private int mPendingRemovals;
+    private int mPendingMoves;
+    private int mPendingChanges;
+    private int mPendingAdditions;
+
+    private final ValueAnimator mDriver;
+    private boolean mDriverEnding;
+
+    public SlideInAnimator() {
+        createSlotRefs(0);
+        mDriver = ValueAnimator.ofFloat(0F, 1F);
+        mDriver.setInterpolator(new LinearInterpolator());
+        mDriver.setDuration(DRIVER_DURATION);
+        mDriver.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                step(getDriverTime());
+            }
+        });
+        mDriver.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                if (mDriverEnding) {
+                    // Cancelled once all slots finished
+                    return;
+                }
+                // Ends after its first frame when the duration scale is 0
+                mDriverEnding = true;
+                try {
+                    for (int i = mCount - 1; i >= 0; i--) {
+                        if (mStartTimes[i] != NOT_STARTED) {
+                            finishSlot(i);
+                        }
+                    }
+                    dispatchFinishedWhenDone();
+                } finally {
+                    mDriverEnding = false;
+                }
+            }
+        });
+    }
+
+    /*
+     * Unscaled time elapsed since the driver started, the fraction of a linear animator is the
+     * elapsed time divided by the scaled duration
+     */
+    private long getDriverTime() {
+        if (!mDriver.isStarted()) {
+            return 0;
+        }
+        return (long) (mDriver.getAnimatedFraction() * DRIVER_DURATION);
+    }
+
+    /**
+     * Sets the axis item views slide along when they are added or removed, Y by default, which
+     * suits horizontal layouts
+     * @param slideAlongX true to slide along X, false to slide along Y
+     */
+    public void setSlideAlongX(boolean slideAlongX) {
+        mSlideAlongX = slideAlongX;
+    }
+
+    public LayerRenderPolicy getLayerRenderPolicy() {
+        return mLayerRenderPolicy;
+    }
+
+    /**
+     * Sets the policy used to promote item views to hardware layers while they are animating,
+     * null by default which leaves layers untouched
+     * @param policy the policy to use, or null
+     */
+    public void setLayerRenderPolicy(LayerRenderPolicy policy) {
+        if (mLayerRenderPolicy != null) {
+            for (int i = 0; i < mCount; i++) {
+                if (mStartTimes[i] != NOT_STARTED) {
+                    mLayerRenderPolicy.release(mHolders[i].itemView);
+                }
+            }
+        }
+        mLayerRenderPolicy = policy;
+        if (policy != null) {
+            for (int i = 0; i < mCount; i++) {
+                if (mStartTimes[i] != NOT_STARTED) {
+                    policy.promote(mHolders[i].itemView);
+                }
+            }
+        }
+    }
 
     @Override
     public boolean animateRemove(RecyclerView.ViewHolder holder) {
-        dispatchRemoveFinished(holder);
-        Log.d(TAG, "animateRemove: " + holder.itemView);
-        return false;
+        endAnimation(holder);
+        View v = holder.itemView;
+        float fromX = v.getTranslationX();
+        float fromY = v.getTranslationY();
+        // Keep sliding in the direction the view has already been moved to, if any
+        float toX = fromX;
+        float toY = fromY;
+        if (mSlideAlongX) {
+            toX = fromX + (fromX < 0 ? -v.getWidth() : v.getWidth());
+        } else {
+            toY = fromY + (fromY < 0 ? -v.getHeight() : v.getHeight());
+        }
+        obtainSlot(holder, TYPE_REMOVE, fromX, fromY, toX, toY, v.getAlpha(), 0F,
+                getRemoveDuration());
+        mPendingRemovals++;
+        if (DEBUG) {
+            Log.d(TAG, "animateRemove: " + holder.itemView);
+        }
+        return true;
     }
 
     @Override
     public boolean animateAdd(RecyclerView.ViewHolder holder) {
-        dispatchAddFinished(holder);
-        Log.d(TAG, "animateAdd: " + holder.itemView);
-        return false;
+        endAnimation(holder);
+        View v = holder.itemView;
+        float fromX = mSlideAlongX ? v.getWidth() : 0F;
+        float fromY = mSlideAlongX ? 0F : v.getHeight();
+        v.setTranslationX(fromX);
+        v.setTranslationY(fromY);
+        v.setAlpha(0F);
+        obtainSlot(holder, TYPE_ADD, fromX, fromY, 0F, 0F, 0F, 1F, getAddDuration());
+        mPendingAdditions++;
+        if (DEBUG) {
+            Log.d(TAG, "animateAdd: " + holder.itemView);
+        }
+        return true;
     }
 
     @Override
     public boolean animateMove(RecyclerView.ViewHolder holder, int fromX, int fromY, int toX, int toY) {
-        final View v = holder.itemView;
-        v.setX(fromX);
-        ViewPropertyAnimatorCompat vpa = ViewCompat.animate(v)
-                .x(toX)
-                .setDuration(3000)
-                .setListener(new DefaultViewPropertyAnimatorListener(holder));
-        mPendingAnimations.put(holder, vpa);
-        Log.d(TAG, String.format("animateMove: %s, (%d, %d) -> (%d, %d)", holder.itemView,
-                fromX, fromY, toX, toY));
+        View v = holder.itemView;
+        // fromX/fromY include the translation the view currently has
+        fromX += (int) v.getTranslationX();
+        fromY += (int) v.getTranslationY();
+        endAnimation(holder);
+        int deltaX = toX - fromX;
+        int deltaY = toY - fromY;
+        if (deltaX == 0 && deltaY == 0) {
+            dispatchMoveFinished(holder);
+            return false;
+        }
+        v.setTranslationX(-deltaX);
+        v.setTranslationY(-deltaY);
+        obtainSlot(holder, TYPE_MOVE, -deltaX, -deltaY, 0F, 0F, v.getAlpha(), v.getAlpha(),
+                getMoveDuration());
+        mPendingMoves++;
+        if (DEBUG) {
+            Log.d(TAG, String.format("animateMove: %s, (%d, %d) -> (%d, %d)", holder.itemView,
+                    fromX, fromY, toX, toY));
+        }
         return true;
     }
 
     @Override
     public boolean animateChange(RecyclerView.ViewHolder oldHolder, RecyclerView.ViewHolder newHolder, int fromLeft, int fromTop, int toLeft, int toTop) {
-        if (oldHolder != null && oldHolder == newHolder) {
-            dispatchChangeFinished(oldHolder, true);
-        } else {
-            if (oldHolder != null) {
-                dispatchChangeFinished(oldHolder, true);
-            }
-            if (newHolder != null) {
-                dispatchChangeFinished(newHolder, false);
-            }
+        if (oldHolder == newHolder) {
+            // Same holder rebound in place, only its position may have changed
+            return animateMove(oldHolder, fromLeft, fromTop, toLeft, toTop);
+        }
+        float prevTranslationX = oldHolder.itemView.getTranslationX();
+        float prevTranslationY = oldHolder.itemView.getTranslationY();
+        float prevAlpha = oldHolder.itemView.getAlpha();
+        endAnimation(oldHolder);
+        int deltaX = (int) (toLeft - fromLeft - prevTranslationX);
+        int deltaY = (int) (toTop - fromTop - prevTranslationY);
+        oldHolder.itemView.setTranslationX(prevTranslationX);
+        oldHolder.itemView.setTranslationY(prevTranslationY);
+        oldHolder.itemView.setAlpha(prevAlpha);
+        obtainSlot(oldHolder, TYPE_CHANGE_OLD, prevTranslationX, prevTranslationY, deltaX, deltaY,
+                prevAlpha, 0F, getChangeDuration());
+        mPendingChanges++;
+        if (newHolder != null) {
+            endAnimation(newHolder);
+            newHolder.itemView.setTranslationX(-deltaX);
+            newHolder.itemView.setTranslationY(-deltaY);
+            newHolder.itemView.setAlpha(0F);
+            obtainSlot(newHolder, TYPE_CHANGE_NEW, -deltaX, -deltaY, 0F, 0F, 0F, 1F,
+                    getChangeDuration());
+            mPendingChanges++;
         }
-        return false;
+        return true;
     }
 
     @Override
     public void runPendingAnimations() {
-        Log.d(TAG, "runPendingAnimations: " + mPendingAnimations.size());
-        for (Map.Entry<RecyclerView.ViewHolder, ViewPropertyAnimatorCompat> entry
-                : mPendingAnimations.entrySet()) {
-            RecyclerView.ViewHolder holder = entry.getKey();
-            ViewPropertyAnimatorCompat vpa = entry.getValue();
-            vpa.start();
-            mRunningAnimations.put(holder, vpa);
+        if (DEBUG) {
+            Log.d(TAG, String.format("runPendingAnimations: removals %d, moves %d, changes %d, " +
+                    "additions %d", mPendingRemovals, mPendingMoves, mPendingChanges,
+                    mPendingAdditions));
+        }
+        if (mPendingRemovals + mPendingMoves + mPendingChanges + mPendingAdditions == 0) {
+            return;
+        }
+        long now = getDriverTime();
+        long removeDuration = mPendingRemovals > 0 ? getRemoveDuration() : 0;
+        long moveDuration = mPendingMoves > 0 ? getMoveDuration() : 0;
+        long changeDuration = mPendingChanges > 0 ? getChangeDuration() : 0;
+        long addDelay = removeDuration + Math.max(moveDuration, changeDuration);
+        for (int i = 0; i < mCount; i++) {
+            if (mStartTimes[i] != NOT_STARTED) {
+                continue;
+            }
+            RecyclerView.ViewHolder holder = mHolders[i];
+            if (mLayerRenderPolicy != null) {
+                mLayerRenderPolicy.promote(holder.itemView);
+            }
+            switch (mTypes[i]) {
+                case TYPE_REMOVE:
+                    mStartTimes[i] = now;
+                    dispatchRemoveStarting(holder);
+                    break;
+                case TYPE_MOVE:
+                    mStartTimes[i] = now + removeDuration;
+                    dispatchMoveStarting(holder);
+                    break;
+                case TYPE_CHANGE_OLD:
+                    mStartTimes[i] = now + removeDuration;
+                    dispatchChangeStarting(holder, true);
+                    break;
+                case TYPE_CHANGE_NEW:
+                    mStartTimes[i] = now + removeDuration;
+                    dispatchChangeStarting(holder, false);
+                    break;
+                case TYPE_ADD:
+                    mStartTimes[i] = now + addDelay;
+                    dispatchAddStarting(holder);
+                    break;
+            }
+        }
+        mPendingRemovals = 0;
+        mPendingMoves = 0;
+        mPendingChanges = 0;
+        mPendingAdditions = 0;
+        if (!mDriver.isStarted()) {
+            mDriver.start();
         }
-        mPendingAnimations.clear();
     }
 
     @Override
     public void endAnimation(RecyclerView.ViewHolder item) {
-        Log.d(TAG, "endAnimation: " + item);
-        ViewPropertyAnimatorCompat animator = mRunningAnimations.get(item);
-        if (animator != null) {
-            animator.cancel();
-            mRunningAnimations.remove(item);
+        int slot = findSlot(item);
+        if (slot < 0) {
+            return;
         }
+        if (DEBUG) {
+            Log.d(TAG, "endAnimation: " + item);
+        }
+        finishSlot(slot);
+        dispatchFinishedWhenDone();
     }
 
     @Override
     public void endAnimations() {
-        Log.d(TAG, "endAnimations");
-        for (Map.Entry<RecyclerView.ViewHolder, ViewPropertyAnimatorCompat> entry
-                : mRunningAnimations.entrySet()) {
-            ViewPropertyAnimatorCompat vpa = entry.getValue();
-            vpa.cancel();
+        if (DEBUG) {
+            Log.d(TAG, "endAnimations");
+        }
+        for (int i = mCount - 1; i >= 0; i--) {
+            finishSlot(i);
         }
-        mRunningAnimations.clear();
+        mPendingRemovals = 0;
+        mPendingMoves = 0;
+        mPendingChanges = 0;
+        mPendingAdditions = 0;
+        dispatchFinishedWhenDone();
     }
 
     @Override
     public boolean isRunning() {
-        return mRunningAnimations != null && mRunningAnimations.size() != 0;
+        return mCount > 0;
+    }
+
+    /*
+     * Applies the current frame to every started slot, slots that are done get finished
+     */
+    private void step(long now) {
+        for (int i = mCount - 1; i >= 0; i--) {
+            long startTime = mStartTimes[i];
+            if (startTime == NOT_STARTED || now < startTime) {
+                continue;
+            }
+            long duration = mDurations[i];
+            float fraction = duration <= 0 ? 1F : Math.min(1F, (float) (now - startTime) / duration);
+            if (fraction >= 1F) {
+                finishSlot(i);
+            } else {
+                apply(i, fraction);
+            }
+        }
+        dispatchFinishedWhenDone();
+    }
+
+    private void apply(int slot, float fraction) {
+        float interpolated;
+        switch (mTypes[slot]) {
+            case TYPE_ADD:
+                interpolated = ADD_INTERPOLATOR.getInterpolation(fraction);
+                break;
+            case TYPE_REMOVE:
+                interpolated = REMOVE_INTERPOLATOR.getInterpolation(fraction);
+                break;
+            default:
+                interpolated = MOVE_INTERPOLATOR.getInterpolation(fraction);
+                break;
+        }
+        View v = mHolders[slot].itemView;
+        v.setTranslationX(MathUtils.lerp(mFromTranslationX[slot], mToTranslationX[slot],
+                interpolated));
+        v.setTranslationY(MathUtils.lerp(mFromTranslationY[slot], mToTranslationY[slot],
+                interpolated));
+        v.setAlpha(MathUtils.lerp(mFromAlpha[slot], mToAlpha[slot], interpolated));
     }
 
-    private class DefaultViewPropertyAnimatorListener implements ViewPropertyAnimatorListener {
+    /*
+     * Jumps a slot to its end state, releases it and dispatches the finished callback
+     */
+    private void finishSlot(int slot) {
+        RecyclerView.ViewHolder holder = mHolders[slot];
+        int type = mTypes[slot];
+        View v = holder.itemView;
+        // Removed and replaced views are recycled, leave them in a reusable state
+        v.setTranslationX(0F);
+        v.setTranslationY(0F);
+        v.setAlpha(1F);
+        if (mLayerRenderPolicy != null && mStartTimes[slot] != NOT_STARTED) {
+            mLayerRenderPolicy.release(v);
+        }
+        releaseSlot(slot);
+        switch (type) {
+            case TYPE_ADD:
+                dispatchAddFinished(holder);
+                break;
+            case TYPE_REMOVE:
+                dispatchRemoveFinished(holder);
+                break;
+            case TYPE_MOVE:
+                dispatchMoveFinished(holder);
+                break;
+            case TYPE_CHANGE_OLD:
+                dispatchChangeFinished(holder, true);
+                break;
+            case TYPE_CHANGE_NEW:
+                dispatchChangeFinished(holder, false);
+                break;
+        }
+    }
 
-        private final RecyclerView.ViewHolder mHolder;
+    private void dispatchFinishedWhenDone() {
+        if (mCount == 0) {
+            if (mDriver.isStarted() && !mDriverEnding) {
+                mDriverEnding = true;
+                try {
+                    mDriver.cancel();
+                } finally {
+                    mDriverEnding = false;
+                }
+            }
+            dispatchAnimationsFinished();
+        }
+    }
 
-        public DefaultViewPropertyAnimatorListener(RecyclerView.ViewHolder holder) {
-            this.mHolder = holder;
+    private int findSlot(RecyclerView.ViewHolder holder) {
+        Object tag = holder.itemView.getTag(R.id.slide_in_animator_slot);
+        if (tag instanceof SlotRef) {
+            int slot = ((SlotRef) tag).mIndex;
+            if (slot < mCount && mHolders[slot] == holder) {
+                return slot;
+            }
         }
+        return -1;
+    }
+
+    private void obtainSlot(RecyclerView.ViewHolder holder, int type, float fromX, float fromY,
+                            float toX, float toY, float fromAlpha, float toAlpha, long duration) {
+        ensureCapacity(mCount + 1);
+        int slot = mCount++;
+        mHolders[slot] = holder;
+        mTypes[slot] = type;
+        mFromTranslationX[slot] = fromX;
+        mFromTranslationY[slot] = fromY;
+        mToTranslationX[slot] = toX;
+        mToTranslationY[slot] = toY;
+        mFromAlpha[slot] = fromAlpha;
+        mToAlpha[slot] = toAlpha;
+        mDurations[slot] = duration;
+        mStartTimes[slot] = NOT_STARTED;
+        holder.itemView.setTag(R.id.slide_in_animator_slot, mSlotRefs[slot]);
+    }
 
-        @Override
-        public void onAnimationStart(View view) {
+    /*
+     * Releases a slot by moving the last slot into its place
+     */
+    private void releaseSlot(int slot) {
+        mHolders[slot].itemView.setTag(R.id.slide_in_animator_slot, null);
+        int last = --mCount;
+        if (slot != last) {
+            mHolders[slot] = mHolders[last];
+            mTypes[slot] = mTypes[last];
+            mFromTranslationX[slot] = mFromTranslationX[last];
+            mFromTranslationY[slot] = mFromTranslationY[last];
+            mToTranslationX[slot] = mToTranslationX[last];
+            mToTranslationY[slot] = mToTranslationY[last];
+            mFromAlpha[slot] = mFromAlpha[last];
+            mToAlpha[slot] = mToAlpha[last];
+            mDurations[slot] = mDurations[last];
+            mStartTimes[slot] = mStartTimes[last];
+            mHolders[slot].itemView.setTag(R.id.slide_in_animator_slot, mSlotRefs[slot]);
+        }
+        mHolders[last] = null;
+    }
 
+    private void ensureCapacity(int capacity) {
+        int oldCapacity = mHolders.length;
+        if (oldCapacity < capacity) {
+            int newCapacity = Math.max(capacity, oldCapacity * 2);
+            mHolders = Arrays.copyOf(mHolders, newCapacity);
+            mSlotRefs = Arrays.copyOf(mSlotRefs, newCapacity);
+            mTypes = Arrays.copyOf(mTypes, newCapacity);
+            mFromTranslationX = Arrays.copyOf(mFromTranslationX, newCapacity);
+            mFromTranslationY = Arrays.copyOf(mFromTranslationY, newCapacity);
+            mToTranslationX = Arrays.copyOf(mToTranslationX, newCapacity);
+            mToTranslationY = Arrays.copyOf(mToTranslationY, newCapacity);
+            mFromAlpha = Arrays.copyOf(mFromAlpha, newCapacity);
+            mToAlpha = Arrays.copyOf(mToAlpha, newCapacity);
+            mDurations = Arrays.copyOf(mDurations, newCapacity);
+            mStartTimes = Arrays.copyOf(mStartTimes, newCapacity);
+            createSlotRefs(oldCapacity);
         }
+    }
 
-        @Override
-        public void onAnimationEnd(View view) {
-            Log.d(TAG, "onAnimationEnd: " + view);
-            dispatchMoveFinished(mHolder);
-            mRunningAnimations.remove(mHolder);
+    private void createSlotRefs(int from) {
+        for (int i = from; i < mSlotRefs.length; i++) {
+            mSlotRefs[i] = new SlotRef(i);
         }
+    }
+
+    /*
+     * Slot number stored in the tag of item views, one instance per slot so that tagging
+     * doesn't allocate
+     */
+    private static class SlotRef {
+        final int mIndex;
 
-        @Override
-        public void onAnimationCancel(View view) {
-            Log.d(TAG, "onAnimationCancel: " + view);
-            dispatchMoveFinished(mHolder);
-            mRunningAnimations.remove(mHolder);
+        SlotRef(int index) {
+            mIndex = index;
         }
     }
 }
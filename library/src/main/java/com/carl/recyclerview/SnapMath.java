@@ -0,0 +1,114 @@
+package com.carl.recyclerview;
+
+/**
+ * Android-free math used by {@link SnappyLinearLayoutManager} to compute fling targets and
+ * snapping offsets. Kept free of framework classes so it could be benchmarked and tested on a
+ * plain JVM.
+ *
+ * @author carl
+ */
+public abstract class SnapMath {
+    public static final int SNAP_START = 0;
+    public static final int SNAP_END = 1;
+    public static final int SNAP_CENTER = 2;
+    public static final int SNAP_NONE = 3;
+
+    public static final float MAX_MILLIS_PER_INCH_ALLOWED = 600f;
+
+    /**
+     * Converts a velocity in pixels per second to milliseconds it takes to travel an inch
+     * @param densityDpi the screen density in dpi
+     * @param pixelPerSecond the velocity in pixels per second
+     * @return the speed in milliseconds per inch
+     */
+    public static float convertPixelPerSecondToMillisPerInch(int densityDpi, int pixelPerSecond) {
+        return (float) densityDpi / (float) pixelPerSecond * 1000;
+    }
+
+    /**
+     * Computes the speed of the scroller that scrolls to the fling target
+     * @param densityDpi the screen density in dpi
+     * @param velocity the fling velocity in pixels per second
+     * @param flingVelocityRatio the ratio between scroll velocity and fling velocity
+     * @return the speed in milliseconds per inch, capped by {@link #MAX_MILLIS_PER_INCH_ALLOWED}
+     */
+    public static float computeScrollerSpeed(int densityDpi, int velocity,
+                                             float flingVelocityRatio) {
+        float speed = Math.abs(convertPixelPerSecondToMillisPerInch(densityDpi, velocity)
+                * flingVelocityRatio);
+        return Math.min(speed, MAX_MILLIS_PER_INCH_ALLOWED);
+    }
+
+    /**
+     * Computes the index of the item a fling lands on, assuming every item is as large as the
+     * first visible one
+     * @param first adapter position of the first visible item
+     * @param firstViewStart start edge of the first visible item
+     * @param childExtent size of the first visible item along the scrolling axis
+     * @param distance the distance the fling travels
+     * @param itemCount number of items in the adapter
+     * @return the target index, clamped to [0, itemCount - 1]
+     */
+    public static int computeTargetIndex(int first, int firstViewStart, int childExtent,
+                                         int distance, int itemCount) {
+        if (itemCount == 0 || childExtent == 0) return first;
+        int targetIndex = first + computeTargetOffset(firstViewStart, childExtent, distance);
+        targetIndex = Math.max(0, targetIndex);
+        targetIndex = Math.min(targetIndex, itemCount - 1);
+        return targetIndex;
+    }
+
+    /**
+     * Computes how many items away from the first visible item a fling lands, assuming every
+     * item is as large as the first visible one. Unlike
+     * {@link #computeTargetIndex(int, int, int, int, int)} the result isn't clamped, which suits
+     * looping layouts.
+     * @param firstViewStart start edge of the first visible item
+     * @param childExtent size of the first visible item along the scrolling axis
+     * @param distance the distance the fling travels
+     * @return the number of items to scroll by, negative towards the start
+     */
+    public static int computeTargetOffset(int firstViewStart, int childExtent, int distance) {
+        if (childExtent == 0) return 0;
+        return Math.round((float) (distance - firstViewStart) / (float) childExtent);
+    }
+
+    /**
+     * Calculates the distance to scroll so that a view is placed at the snapping position
+     * @param viewStart start edge of the view
+     * @param viewEnd end edge of the view
+     * @param boxStart start edge of the parent
+     * @param boxEnd end edge of the parent
+     * @param snapMethod one of the SNAP_ constants
+     * @return the distance to scroll
+     */
+    public static int calculateDtToFit(int viewStart, int viewEnd, int boxStart, int boxEnd,
+                                       int snapMethod) {
+        switch (snapMethod) {
+            case SNAP_START:
+                return boxStart - viewStart;
+            case SNAP_END:
+                return boxEnd - viewEnd;
+            case SNAP_CENTER:
+                int boxMid = boxStart + (boxEnd - boxStart) / 2;
+                int viewMid = viewStart + (viewEnd - viewStart) / 2;
+                return boxMid - viewMid;
+            case SNAP_NONE:
+                final int dtStart = boxStart - viewStart;
+                if (dtStart > 0) {
+                    return dtStart;
+                }
+                final int dtEnd = boxEnd - viewEnd;
+                if (dtEnd < 0) {
+                    return dtEnd;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("snap preference should be one" +
+                        " of the"
+                        + " constants defined in SnapperLinearLayoutManager, " +
+                        "starting with SNAP_");
+        }
+        return 0;
+    }
+}
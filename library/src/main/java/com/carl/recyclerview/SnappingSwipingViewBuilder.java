@@ -1,11 +1,13 @@
 package com.carl.recyclerview;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.support.v7.widget.DefaultItemAnimator;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.util.DisplayMetrics;
 import android.util.TypedValue;
+import android.view.ViewTreeObserver;
 
 /**
  * Help setup related classes to achieve the "snapping and swiping" behaviour of a RecyclerView
@@ -19,12 +21,18 @@ public class SnappingSwipingViewBuilder {
     private final SwipeGestureHelper mSwipeGestureHelper;
     private final SnappyLinearLayoutManager mSnappyLinearLayoutManager;
     private final MarginDecoration mMarginDecoration;
+    private final SnappyStats mStats;
+    private final ViewOnTouchDelegate mTouchDelegate;
+    private LayerRenderPolicy mLayerRenderPolicy;
+    private ViewHolderWarmUp mViewHolderWarmUp;
+    private final long mStartTimeMillis;
 
     public SnappingSwipingViewBuilder(Context context) {
         this(context, null);
     }
 
     public SnappingSwipingViewBuilder(Context context, SnappyRecyclerView srv) {
+        this.mStartTimeMillis = SystemClock.uptimeMillis();
         this.mDisplayMetrics = context.getResources().getDisplayMetrics();
         if(srv == null){
             this.mRecyclerView = new SnappyRecyclerView(context);
@@ -35,12 +43,16 @@ public class SnappingSwipingViewBuilder {
         this.mSnappyLinearLayoutManager = new SnappyLinearLayoutManager(context,
                 LinearLayoutManager.HORIZONTAL, false);
         this.mMarginDecoration = new MarginDecoration();
-        ViewOnTouchDelegate touchDelegate = new ViewOnTouchDelegate();
-        mRecyclerView.setOnTouchListener(touchDelegate);
+        this.mStats = new SnappyStats();
+        mRecyclerView.setStats(mStats);
+        mSnappyLinearLayoutManager.setStats(mStats);
+        mSwipeGestureHelper.setStats(mStats);
+        this.mTouchDelegate = new ViewOnTouchDelegate();
+        mRecyclerView.setOnTouchListener(mTouchDelegate);
         mRecyclerView.setItemAnimator(new DefaultItemAnimator());
         mRecyclerView.setLayoutManager(mSnappyLinearLayoutManager);
-        mRecyclerView.addItemDecoration(mMarginDecoration);
-        mSwipeGestureHelper.attachToRecyclerView(mRecyclerView, touchDelegate);
+        mMarginDecoration.attachToRecyclerView(mRecyclerView);
+        mSwipeGestureHelper.attachToRecyclerView(mRecyclerView, mTouchDelegate);
     }
 
     /**
@@ -69,7 +81,8 @@ public class SnappingSwipingViewBuilder {
 
     /**
      * Sets the orientation of the layout. {@link android.support.v7.widget.LinearLayoutManager}
-     * will do its best to keep scroll position.
+     * will do its best to keep scroll position. Flings snap along the orientation and item views
+     * are swiped along the other axis.
      *
      * @param orientation {@link android.support.v7.widget.LinearLayoutManager#HORIZONTAL} or
      *                    {@link android.support.v7.widget.LinearLayoutManager#VERTICAL}
@@ -80,6 +93,18 @@ public class SnappingSwipingViewBuilder {
         return this;
     }
 
+    /**
+     * Makes items loop, see {@link SnappyLinearLayoutManager#setLoopEnabled(boolean)}. Head and
+     * tail margins are left out in loop mode.
+     *
+     * @param loopEnabled true to loop
+     * @return this for chaining calls
+     */
+    public SnappingSwipingViewBuilder setLoopEnabled(boolean loopEnabled) {
+        mSnappyLinearLayoutManager.setLoopEnabled(loopEnabled);
+        return this;
+    }
+
     /**
      * Sets the ratio threshold which determines if a swipe is successful, default is 0.4F.
      * Speed takes precedence over dragging distance in determine if a swipe is successful.
@@ -172,6 +197,9 @@ public class SnappingSwipingViewBuilder {
      * @return this for chaining calls
      */
     public SnappingSwipingViewBuilder setItemAnimator(RecyclerView.ItemAnimator animator) {
+        if (mLayerRenderPolicy != null && animator instanceof SlideInAnimator) {
+            ((SlideInAnimator) animator).setLayerRenderPolicy(mLayerRenderPolicy);
+        }
         mRecyclerView.setItemAnimator(animator);
         return this;
     }
@@ -184,6 +212,7 @@ public class SnappingSwipingViewBuilder {
      */
     public SnappingSwipingViewBuilder setAdapter(RecyclerView.Adapter adapter) {
         mRecyclerView.setAdapter(adapter);
+        startViewHolderWarmUp();
         return this;
     }
 
@@ -264,12 +293,164 @@ public class SnappingSwipingViewBuilder {
         return this;
     }
 
+    /**
+     * Sets the listener to receive swiped out item views in batches, in place of
+     * {@link SwipeGestureHelper.OnSwipeListener}
+     *
+     * @param listener the listener to receive calls
+     * @return this for chaining calls
+     */
+    public SnappingSwipingViewBuilder setOnBatchSwipeListener(
+            SwipeGestureHelper.OnBatchSwipeListener listener) {
+        mSwipeGestureHelper.setOnBatchSwipeListener(listener);
+        return this;
+    }
+
+    /**
+     * Sets how long a batch of swiped out item views stays open after each swipe, default is the
+     * long press timeout plus the out animation duration
+     *
+     * @param windowMillis the window in milliseconds
+     * @return this for chaining calls
+     */
+    public SnappingSwipingViewBuilder setBatchSwipeWindowMillis(long windowMillis) {
+        mSwipeGestureHelper.setBatchSwipeWindowMillis(windowMillis);
+        return this;
+    }
+
+    /**
+     * Enables the undo window of swipes, swiped out items are held in place and reported to the
+     * swipe listeners only when they can no longer be undone. Call
+     * {@link SwipeGestureHelper#undoLastSwipe()} on {@link #getSwipeGestureHelper()} to undo.
+     *
+     * @param undoEnabled true to enable the undo window
+     * @return this for chaining calls
+     */
+    public SnappingSwipingViewBuilder setSwipeUndoEnabled(boolean undoEnabled) {
+        mSwipeGestureHelper.setUndoEnabled(undoEnabled);
+        return this;
+    }
+
+    /**
+     * Sets a recorder to capture the touch events hitting the RecyclerView, so that gestures
+     * could be replayed later
+     *
+     * @param recorder the recorder, call {@link GestureRecorder#start()} to start recording
+     * @return this for chaining calls
+     */
+    public SnappingSwipingViewBuilder setGestureRecorder(GestureRecorder recorder) {
+        mRecyclerView.setGestureRecorder(recorder);
+        return this;
+    }
+
+    /**
+     * Attaches a {@link FrameMonitor} to the RecyclerView and its swipe gesture, to record frame
+     * durations while dragging, flinging and swiping
+     *
+     * @param frameMonitor the monitor to attach
+     * @return this for chaining calls
+     */
+    public SnappingSwipingViewBuilder setFrameMonitor(FrameMonitor frameMonitor) {
+        frameMonitor.attachToRecyclerView(mRecyclerView);
+        frameMonitor.attachToSwipeGestureHelper(mSwipeGestureHelper);
+        return this;
+    }
+
+    /**
+     * Attaches an {@link InputLatencyTracker} to the touch events of the RecyclerView, its swipe
+     * gesture and its flings, to record input-to-frame latencies
+     *
+     * @param tracker the tracker to attach
+     * @return this for chaining calls
+     */
+    public SnappingSwipingViewBuilder setInputLatencyTracker(InputLatencyTracker tracker) {
+        tracker.attachToView(mRecyclerView);
+        mTouchDelegate.setInputLatencyTracker(tracker);
+        mSwipeGestureHelper.setInputLatencyTracker(tracker);
+        mRecyclerView.setInputLatencyTracker(tracker);
+        return this;
+    }
+
+    /**
+     * Sets the policy used to promote animated item views to hardware layers, it's shared with
+     * the item animator if that is a {@link SlideInAnimator}
+     *
+     * @param policy the policy to use, or null to leave layers untouched
+     * @return this for chaining calls
+     */
+    public SnappingSwipingViewBuilder setLayerRenderPolicy(LayerRenderPolicy policy) {
+        mLayerRenderPolicy = policy;
+        mSwipeGestureHelper.setLayerRenderPolicy(policy);
+        RecyclerView.ItemAnimator animator = mRecyclerView.getItemAnimator();
+        if (animator instanceof SlideInAnimator) {
+            ((SlideInAnimator) animator).setLayerRenderPolicy(policy);
+        }
+        return this;
+    }
+
+    /**
+     * Sets view holders to be created on a background thread and put into the pool of the
+     * RecyclerView. Creating starts as soon as both the warm-up and the adapter are set, before
+     * the RecyclerView is attached, holders that aren't ready for its first layout serve the
+     * first flings. The adapter must be set before {@link #build()}.
+     *
+     * @param warmUp the view types and numbers of holders to create
+     * @return this for chaining calls
+     */
+    public SnappingSwipingViewBuilder setViewHolderWarmUp(ViewHolderWarmUp warmUp) {
+        mViewHolderWarmUp = warmUp;
+        startViewHolderWarmUp();
+        return this;
+    }
+
+    private void startViewHolderWarmUp() {
+        if (mViewHolderWarmUp != null && mRecyclerView.getAdapter() != null) {
+            mViewHolderWarmUp.setStats(mStats);
+            mViewHolderWarmUp.start(mRecyclerView);
+            // Started once per builder
+            mViewHolderWarmUp = null;
+        }
+    }
+
+    /**
+     * Gets the {@link SwipeGestureHelper} set up by this builder
+     *
+     * @return the swipe gesture helper
+     */
+    public SwipeGestureHelper getSwipeGestureHelper() {
+        return mSwipeGestureHelper;
+    }
+
+    /**
+     * Gets the {@link SnappyStats} shared by all the components set up by this builder
+     *
+     * @return the shared stats
+     */
+    public SnappyStats getStats() {
+        return mStats;
+    }
+
     /**
      * Build the RecyclerView
      *
      * @return the RecyclerView with "snapping and swiping" behaviour setup
      */
     public RecyclerView build() {
+        reportFirstFrame();
         return mRecyclerView;
     }
+
+    private void reportFirstFrame() {
+        final ViewTreeObserver observer = mRecyclerView.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if (mRecyclerView.getChildCount() > 0) {
+                    mStats.onFirstFrame(SystemClock.uptimeMillis() - mStartTimeMillis);
+                    mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                }
+                return true;
+            }
+        });
+    }
 }
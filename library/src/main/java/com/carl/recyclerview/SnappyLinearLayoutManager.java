@@ -2,21 +2,25 @@ package com.carl.recyclerview;
 
 import android.content.Context;
 import android.graphics.PointF;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.support.annotation.IntDef;
+import android.support.v4.os.TraceCompat;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.LinearSmoothScroller;
+import android.support.v7.widget.OrientationHelper;
 import android.support.v7.widget.RecyclerView;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
+import android.view.animation.Interpolator;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
 /**
- * Layout manager that supports snapping into position
- * TODO: Add vertical support
+ * Layout manager that supports snapping into position, in both horizontal and vertical layouts
  * @author carl
  */
 public class SnappyLinearLayoutManager extends LinearLayoutManager implements SnappyScrollCalculator {
@@ -30,31 +34,107 @@ public class SnappyLinearLayoutManager extends LinearLayoutManager implements Sn
     public @interface SnapMethod {
     }
 
-    private static final float DEFAULT_FLING_VELOCITY_DISTANCE_RATIO = 0.18F;
     private static final float DEFAULT_FLING_VELOCITY_RATIO = 0.7F;
-    private static final float MAX_MILLIS_PER_INCH_ALLOWED = 600f;
     private static final String TAG = "SnappyManager";
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    private static final String TRACE_COMPUTE_SCROLL = "SnappyLinearLayoutManager.computeScroll";
+    private static final String TRACE_PREFETCH = "SnappyLinearLayoutManager.prefetch";
+    /**
+     * Number of items on each side of a fling target that are prefetched by default
+     */
+    public static final int DEFAULT_PREFETCH_RADIUS = 1;
+    /**
+     * Smooth scrolls to targets further away than this many items jump close to them first
+     */
+    public static final int DEFAULT_JUMP_THRESHOLD_ITEMS = 20;
+    /**
+     * Smooth scrolls to targets further away than this many screens jump close to them first
+     */
+    public static final float DEFAULT_JUMP_THRESHOLD_SCREENS = 4F;
+    /*
+     * Default size of the attached view cache of RecyclerView
+     */
+    private static final int DEFAULT_VIEW_CACHE_SIZE = 2;
+    /*
+     * Deceleration curve of platform flings, for snapping scrolls that look native
+     */
+    private static final Interpolator SPLINE_INTERPOLATOR = new Interpolator() {
+        @Override
+        public float getInterpolation(float input) {
+            return SplineFlingModel.getPosition(input);
+        }
+    };
     private int mDensityDpi;
+    private SplineFlingModel mFlingModel;
     /*
      * Speed for scroller when scrolling to target position
      */
     private float mScrollerSpeed;
     private float mFlingVelocityRatio = DEFAULT_FLING_VELOCITY_RATIO;
     private int mSnapMethod = SnappyLinearSmoothScroller.SNAP_CENTER;
+    private SnappyStats mStats = new SnappyStats();
+    private final ItemExtentIndex mExtentIndex = new ItemExtentIndex();
+    private boolean mInPreLayout;
+    private RecyclerView mRecyclerView;
+    private int mPrefetchRadius = DEFAULT_PREFETCH_RADIUS;
+    /*
+     * Positions around the fling target still to be prefetched, nearest to the target first
+     */
+    private int[] mPrefetchQueue = new int[2 * DEFAULT_PREFETCH_RADIUS + 1];
+    private int mPrefetchQueueSize;
+    private int mPrefetchQueueIndex;
+    /*
+     * Recycler and state of the last scroll, prefetching runs between frames where none is passed
+     */
+    private RecyclerView.Recycler mPrefetchRecycler;
+    private RecyclerView.State mPrefetchState;
+    private boolean mPrefetchPosted;
+    private final Runnable mPrefetchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mPrefetchPosted = false;
+            prefetchNext();
+        }
+    };
+    private int mItemViewCacheSize = DEFAULT_VIEW_CACHE_SIZE;
+    private boolean mViewCacheEnlarged;
+    private int mJumpThresholdItems = DEFAULT_JUMP_THRESHOLD_ITEMS;
+    private float mJumpThresholdScreens = DEFAULT_JUMP_THRESHOLD_SCREENS;
+    /*
+     * Snapped item restored from a saved state, laid out by the next layout pass
+     */
+    private SavedState mPendingSnapState;
+    private boolean mLoopEnabled;
+    private OrientationHelper mLoopOrientationHelper;
+    private int mLoopOrientation;
+    /*
+     * Position and offset to lay out the anchor at with the next loop layout
+     */
+    private int mPendingLoopPosition = RecyclerView.NO_POSITION;
+    private int mPendingLoopOffset;
+    /*
+     * Target of the running loop fling and the direction to reach it in, positions repeat so
+     * the direction can't be told from the target alone
+     */
+    private int mLoopTarget = RecyclerView.NO_POSITION;
+    private int mLoopDirection;
 
     public SnappyLinearLayoutManager(Context context) {
         super(context);
         this.mDensityDpi = context.getResources().getDisplayMetrics().densityDpi;
+        this.mFlingModel = SplineFlingModel.forDensity(mDensityDpi);
     }
 
     public SnappyLinearLayoutManager(Context context, int orientation, boolean reverseLayout) {
         super(context, orientation, reverseLayout);
         this.mDensityDpi = context.getResources().getDisplayMetrics().densityDpi;
+        this.mFlingModel = SplineFlingModel.forDensity(mDensityDpi);
     }
 
     public SnappyLinearLayoutManager(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
         super(context, attrs, defStyleAttr, defStyleRes);
         this.mDensityDpi = context.getResources().getDisplayMetrics().densityDpi;
+        this.mFlingModel = SplineFlingModel.forDensity(mDensityDpi);
     }
 
     /**
@@ -74,59 +154,989 @@ public class SnappyLinearLayoutManager extends LinearLayoutManager implements Sn
         mSnapMethod = snapMethod;
     }
 
+    public int getPrefetchRadius() {
+        return mPrefetchRadius;
+    }
+
+    /**
+     * Sets the number of items on each side of a fling target that are created and bound ahead
+     * of time while the fling is running. Prefetching starts once the target is about one screen
+     * away and creates one item between two scrolled frames. The attached view cache of the
+     * RecyclerView is enlarged to keep them until the fling lands, 0 disables prefetching.
+     * @param prefetchRadius number of items on each side of the target
+     */
+    public void setPrefetchRadius(int prefetchRadius) {
+        mPrefetchRadius = Math.max(0, prefetchRadius);
+        if (mPrefetchQueue.length < 2 * mPrefetchRadius + 1) {
+            mPrefetchQueue = new int[2 * mPrefetchRadius + 1];
+        }
+        cancelPrefetch();
+    }
+
+    public int getItemViewCacheSize() {
+        return mItemViewCacheSize;
+    }
+
+    /**
+     * Sets the size of the attached view cache of the RecyclerView, use it instead of
+     * {@link RecyclerView#setItemViewCacheSize(int)}: prefetching enlarges the cache on top of
+     * this size while a fling runs and sets it back once the fling ends.
+     * @param size number of views kept for their positions, 2 by default
+     */
+    public void setItemViewCacheSize(int size) {
+        mItemViewCacheSize = Math.max(0, size);
+        if (mRecyclerView != null) {
+            mRecyclerView.setItemViewCacheSize(mViewCacheEnlarged
+                    ? mItemViewCacheSize + getViewCacheExtra() : mItemViewCacheSize);
+        }
+    }
+
+    /**
+     * Sets how far a smooth scroll target may be before the scroll jumps to a staging position
+     * one screen before the target and only animates the last stretch. Without it, every item in
+     * between would be laid out and bound on the way. The jump happens when either threshold is
+     * exceeded.
+     * @param items threshold in items, {@link Integer#MAX_VALUE} to never jump
+     * @param screens threshold in screens, as many items as currently laid out make a screen
+     */
+    public void setJumpThreshold(int items, float screens) {
+        mJumpThresholdItems = items;
+        mJumpThresholdScreens = screens;
+    }
+
+    public boolean isLoopEnabled() {
+        return mLoopEnabled;
+    }
+
+    /**
+     * Makes items loop: the last item is followed by the first one and scrolling never reaches
+     * an end. Positions stay real adapter positions everywhere, for snapping, fling targets and
+     * swipes alike, and no virtual item count is involved. Each position is laid out at most
+     * once, so the adapter needs enough items to fill the RecyclerView plus one to loop
+     * seamlessly. Reverse layout and predictive item animations aren't supported in loop mode.
+     * @param loopEnabled true to loop
+     */
+    public void setLoopEnabled(boolean loopEnabled) {
+        if (mLoopEnabled == loopEnabled) {
+            return;
+        }
+        assertNotInLayoutOrScroll(null);
+        mLoopEnabled = loopEnabled;
+        mLoopTarget = RecyclerView.NO_POSITION;
+        requestLayout();
+    }
+
+    public SnappyStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Sets the {@link SnappyStats} to report snaps to
+     * @param stats the stats to report to
+     */
+    public void setStats(SnappyStats stats) {
+        mStats = stats;
+    }
+
+    /**
+     * @return the index of measured item sizes used to compute fling targets
+     */
+    public ItemExtentIndex getExtentIndex() {
+        return mExtentIndex;
+    }
+
+    @Override
+    public void onAttachedToWindow(RecyclerView view) {
+        super.onAttachedToWindow(view);
+        mRecyclerView = view;
+    }
+
+    @Override
+    public void onDetachedFromWindow(RecyclerView view, RecyclerView.Recycler recycler) {
+        super.onDetachedFromWindow(view, recycler);
+        cancelPrefetch();
+        mRecyclerView = null;
+    }
+
+    @Override
+    public void onScrollStateChanged(int state) {
+        super.onScrollStateChanged(state);
+        if (state != RecyclerView.SCROLL_STATE_SETTLING) {
+            cancelPrefetch();
+        }
+        if (state == RecyclerView.SCROLL_STATE_IDLE) {
+            mLoopTarget = RecyclerView.NO_POSITION;
+        }
+    }
+
+    @Override
+    public int scrollHorizontallyBy(int dx, RecyclerView.Recycler recycler, RecyclerView.State state) {
+        int scrolled = mLoopEnabled && getOrientation() == HORIZONTAL
+                ? scrollLoopBy(dx, recycler, state)
+                : super.scrollHorizontallyBy(dx, recycler, state);
+        postPrefetch(recycler, state);
+        return scrolled;
+    }
+
+    @Override
+    public int scrollVerticallyBy(int dy, RecyclerView.Recycler recycler, RecyclerView.State state) {
+        int scrolled = mLoopEnabled && getOrientation() == VERTICAL
+                ? scrollLoopBy(dy, recycler, state)
+                : super.scrollVerticallyBy(dy, recycler, state);
+        postPrefetch(recycler, state);
+        return scrolled;
+    }
+
+    @Override
+    public void scrollToPosition(int position) {
+        if (mLoopEnabled) {
+            scrollToPositionWithOffset(position, 0);
+            return;
+        }
+        super.scrollToPosition(position);
+    }
+
+    @Override
+    public void scrollToPositionWithOffset(int position, int offset) {
+        if (mLoopEnabled) {
+            mPendingLoopPosition = position;
+            mPendingLoopOffset = offset;
+            requestLayout();
+            return;
+        }
+        super.scrollToPositionWithOffset(position, offset);
+    }
+
+    @Override
+    public boolean supportsPredictiveItemAnimations() {
+        return !mLoopEnabled && super.supportsPredictiveItemAnimations();
+    }
+
+    /**
+     * @return position delta items away from given position, wrapped around in loop mode
+     */
+    int offsetPosition(int position, int delta) {
+        if (!mLoopEnabled) {
+            return position + delta;
+        }
+        return wrapPosition(position + delta, getItemCount());
+    }
+
+    private static int wrapPosition(int position, int itemCount) {
+        if (itemCount == 0) {
+            return 0;
+        }
+        int wrapped = position % itemCount;
+        return wrapped < 0 ? wrapped + itemCount : wrapped;
+    }
+
+    /*
+     * Views scrolled out on the last screen before landing must not evict the prefetched ones
+     */
+    private int getViewCacheExtra() {
+        return mPrefetchQueueSize + getChildCount();
+    }
+
+    private void enlargeViewCache() {
+        if (mRecyclerView != null && mPrefetchQueueSize > 0) {
+            mViewCacheEnlarged = true;
+            mRecyclerView.setItemViewCacheSize(mItemViewCacheSize + getViewCacheExtra());
+        }
+    }
+
+    private void restoreViewCache() {
+        if (mViewCacheEnlarged) {
+            mViewCacheEnlarged = false;
+            if (mRecyclerView != null) {
+                mRecyclerView.setItemViewCacheSize(mItemViewCacheSize);
+            }
+        }
+    }
+
+    /*
+     * Queues the window around the fling target, the target first and then outwards
+     */
+    private void schedulePrefetch(int target) {
+        clearPrefetchQueue();
+        if (mPrefetchRadius == 0) {
+            restoreViewCache();
+            return;
+        }
+        mPrefetchQueue[mPrefetchQueueSize++] = target;
+        for (int i = 1; i <= mPrefetchRadius; i++) {
+            mPrefetchQueue[mPrefetchQueueSize++] = offsetPosition(target, i);
+            mPrefetchQueue[mPrefetchQueueSize++] = offsetPosition(target, -i);
+        }
+        enlargeViewCache();
+    }
+
+    private void cancelPrefetch() {
+        clearPrefetchQueue();
+        restoreViewCache();
+    }
+
+    private void clearPrefetchQueue() {
+        mPrefetchQueueSize = 0;
+        mPrefetchQueueIndex = 0;
+        mPrefetchRecycler = null;
+        mPrefetchState = null;
+        if (mPrefetchPosted) {
+            mPrefetchPosted = false;
+            if (mRecyclerView != null) {
+                mRecyclerView.removeCallbacks(mPrefetchRunnable);
+            }
+        }
+    }
+
+    /*
+     * Posts the next prefetch once the target is about one screen away, so that the views
+     * scrolled out before landing don't outnumber the enlarged cache
+     */
+    private void postPrefetch(RecyclerView.Recycler recycler, RecyclerView.State state) {
+        if (mPrefetchPosted || mRecyclerView == null || state.isPreLayout()
+                || mPrefetchQueueIndex >= mPrefetchQueueSize) {
+            return;
+        }
+        if (getDistanceToChildren(mPrefetchQueue[0]) > getChildCount() + mPrefetchRadius) {
+            return;
+        }
+        mPrefetchRecycler = recycler;
+        mPrefetchState = state;
+        mPrefetchPosted = true;
+        mRecyclerView.post(mPrefetchRunnable);
+    }
+
+    /*
+     * Number of items between given position and the laid out ones, 0 if it's laid out
+     */
+    private int getDistanceToChildren(int position) {
+        int childCount = getChildCount();
+        if (childCount == 0) {
+            return Integer.MAX_VALUE;
+        }
+        int start = getPosition(getChildAt(0));
+        int end = getPosition(getChildAt(childCount - 1));
+        if (!mLoopEnabled) {
+            int min = Math.min(start, end);
+            int max = Math.max(start, end);
+            return position < min ? min - position : position > max ? position - max : 0;
+        }
+        // Loop children are laid out in increasing positions, wrapping around
+        int itemCount = getItemCount();
+        int span = wrapPosition(end - start, itemCount);
+        int offset = wrapPosition(position - start, itemCount);
+        return offset <= span ? 0 : Math.min(offset - span, itemCount - offset);
+    }
+
+    /*
+     * Creates and binds at most one queued item that isn't laid out yet, then hands it to the
+     * recycler, which keeps it in the attached view cache for its position. Runs between frames,
+     * never while positions may be stale.
+     */
+    private void prefetchNext() {
+        RecyclerView.Recycler recycler = mPrefetchRecycler;
+        RecyclerView.State state = mPrefetchState;
+        if (recycler == null || mRecyclerView == null || mRecyclerView.isLayoutRequested()
+                || mRecyclerView.isComputingLayout()) {
+            return;
+        }
+        int itemCount = state.getItemCount();
+        while (mPrefetchQueueIndex < mPrefetchQueueSize) {
+            int position = mPrefetchQueue[mPrefetchQueueIndex++];
+            if (position < 0 || position >= itemCount || findViewByPosition(position) != null) {
+                continue;
+            }
+            TraceCompat.beginSection(TRACE_PREFETCH);
+            try {
+                View view = recycler.getViewForPosition(position);
+                recycler.recycleView(view);
+                mStats.onPrefetch();
+            } finally {
+                TraceCompat.endSection();
+            }
+            if (DEBUG) {
+                Log.d(TAG, "prefetched position " + position);
+            }
+            return;
+        }
+    }
+
+    @Override
+    public void onLayoutChildren(RecyclerView.Recycler recycler, RecyclerView.State state) {
+        mExtentIndex.setItemCount(state.getItemCount());
+        mInPreLayout = state.isPreLayout();
+        try {
+            // Pre-layout positions are the ones before adapter updates, wait for the real pass
+            if (mPendingSnapState != null && !state.isPreLayout()) {
+                applyPendingSnapState(recycler, state);
+            }
+            if (mLoopEnabled) {
+                layoutLoop(recycler, state);
+            } else {
+                super.onLayoutChildren(recycler, state);
+            }
+        } finally {
+            mInPreLayout = false;
+        }
+    }
+
+    @Override
+    public Parcelable onSaveInstanceState() {
+        SavedState savedState = new SavedState(super.onSaveInstanceState());
+        savedState.mFlingVelocityRatio = mFlingVelocityRatio;
+        if (mPendingSnapState != null) {
+            // Not laid out since it has been restored, keep it as it is
+            savedState.copySnapFrom(mPendingSnapState);
+            return savedState;
+        }
+        saveSnappedItem(savedState);
+        return savedState;
+    }
+
+    /**
+     * Captures the snapped item and its offset from the snapping anchor, to be kept in place
+     * across adapter updates with {@link #keepSnappedItem(SavedState, int)}
+     * @return the captured state, or null if there's no child
+     */
+    SavedState captureSnappedItem() {
+        SavedState snapState = new SavedState((Parcelable) null);
+        saveSnappedItem(snapState);
+        return snapState.mSnapIndex == RecyclerView.NO_POSITION ? null : snapState;
+    }
+
+    /**
+     * Lays out the captured item at given position at the next layout, the same offset away from
+     * the snapping anchor as when it was captured
+     * @param snapState state returned by {@link #captureSnappedItem()}
+     * @param position position of the item after the adapter updates
+     */
+    void keepSnappedItem(SavedState snapState, int position) {
+        snapState.mSnapIndex = position;
+        mPendingSnapState = snapState;
+        requestLayout();
+    }
+
+    private void saveSnappedItem(SavedState savedState) {
+        View snapped = findSnappedChild();
+        if (snapped != null) {
+            int extent = getDecoratedExtentWithMargins(snapped);
+            savedState.mSnapIndex = getPosition(snapped);
+            savedState.mSnapMethod = mSnapMethod;
+            savedState.mSnapExtent = extent;
+            savedState.mSnapOffset = getDecoratedStartWithMargins(snapped)
+                    + getSnapAnchorInChild(mSnapMethod, extent) - getSnapAnchor(mSnapMethod);
+        }
+    }
+
+    @Override
+    public void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState savedState = (SavedState) state;
+        mFlingVelocityRatio = savedState.mFlingVelocityRatio;
+        mPendingSnapState = savedState.mSnapIndex == RecyclerView.NO_POSITION ? null : savedState;
+        super.onRestoreInstanceState(savedState.mSuperState);
+    }
+
+    /*
+     * Turns the restored snapped item into a pending scroll position of the current layout pass,
+     * so that the first layout already puts it where it was
+     */
+    private void applyPendingSnapState(RecyclerView.Recycler recycler, RecyclerView.State state) {
+        int itemCount = state.getItemCount();
+        if (itemCount == 0) {
+            // Restored before the adapter has items, keep it for the layout that has them
+            return;
+        }
+        SavedState savedState = mPendingSnapState;
+        mPendingSnapState = null;
+        int position = Math.min(savedState.mSnapIndex, itemCount - 1);
+        int extent;
+        View view = findViewByPosition(position);
+        if (view != null) {
+            extent = getDecoratedExtentWithMargins(view);
+        } else {
+            // Measure it ahead, it's then kept in the view cache and laid out without a rebind
+            view = recycler.getViewForPosition(position);
+            measureChildWithMargins(view, 0, 0);
+            extent = getDecoratedExtentWithMargins(view);
+            recycler.recycleView(view);
+        }
+        // Sizes may have changed with the configuration, keep the offset relative to the item
+        int offset = savedState.mSnapExtent > 0
+                ? Math.round((float) savedState.mSnapOffset * extent / savedState.mSnapExtent)
+                : savedState.mSnapOffset;
+        int start = getSnapAnchor(savedState.mSnapMethod) + offset
+                - getSnapAnchorInChild(savedState.mSnapMethod, extent);
+        if (getReverseLayout()) {
+            // Offsets of reversed layouts are measured from the end
+            start = getTotalSpace() - start - extent;
+        }
+        if (DEBUG) {
+            Log.d(TAG, String.format("restoring snapped position %d at %d", position, start));
+        }
+        scrollToPositionWithOffset(position, start);
+    }
+
+    private int getTotalSpace() {
+        if (getOrientation() == HORIZONTAL) {
+            return getWidth() - getPaddingLeft() - getPaddingRight();
+        }
+        return getHeight() - getPaddingTop() - getPaddingBottom();
+    }
+
+    /*
+     * Snapping anchor of the parent, relative to its start padding
+     */
+    private int getSnapAnchor(int snapMethod) {
+        switch (snapMethod) {
+            case SnapMath.SNAP_END:
+                return getTotalSpace();
+            case SnapMath.SNAP_CENTER:
+                return getTotalSpace() / 2;
+            default:
+                return 0;
+        }
+    }
+
+    /*
+     * Snapping anchor of a child, relative to its start edge
+     */
+    private static int getSnapAnchorInChild(int snapMethod, int extent) {
+        switch (snapMethod) {
+            case SnapMath.SNAP_END:
+                return extent;
+            case SnapMath.SNAP_CENTER:
+                return extent / 2;
+            default:
+                return 0;
+        }
+    }
+
+    /*
+     * The child whose snapping anchor is nearest to the one of the parent
+     */
+    private View findSnappedChild() {
+        int anchor = getSnapAnchor(mSnapMethod);
+        View snapped = null;
+        int minDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            int distance = Math.abs(getDecoratedStartWithMargins(child)
+                    + getSnapAnchorInChild(mSnapMethod, getDecoratedExtentWithMargins(child))
+                    - anchor);
+            if (distance < minDistance) {
+                minDistance = distance;
+                snapped = child;
+            }
+        }
+        return snapped;
+    }
+
+    private OrientationHelper getLoopOrientationHelper() {
+        if (mLoopOrientationHelper == null || mLoopOrientation != getOrientation()) {
+            mLoopOrientation = getOrientation();
+            mLoopOrientationHelper = OrientationHelper.createOrientationHelper(this,
+                    mLoopOrientation);
+        }
+        return mLoopOrientationHelper;
+    }
+
+    /*
+     * Lays out the loop from scratch around an anchor: the pending scroll position if any, or
+     * the first child
+     */
+    private void layoutLoop(RecyclerView.Recycler recycler, RecyclerView.State state) {
+        int itemCount = state.getItemCount();
+        if (itemCount == 0) {
+            removeAndRecycleAllViews(recycler);
+            mPendingLoopPosition = RecyclerView.NO_POSITION;
+            return;
+        }
+        OrientationHelper helper = getLoopOrientationHelper();
+        int anchorPosition;
+        int anchorStart;
+        if (mPendingLoopPosition != RecyclerView.NO_POSITION) {
+            anchorPosition = mPendingLoopPosition;
+            anchorStart = helper.getStartAfterPadding() + mPendingLoopOffset;
+            mPendingLoopPosition = RecyclerView.NO_POSITION;
+        } else if (getChildCount() > 0) {
+            View anchor = getChildAt(0);
+            anchorPosition = getPosition(anchor);
+            anchorStart = helper.getDecoratedStart(anchor);
+        } else {
+            anchorPosition = 0;
+            anchorStart = helper.getStartAfterPadding();
+        }
+        anchorPosition = wrapPosition(anchorPosition, itemCount);
+        detachAndScrapAttachedViews(recycler);
+
+        int end = helper.getEndAfterPadding();
+        int position = anchorPosition;
+        int offset = anchorStart;
+        int laidOut = 0;
+        while (offset < end && laidOut < itemCount) {
+            offset = helper.getDecoratedEnd(layoutLoopChild(recycler, position, offset, true));
+            position = wrapPosition(position + 1, itemCount);
+            laidOut++;
+        }
+        int start = helper.getStartAfterPadding();
+        position = wrapPosition(anchorPosition - 1, itemCount);
+        offset = anchorStart;
+        while (offset > start && laidOut < itemCount) {
+            offset = helper.getDecoratedStart(layoutLoopChild(recycler, position, offset, false));
+            position = wrapPosition(position - 1, itemCount);
+            laidOut++;
+        }
+    }
+
+    /*
+     * Adds, measures and lays out the view of a position next to an edge, after the edge if
+     * towardsEnd is true, before it otherwise
+     */
+    private View layoutLoopChild(RecyclerView.Recycler recycler, int position, int edge,
+                                 boolean towardsEnd) {
+        OrientationHelper helper = getLoopOrientationHelper();
+        View view = recycler.getViewForPosition(position);
+        if (towardsEnd) {
+            addView(view);
+        } else {
+            addView(view, 0);
+        }
+        measureChildWithMargins(view, 0, 0);
+        int measurement = helper.getDecoratedMeasurement(view);
+        int start = towardsEnd ? edge : edge - measurement;
+        int left;
+        int top;
+        int right;
+        int bottom;
+        if (getOrientation() == HORIZONTAL) {
+            left = start;
+            right = start + measurement;
+            top = getPaddingTop();
+            bottom = top + helper.getDecoratedMeasurementInOther(view);
+        } else {
+            top = start;
+            bottom = start + measurement;
+            left = getPaddingLeft();
+            right = left + helper.getDecoratedMeasurementInOther(view);
+        }
+        RecyclerView.LayoutParams lp = (RecyclerView.LayoutParams) view.getLayoutParams();
+        layoutDecorated(view, left + lp.leftMargin, top + lp.topMargin, right - lp.rightMargin,
+                bottom - lp.bottomMargin);
+        return view;
+    }
+
+    /*
+     * Fills the side scrolling into view, moves the children and recycles the ones that left
+     */
+    private int scrollLoopBy(int delta, RecyclerView.Recycler recycler, RecyclerView.State state) {
+        int itemCount = state.getItemCount();
+        if (getChildCount() == 0 || delta == 0 || itemCount == 0) {
+            return 0;
+        }
+        OrientationHelper helper = getLoopOrientationHelper();
+        if (delta > 0) {
+            View last = getChildAt(getChildCount() - 1);
+            int position = getPosition(last);
+            int offset = helper.getDecoratedEnd(last);
+            int end = helper.getEndAfterPadding() + delta;
+            while (offset < end && getChildCount() < itemCount) {
+                position = wrapPosition(position + 1, itemCount);
+                offset = helper.getDecoratedEnd(
+                        layoutLoopChild(recycler, position, offset, true));
+            }
+            // Too few items to keep looping, stop at the last one rather than opening a gap
+            delta = Math.min(delta, Math.max(0, offset - helper.getEndAfterPadding()));
+        } else {
+            View first = getChildAt(0);
+            int position = getPosition(first);
+            int offset = helper.getDecoratedStart(first);
+            int start = helper.getStartAfterPadding() + delta;
+            while (offset > start && getChildCount() < itemCount) {
+                position = wrapPosition(position - 1, itemCount);
+                offset = helper.getDecoratedStart(
+                        layoutLoopChild(recycler, position, offset, false));
+            }
+            delta = Math.max(delta, Math.min(0, offset - helper.getStartAfterPadding()));
+        }
+        helper.offsetChildren(-delta);
+        recycleLoopChildren(recycler);
+        return delta;
+    }
+
+    private void recycleLoopChildren(RecyclerView.Recycler recycler) {
+        OrientationHelper helper = getLoopOrientationHelper();
+        int start = helper.getStartAfterPadding();
+        int end = helper.getEndAfterPadding();
+        while (getChildCount() > 1 && helper.getDecoratedEnd(getChildAt(0)) <= start) {
+            removeAndRecycleViewAt(0, recycler);
+        }
+        while (getChildCount() > 1
+                && helper.getDecoratedStart(getChildAt(getChildCount() - 1)) >= end) {
+            removeAndRecycleViewAt(getChildCount() - 1, recycler);
+        }
+    }
+
+    /*
+     * First or last child that's at least partly, or completely, within the padded area
+     */
+    private View findLoopVisibleChild(boolean fromStart, boolean completely) {
+        OrientationHelper helper = getLoopOrientationHelper();
+        int start = helper.getStartAfterPadding();
+        int end = helper.getEndAfterPadding();
+        int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            View child = getChildAt(fromStart ? i : childCount - 1 - i);
+            int childStart = helper.getDecoratedStart(child);
+            int childEnd = helper.getDecoratedEnd(child);
+            boolean visible = completely ? childStart >= start && childEnd <= end
+                    : childStart < end && childEnd > start;
+            if (visible) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private int findLoopVisibleItemPosition(boolean fromStart, boolean completely) {
+        View child = findLoopVisibleChild(fromStart, completely);
+        return child == null ? RecyclerView.NO_POSITION : getPosition(child);
+    }
+
+    @Override
+    public int findFirstVisibleItemPosition() {
+        return mLoopEnabled ? findLoopVisibleItemPosition(true, false)
+                : super.findFirstVisibleItemPosition();
+    }
+
+    @Override
+    public int findFirstCompletelyVisibleItemPosition() {
+        return mLoopEnabled ? findLoopVisibleItemPosition(true, true)
+                : super.findFirstCompletelyVisibleItemPosition();
+    }
+
+    @Override
+    public int findLastVisibleItemPosition() {
+        return mLoopEnabled ? findLoopVisibleItemPosition(false, false)
+                : super.findLastVisibleItemPosition();
+    }
+
+    @Override
+    public int findLastCompletelyVisibleItemPosition() {
+        return mLoopEnabled ? findLoopVisibleItemPosition(false, true)
+                : super.findLastCompletelyVisibleItemPosition();
+    }
+
+    @Override
+    public PointF computeScrollVectorForPosition(int targetPosition) {
+        if (!mLoopEnabled) {
+            return super.computeScrollVectorForPosition(targetPosition);
+        }
+        if (getChildCount() == 0) {
+            return null;
+        }
+        int direction;
+        if (targetPosition == mLoopTarget && mLoopDirection != 0) {
+            direction = mLoopDirection;
+        } else {
+            // Take the shorter way around
+            int itemCount = getItemCount();
+            int forward = wrapPosition(targetPosition - getPosition(getChildAt(0)), itemCount);
+            direction = forward <= itemCount / 2 ? 1 : -1;
+        }
+        return getOrientation() == HORIZONTAL ? new PointF(direction, 0)
+                : new PointF(0, direction);
+    }
+
+    /*
+     * A loop has no ends, report the visible area in the middle of a range three times as large
+     * so that the RecyclerView can always scroll both ways
+     */
+    private int computeLoopScrollExtent() {
+        return getChildCount() == 0 ? 0 : getLoopOrientationHelper().getTotalSpace();
+    }
+
+    @Override
+    public int computeHorizontalScrollOffset(RecyclerView.State state) {
+        return mLoopEnabled ? computeLoopScrollExtent()
+                : super.computeHorizontalScrollOffset(state);
+    }
+
+    @Override
+    public int computeHorizontalScrollExtent(RecyclerView.State state) {
+        return mLoopEnabled ? computeLoopScrollExtent()
+                : super.computeHorizontalScrollExtent(state);
+    }
+
+    @Override
+    public int computeHorizontalScrollRange(RecyclerView.State state) {
+        return mLoopEnabled ? 3 * computeLoopScrollExtent()
+                : super.computeHorizontalScrollRange(state);
+    }
+
+    @Override
+    public int computeVerticalScrollOffset(RecyclerView.State state) {
+        return mLoopEnabled ? computeLoopScrollExtent()
+                : super.computeVerticalScrollOffset(state);
+    }
+
+    @Override
+    public int computeVerticalScrollExtent(RecyclerView.State state) {
+        return mLoopEnabled ? computeLoopScrollExtent()
+                : super.computeVerticalScrollExtent(state);
+    }
+
+    @Override
+    public int computeVerticalScrollRange(RecyclerView.State state) {
+        return mLoopEnabled ? 3 * computeLoopScrollExtent()
+                : super.computeVerticalScrollRange(state);
+    }
+
+    @Override
+    public void measureChildWithMargins(View child, int widthUsed, int heightUsed) {
+        super.measureChildWithMargins(child, widthUsed, heightUsed);
+        if (!mInPreLayout) {
+            // Positions during pre-layout are pre-layout positions, skip them
+            mExtentIndex.setExtent(getPosition(child), getDecoratedExtentWithMargins(child));
+        }
+    }
+
+    private int getDecoratedExtentWithMargins(View child) {
+        RecyclerView.LayoutParams lp = (RecyclerView.LayoutParams) child.getLayoutParams();
+        if (getOrientation() == HORIZONTAL) {
+            return getDecoratedMeasuredWidth(child) + lp.leftMargin + lp.rightMargin;
+        }
+        return getDecoratedMeasuredHeight(child) + lp.topMargin + lp.bottomMargin;
+    }
+
+    @Override
+    public void onAdapterChanged(RecyclerView.Adapter oldAdapter, RecyclerView.Adapter newAdapter) {
+        super.onAdapterChanged(oldAdapter, newAdapter);
+        mExtentIndex.reset(newAdapter == null ? 0 : newAdapter.getItemCount());
+    }
+
+    @Override
+    public void onItemsChanged(RecyclerView recyclerView) {
+        super.onItemsChanged(recyclerView);
+        mExtentIndex.reset(getItemCount());
+    }
+
+    @Override
+    public void onItemsAdded(RecyclerView recyclerView, int positionStart, int itemCount) {
+        super.onItemsAdded(recyclerView, positionStart, itemCount);
+        mExtentIndex.onItemsAdded(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemsRemoved(RecyclerView recyclerView, int positionStart, int itemCount) {
+        super.onItemsRemoved(recyclerView, positionStart, itemCount);
+        mExtentIndex.onItemsRemoved(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemsUpdated(RecyclerView recyclerView, int positionStart, int itemCount) {
+        super.onItemsUpdated(recyclerView, positionStart, itemCount);
+        mExtentIndex.invalidate(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemsMoved(RecyclerView recyclerView, int from, int to, int itemCount) {
+        super.onItemsMoved(recyclerView, from, to, itemCount);
+        mExtentIndex.onItemsMoved(from, to, itemCount);
+    }
+
     @Override
     public void smoothScrollToPosition(RecyclerView recyclerView, RecyclerView.State state, int position) {
+        jumpTowards(position);
         SnappyLinearSmoothScroller linearSmoothScroller = new SnappyLinearSmoothScroller(recyclerView.getContext());
         linearSmoothScroller.setTargetPosition(position);
         startSmoothScroll(linearSmoothScroller);
     }
 
+    /*
+     * Jumps to a staging position one screen before a far away target, the smooth scroller then
+     * finds the target within a screen whatever the distance. The direction of travel is kept,
+     * so the scroller searching from the old layout heads the same way.
+     */
+    private void jumpTowards(int target) {
+        int childCount = getChildCount();
+        int itemCount = getItemCount();
+        if (childCount == 0 || target < 0 || target >= itemCount) {
+            return;
+        }
+        int first = findFirstVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int distance;
+        if (!mLoopEnabled) {
+            distance = target - first;
+        } else if (target == mLoopTarget && mLoopDirection != 0) {
+            distance = mLoopDirection > 0 ? wrapPosition(target - first, itemCount)
+                    : -wrapPosition(first - target, itemCount);
+        } else {
+            PointF vector = computeScrollVectorForPosition(target);
+            float direction = getOrientation() == HORIZONTAL ? vector.x : vector.y;
+            distance = direction > 0 ? wrapPosition(target - first, itemCount)
+                    : -wrapPosition(first - target, itemCount);
+        }
+        int absDistance = Math.abs(distance);
+        if (absDistance <= mJumpThresholdItems && absDistance <= mJumpThresholdScreens * childCount) {
+            return;
+        }
+        int staging = offsetPosition(target, distance > 0 ? -childCount : childCount);
+        if (!mLoopEnabled) {
+            staging = Math.max(0, Math.min(staging, itemCount - 1));
+        }
+        if (DEBUG) {
+            Log.d(TAG, String.format("jump from %d to %d, target %d", first, staging, target));
+        }
+        scrollToPositionWithOffset(staging, 0);
+        mStats.onScrollJump();
+    }
+
     @Override
     public int computeScrollToItemIndex(int velocityX, int velocityY) {
-        if (getOrientation() == LinearLayoutManager.HORIZONTAL) {
-            mScrollerSpeed = Math.abs(convertPixelPerSecondToMillisPerInch(velocityX)
-                    * mFlingVelocityRatio);
-            mScrollerSpeed = Math.min(mScrollerSpeed, MAX_MILLIS_PER_INCH_ALLOWED);
-            Log.d(TAG, "mScrollerSpeed :" + mScrollerSpeed);
-            return computeScrollX(velocityX);
+        // Both axes share the same velocity -> target computation, only the velocity along the
+        // scrolling axis matters
+        int velocity = getOrientation() == HORIZONTAL ? velocityX : velocityY;
+        TraceCompat.beginSection(TRACE_COMPUTE_SCROLL);
+        try {
+            mScrollerSpeed = SnapMath.computeScrollerSpeed(mDensityDpi, velocity,
+                    mFlingVelocityRatio);
+            if (DEBUG) {
+                Log.d(TAG, "mScrollerSpeed :" + mScrollerSpeed);
+            }
+            int target = computeScroll(velocity);
+            schedulePrefetch(target);
+            return target;
+        } finally {
+            TraceCompat.endSection();
         }
-        return 0;
     }
 
-
-    private int computeScrollX(int velocityX) {
+    private int computeScroll(int velocity) {
         int itemCount = getItemCount();
         if (itemCount == 0) return 0;
-        int distance = computeScrollDistance(velocityX);
+        int distance = (int) mFlingModel.getDistance(velocity);
 
         int first = findFirstVisibleItemPosition();
         View firstView = findViewByPosition(first);
-        int firstViewLeft = firstView.getLeft();
-        int totalDistance = distance - firstViewLeft;
-
-        int childWidth = firstView.getWidth();
-        int indexOffset = Math.round((float) totalDistance / (float) childWidth);
-        int targetIndex = first + indexOffset;
-        targetIndex = Math.max(0, targetIndex);
-        targetIndex = Math.min(targetIndex, itemCount - 1);
-        Log.d(TAG, String.format("distance: %d, totalDistance: %d, childWidth: %d, indexOffset: %d", distance,
-                totalDistance, childWidth, indexOffset));
+        if (firstView == null) return 0;
+        int targetIndex;
+        mExtentIndex.setItemCount(itemCount);
+        if (mLoopEnabled) {
+            // Prefix sums of extents end at the last item, step by the average extent instead
+            int extent = mExtentIndex.getEstimatedExtent() > 0
+                    ? mExtentIndex.getEstimatedExtent() : getDecoratedExtentWithMargins(firstView);
+            int offset = SnapMath.computeTargetOffset(getDecoratedStartWithMargins(firstView),
+                    extent, distance);
+            targetIndex = wrapPosition(first + offset, itemCount);
+            mLoopTarget = targetIndex;
+            mLoopDirection = Integer.signum(offset);
+        } else if (mExtentIndex.getEstimatedExtent() > 0) {
+            // Offset of the visible area relative to the start edge of the first item
+            long scrollOffset = mExtentIndex.getStart(first) - getDecoratedStartWithMargins(firstView);
+            targetIndex = mExtentIndex.findIndexNearestTo(scrollOffset + distance);
+        } else if (getOrientation() == HORIZONTAL) {
+            targetIndex = SnapMath.computeTargetIndex(first, firstView.getLeft(),
+                    firstView.getWidth(), distance, itemCount);
+        } else {
+            targetIndex = SnapMath.computeTargetIndex(first, firstView.getTop(),
+                    firstView.getHeight(), distance, itemCount);
+        }
+        if (DEBUG) {
+            Log.d(TAG, String.format("distance: %d, first: %d, targetIndex: %d", distance, first,
+                    targetIndex));
+        }
         return targetIndex;
     }
 
-    private int computeScrollDistance(int velocityX) {
-        return (int) (velocityX * DEFAULT_FLING_VELOCITY_DISTANCE_RATIO);
+    /*
+     * Start edge of the child including its margins, relative to the start padding of the parent
+     */
+    private int getDecoratedStartWithMargins(View child) {
+        RecyclerView.LayoutParams lp = (RecyclerView.LayoutParams) child.getLayoutParams();
+        if (getOrientation() == HORIZONTAL) {
+            return getDecoratedLeft(child) - lp.leftMargin - getPaddingLeft();
+        }
+        return getDecoratedTop(child) - lp.topMargin - getPaddingTop();
     }
 
-    private float convertPixelPerSecondToMillisPerInch(int pixelPerSecond) {
-        return (float) mDensityDpi / (float) pixelPerSecond * 1000;
+    /**
+     * State of {@link LinearLayoutManager} plus the snapped item: its index, its offset from the
+     * snapping anchor and its extent when it was saved, and the fling velocity ratio
+     */
+    public static class SavedState implements Parcelable {
+        private final Parcelable mSuperState;
+        private int mSnapIndex = RecyclerView.NO_POSITION;
+        private int mSnapMethod;
+        private int mSnapOffset;
+        private int mSnapExtent;
+        private float mFlingVelocityRatio;
+
+        SavedState(Parcelable superState) {
+            mSuperState = superState;
+        }
+
+        SavedState(Parcel in) {
+            mSuperState = in.readParcelable(LinearLayoutManager.class.getClassLoader());
+            mSnapIndex = in.readInt();
+            mSnapMethod = in.readInt();
+            mSnapOffset = in.readInt();
+            mSnapExtent = in.readInt();
+            mFlingVelocityRatio = in.readFloat();
+        }
+
+        int getSnapIndex() {
+            return mSnapIndex;
+        }
+
+        void copySnapFrom(SavedState other) {
+            mSnapIndex = other.mSnapIndex;
+            mSnapMethod = other.mSnapMethod;
+            mSnapOffset = other.mSnapOffset;
+            mSnapExtent = other.mSnapExtent;
+        }
+
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            dest.writeParcelable(mSuperState, flags);
+            dest.writeInt(mSnapIndex);
+            dest.writeInt(mSnapMethod);
+            dest.writeInt(mSnapOffset);
+            dest.writeInt(mSnapExtent);
+            dest.writeFloat(mFlingVelocityRatio);
+        }
+
+        public static final Creator<SavedState> CREATOR = new Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
     }
 
     public class SnappyLinearSmoothScroller extends LinearSmoothScroller {
-        public static final int SNAP_START = 0;
-        public static final int SNAP_END = 1;
-        public static final int SNAP_CENTER = 2;
-        public static final int SNAP_NONE = 3;
+        public static final int SNAP_START = SnapMath.SNAP_START;
+        public static final int SNAP_END = SnapMath.SNAP_END;
+        public static final int SNAP_CENTER = SnapMath.SNAP_CENTER;
+        public static final int SNAP_NONE = SnapMath.SNAP_NONE;
+
+        private boolean mTargetFound;
 
         public SnappyLinearSmoothScroller(Context context) {
             super(context);
@@ -145,38 +1155,36 @@ public class SnappyLinearLayoutManager extends LinearLayoutManager implements Sn
 
         @Override
         public int calculateDtToFit(int viewStart, int viewEnd, int boxStart, int boxEnd, int snapPreference) {
-            switch (mSnapMethod) {
-                case SNAP_START:
-                    return boxStart - viewStart;
-                case SNAP_END:
-                    return boxEnd - viewEnd;
-                case SNAP_CENTER:
-                    int boxMid = boxStart + (boxEnd - boxStart) / 2;
-                    int viewMid = viewStart + (viewEnd - viewStart) / 2;
-                    return boxMid - viewMid;
-                case SNAP_NONE:
-                    final int dtStart = boxStart - viewStart;
-                    if (dtStart > 0) {
-                        return dtStart;
-                    }
-                    final int dtEnd = boxEnd - viewEnd;
-                    if (dtEnd < 0) {
-                        return dtEnd;
-                    }
-                    break;
-                default:
-                    throw new IllegalArgumentException("snap preference should be one" +
-                            " of the"
-                            + " constants defined in SnapperLinearLayoutManager, " +
-                            "starting with SNAP_");
+            return SnapMath.calculateDtToFit(viewStart, viewEnd, boxStart, boxEnd, mSnapMethod);
+        }
+
+        @Override
+        protected int calculateTimeForDeceleration(int dx) {
+            return mFlingModel.getDurationForDistance(dx);
+        }
+
+        @Override
+        protected void onTargetFound(View targetView, RecyclerView.State state, Action action) {
+            // Same as LinearSmoothScroller, but decelerating along the platform fling curve
+            int dx = calculateDxToMakeVisible(targetView, getHorizontalSnapPreference());
+            int dy = calculateDyToMakeVisible(targetView, getVerticalSnapPreference());
+            int distance = (int) Math.sqrt(dx * dx + dy * dy);
+            int time = calculateTimeForDeceleration(distance);
+            if (time > 0) {
+                action.update(-dx, -dy, time, SPLINE_INTERPOLATOR);
             }
-            return 0;
+            mTargetFound = true;
         }
 
         @Override
         protected void onStop() {
             super.onStop();
-            Log.d(TAG, "SnappyLinearSmoothScroller.onStop");
+            if (mTargetFound) {
+                mStats.onSnap();
+            }
+            if (DEBUG) {
+                Log.d(TAG, "SnappyLinearSmoothScroller.onStop");
+            }
         }
     }
 }
@@ -2,6 +2,7 @@ package com.carl.recyclerview;
 
 import android.content.Context;
 import android.support.annotation.Nullable;
+import android.support.v4.os.TraceCompat;
 import android.support.v7.widget.RecyclerView;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -14,7 +15,12 @@ import android.view.MotionEvent;
 public class SnappyRecyclerView extends RecyclerView {
 
     private static final String TAG = "SnappyRecyclerView";
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    private static final String TRACE_FLING = "SnappyRecyclerView.fling";
     private int mScrollState;
+    private SnappyStats mStats = new SnappyStats();
+    private GestureRecorder mGestureRecorder;
+    private InputLatencyTracker mInputLatencyTracker;
 
     public SnappyRecyclerView(Context context) {
         this(context, null);
@@ -28,6 +34,44 @@ public class SnappyRecyclerView extends RecyclerView {
         super(context, attrs, defStyle);
     }
 
+    public SnappyStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Sets the {@link SnappyStats} to report flings to
+     * @param stats the stats to report to
+     */
+    public void setStats(SnappyStats stats) {
+        mStats = stats;
+    }
+
+    /**
+     * Sets a recorder that receives every touch event dispatched to this view, before any
+     * gesture helper sees it
+     * @param recorder the recorder, or null to stop recording
+     */
+    public void setGestureRecorder(GestureRecorder recorder) {
+        mGestureRecorder = recorder;
+    }
+
+    /**
+     * Sets the tracker to report fling latencies to, from the up event to the first frame the
+     * list scrolls towards the fling target
+     * @param tracker the tracker, or null to stop tracking
+     */
+    public void setInputLatencyTracker(InputLatencyTracker tracker) {
+        mInputLatencyTracker = tracker;
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent e) {
+        if (mGestureRecorder != null) {
+            mGestureRecorder.record(e);
+        }
+        return super.dispatchTouchEvent(e);
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent e) {
         boolean result = super.onTouchEvent(e);
@@ -59,14 +103,33 @@ public class SnappyRecyclerView extends RecyclerView {
         mScrollState = state;
     }
 
+    @Override
+    public void onScrolled(int dx, int dy) {
+        super.onScrolled(dx, dy);
+        if (mInputLatencyTracker != null && (dx != 0 || dy != 0)) {
+            mInputLatencyTracker.onApplied(InputLatencyTracker.GESTURE_FLING);
+        }
+    }
+
     @Override
     public boolean fling(int velocityX, int velocityY) {
-        Log.d(TAG, String.format("fling vx: %d, vy: %d", velocityX, velocityY));
+        if (DEBUG) {
+            Log.d(TAG, String.format("fling vx: %d, vy: %d", velocityX, velocityY));
+        }
         LayoutManager lm = getLayoutManager();
         if (lm instanceof SnappyScrollCalculator) {
             SnappyScrollCalculator cal = (SnappyScrollCalculator) lm;
-            int index = cal.computeScrollToItemIndex(velocityX, velocityY);
-            smoothScrollToPosition(index);
+            TraceCompat.beginSection(TRACE_FLING);
+            try {
+                int index = cal.computeScrollToItemIndex(velocityX, velocityY);
+                mStats.onFling();
+                if (mInputLatencyTracker != null) {
+                    mInputLatencyTracker.onInput(InputLatencyTracker.GESTURE_FLING);
+                }
+                smoothScrollToPosition(index);
+            } finally {
+                TraceCompat.endSection();
+            }
             return true;
         }
         return super.fling(velocityX, velocityY);
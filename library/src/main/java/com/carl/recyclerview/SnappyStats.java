@@ -0,0 +1,151 @@
+package com.carl.recyclerview;
+
+/**
+ * Cheap hot-path counters of the snapping and swiping components. Counters are only updated on
+ * the main thread. A single instance could be shared by {@link SnappyRecyclerView},
+ * {@link SnappyLinearLayoutManager} and {@link SwipeGestureHelper} so that all of them report
+ * into the same place, {@link SnappingSwipingViewBuilder} does this for you.
+ *
+ * @author carl
+ */
+public class SnappyStats {
+
+    private long mFlingCount;
+    private long mSnapCount;
+    private long mSwipeCommittedCount;
+    private long mSwipeRecoveredCount;
+    private long mRecoverAnimationCount;
+    private long mPrefetchCount;
+    private long mScrollJumpCount;
+    private long mWarmedUpViewHolderCount;
+    private long mTimeToFirstFrameMillis = -1;
+
+    /**
+     * @return number of flings whose target has been computed by a {@link SnappyScrollCalculator}
+     */
+    public long getFlingCount() {
+        return mFlingCount;
+    }
+
+    /**
+     * @return number of snapping scrolls that have reached their target item
+     */
+    public long getSnapCount() {
+        return mSnapCount;
+    }
+
+    /**
+     * @return number of swipes that were successful and swiped the selected item view out
+     */
+    public long getSwipeCommittedCount() {
+        return mSwipeCommittedCount;
+    }
+
+    /**
+     * @return number of swipes that were not successful and recovered the item views
+     */
+    public long getSwipeRecoveredCount() {
+        return mSwipeRecoveredCount;
+    }
+
+    /**
+     * @return number of recover animations played on individual item views
+     */
+    public long getRecoverAnimationCount() {
+        return mRecoverAnimationCount;
+    }
+
+    /**
+     * @return number of item views created or bound ahead of time around fling targets
+     */
+    public long getPrefetchCount() {
+        return mPrefetchCount;
+    }
+
+    /**
+     * @return number of long distance scrolls that jumped close to their target before scrolling
+     */
+    public long getScrollJumpCount() {
+        return mScrollJumpCount;
+    }
+
+    /**
+     * @return number of view holders put into the pool ahead of time by {@link ViewHolderWarmUp}
+     */
+    public long getWarmedUpViewHolderCount() {
+        return mWarmedUpViewHolderCount;
+    }
+
+    /**
+     * @return milliseconds between setting up the RecyclerView and the first frame that drew
+     * item views, -1 if it hasn't been drawn yet
+     */
+    public long getTimeToFirstFrameMillis() {
+        return mTimeToFirstFrameMillis;
+    }
+
+    /**
+     * Resets all counters to zero
+     */
+    public void reset() {
+        mFlingCount = 0;
+        mSnapCount = 0;
+        mSwipeCommittedCount = 0;
+        mSwipeRecoveredCount = 0;
+        mRecoverAnimationCount = 0;
+        mPrefetchCount = 0;
+        mScrollJumpCount = 0;
+        mWarmedUpViewHolderCount = 0;
+        mTimeToFirstFrameMillis = -1;
+    }
+
+    void onFling() {
+        mFlingCount++;
+    }
+
+    void onSnap() {
+        mSnapCount++;
+    }
+
+    void onScrollJump() {
+        mScrollJumpCount++;
+    }
+
+    void onSwipeCommitted() {
+        mSwipeCommittedCount++;
+    }
+
+    void onSwipeRecovered() {
+        mSwipeRecoveredCount++;
+    }
+
+    void onRecoverAnimation() {
+        mRecoverAnimationCount++;
+    }
+
+    void onPrefetch() {
+        mPrefetchCount++;
+    }
+
+    void onViewHolderWarmedUp() {
+        mWarmedUpViewHolderCount++;
+    }
+
+    void onFirstFrame(long timeToFirstFrameMillis) {
+        mTimeToFirstFrameMillis = timeToFirstFrameMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "SnappyStats{" +
+                "flings=" + mFlingCount +
+                ", snaps=" + mSnapCount +
+                ", swipesCommitted=" + mSwipeCommittedCount +
+                ", swipesRecovered=" + mSwipeRecoveredCount +
+                ", recoverAnimations=" + mRecoverAnimationCount +
+                ", prefetches=" + mPrefetchCount +
+                ", warmedUpViewHolders=" + mWarmedUpViewHolderCount +
+                ", timeToFirstFrameMillis=" + mTimeToFirstFrameMillis +
+                '}';
+    }
+}
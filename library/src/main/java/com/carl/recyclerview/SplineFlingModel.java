@@ -0,0 +1,179 @@
+package com.carl.recyclerview;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Android-free model of the spline deceleration of the platform OverScroller: how far and how
+ * long a fling of a given velocity travels, and how far it has got at a given fraction of its
+ * duration. The exact formulas take a logarithm and an exponential each, so they are evaluated
+ * once per density into lookup tables, and every query afterwards is a square root and a linear
+ * interpolation between two table entries.
+ * <p>
+ * Tables are sampled on a square grid, entry i standing for max * (i / TABLE_SIZE)^2, which
+ * spends most samples on small values where the power laws bend the most.
+ *
+ * @author carl
+ */
+public class SplineFlingModel {
+
+    /**
+     * Default friction of flings, as returned by ViewConfiguration#getScrollFriction()
+     */
+    public static final float DEFAULT_FRICTION = 0.015F;
+    /**
+     * Velocities are clamped to this, which is twice the usual maximum fling velocity
+     */
+    public static final float MAX_VELOCITY_DP_PER_SECOND = 16000F;
+
+    private static final float INFLEXION = 0.35F;
+    private static final float START_TENSION = 0.5F;
+    private static final float END_TENSION = 1.0F;
+    private static final float P1 = START_TENSION * INFLEXION;
+    private static final float P2 = 1.0F - END_TENSION * (1.0F - INFLEXION);
+    private static final double DECELERATION_RATE = Math.log(0.78D) / Math.log(0.9D);
+    private static final float GRAVITY_EARTH = 9.80665F;
+    private static final float INCHES_PER_METER = 39.37F;
+    private static final float DENSITY_DEFAULT = 160F;
+    private static final int TABLE_SIZE = 256;
+    private static final int NB_SAMPLES = 100;
+    /*
+     * Fraction of the distance travelled at NB_SAMPLES + 1 evenly spaced fractions of the duration
+     */
+    private static final float[] SPLINE_POSITION = new float[NB_SAMPLES + 1];
+    private static final Map<Integer, SplineFlingModel> sModels = new HashMap<>();
+
+    static {
+        float xMin = 0.0F;
+        for (int i = 0; i < NB_SAMPLES; i++) {
+            float alpha = (float) i / NB_SAMPLES;
+            float xMax = 1.0F;
+            float x;
+            float coef;
+            // Binary search for the spline parameter reaching this time fraction
+            while (true) {
+                x = xMin + (xMax - xMin) / 2.0F;
+                coef = 3.0F * x * (1.0F - x);
+                float tx = coef * ((1.0F - x) * P1 + x * P2) + x * x * x;
+                if (Math.abs(tx - alpha) < 1E-5) {
+                    break;
+                }
+                if (tx > alpha) {
+                    xMax = x;
+                } else {
+                    xMin = x;
+                }
+            }
+            SPLINE_POSITION[i] = coef * ((1.0F - x) * START_TENSION + x) + x * x * x;
+        }
+        SPLINE_POSITION[NB_SAMPLES] = 1.0F;
+    }
+
+    private final float mMaxVelocity;
+    private final float mMaxDistance;
+    /*
+     * Distance and duration of flings, on the square grid of velocities
+     */
+    private final float[] mDistances = new float[TABLE_SIZE + 1];
+    private final float[] mDurations = new float[TABLE_SIZE + 1];
+    /*
+     * Duration of flings, on the square grid of distances
+     */
+    private final float[] mDurationsByDistance = new float[TABLE_SIZE + 1];
+
+    /**
+     * Precomputes the tables of a screen density
+     * @param densityDpi the screen density in dpi
+     * @param friction the fling friction, {@link #DEFAULT_FRICTION} on the platform
+     */
+    public SplineFlingModel(int densityDpi, float friction) {
+        double physicalCoeff = GRAVITY_EARTH * INCHES_PER_METER * densityDpi * 0.84D;
+        double frictionCoeff = friction * physicalCoeff;
+        mMaxVelocity = MAX_VELOCITY_DP_PER_SECOND * densityDpi / DENSITY_DEFAULT;
+        for (int i = 0; i <= TABLE_SIZE; i++) {
+            double fraction = (double) i / TABLE_SIZE;
+            double velocity = mMaxVelocity * fraction * fraction;
+            if (velocity == 0D) {
+                continue;
+            }
+            double deceleration = Math.log(INFLEXION * velocity / frictionCoeff);
+            mDistances[i] = (float) (frictionCoeff
+                    * Math.exp(DECELERATION_RATE / (DECELERATION_RATE - 1D) * deceleration));
+            mDurations[i] = (float) (1000D
+                    * Math.exp(deceleration / (DECELERATION_RATE - 1D)));
+        }
+        mMaxDistance = mDistances[TABLE_SIZE];
+        for (int i = 1; i <= TABLE_SIZE; i++) {
+            double fraction = (double) i / TABLE_SIZE;
+            double distance = mMaxDistance * fraction * fraction;
+            // Inverse of the distance formula, then the duration formula
+            mDurationsByDistance[i] = (float) (1000D
+                    * Math.pow(distance / frictionCoeff, 1D / DECELERATION_RATE));
+        }
+    }
+
+    /**
+     * @return the shared model of a screen density with the default friction
+     */
+    public static SplineFlingModel forDensity(int densityDpi) {
+        synchronized (sModels) {
+            SplineFlingModel model = sModels.get(densityDpi);
+            if (model == null) {
+                model = new SplineFlingModel(densityDpi, DEFAULT_FRICTION);
+                sModels.put(densityDpi, model);
+            }
+            return model;
+        }
+    }
+
+    /**
+     * @param velocity fling velocity in pixels per second
+     * @return the distance the fling travels in pixels, with the sign of the velocity
+     */
+    public float getDistance(float velocity) {
+        float distance = lookUp(mDistances, Math.abs(velocity), mMaxVelocity);
+        return velocity < 0 ? -distance : distance;
+    }
+
+    /**
+     * @param velocity fling velocity in pixels per second
+     * @return the duration of the fling in milliseconds
+     */
+    public int getDuration(float velocity) {
+        return (int) lookUp(mDurations, Math.abs(velocity), mMaxVelocity);
+    }
+
+    /**
+     * @param distance distance in pixels
+     * @return the duration of the fling that travels exactly given distance, in milliseconds
+     */
+    public int getDurationForDistance(float distance) {
+        return (int) lookUp(mDurationsByDistance, Math.abs(distance), mMaxDistance);
+    }
+
+    /**
+     * @param timeFraction elapsed fraction of the fling duration, in [0, 1]
+     * @return the fraction of the fling distance travelled by then
+     */
+    public static float getPosition(float timeFraction) {
+        if (timeFraction <= 0F) {
+            return 0F;
+        }
+        if (timeFraction >= 1F) {
+            return 1F;
+        }
+        float scaled = NB_SAMPLES * timeFraction;
+        int index = (int) scaled;
+        return MathUtils.lerp(SPLINE_POSITION[index], SPLINE_POSITION[index + 1],
+                scaled - index);
+    }
+
+    private static float lookUp(float[] table, float value, float max) {
+        if (value >= max) {
+            return table[TABLE_SIZE];
+        }
+        float scaled = (float) Math.sqrt(value / max) * TABLE_SIZE;
+        int index = (int) scaled;
+        return MathUtils.lerp(table[index], table[index + 1], scaled - index);
+    }
+}
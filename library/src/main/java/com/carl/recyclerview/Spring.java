@@ -0,0 +1,131 @@
+package com.carl.recyclerview;
+
+/**
+ * Android-free damped spring pulling a value towards a target. Steps use the closed form
+ * solution of the damped harmonic oscillator, so they are exact and stable whatever the frame
+ * interval. The target can be moved at any time, the value and velocity carry over so that a
+ * retargeted animation continues without a visual discontinuity.
+ *
+ * @author carl
+ */
+class Spring {
+
+    /*
+     * Fraction of the initial displacement the envelope decays to within the settle duration,
+     * see setSettleDuration()
+     */
+    private static final double SETTLE_DECAY = Math.log(1000D);
+
+    private double mNaturalFrequency = 1D;
+    private double mDampingRatio = 1D;
+    private double mValue;
+    private double mVelocity;
+    private double mTarget;
+    private double mValueThreshold = 0.001D;
+    private double mVelocityThreshold = 0.01D;
+
+    /**
+     * Sets the damping ratio, call it before {@link #setSettleDuration(long)}
+     * @param dampingRatio 1 for a critically damped spring, lower values overshoot
+     */
+    void setDampingRatio(float dampingRatio) {
+        mDampingRatio = dampingRatio;
+    }
+
+    /**
+     * Sets the stiffness so that the spring settles in about given duration
+     */
+    void setSettleDuration(long durationMillis) {
+        double seconds = Math.max(durationMillis, 1L) / 1000D;
+        // Decay rate of the slowest mode, relative to the natural frequency
+        double decay = mDampingRatio > 1D
+                ? mDampingRatio - Math.sqrt(mDampingRatio * mDampingRatio - 1D)
+                : mDampingRatio;
+        mNaturalFrequency = SETTLE_DECAY / (decay * seconds);
+    }
+
+    /**
+     * @param valueThreshold the spring is at rest once this close to its target...
+     * @param velocityThreshold ...and slower than this, in units per second
+     */
+    void setRestThresholds(float valueThreshold, float velocityThreshold) {
+        mValueThreshold = valueThreshold;
+        mVelocityThreshold = velocityThreshold;
+    }
+
+    void setValue(float value) {
+        mValue = value;
+    }
+
+    float getValue() {
+        return (float) mValue;
+    }
+
+    void setVelocity(float velocity) {
+        mVelocity = velocity;
+    }
+
+    float getVelocity() {
+        return (float) mVelocity;
+    }
+
+    void setTarget(float target) {
+        mTarget = target;
+    }
+
+    float getTarget() {
+        return (float) mTarget;
+    }
+
+    boolean isAtRest() {
+        return Math.abs(mValue - mTarget) < mValueThreshold
+                && Math.abs(mVelocity) < mVelocityThreshold;
+    }
+
+    /**
+     * Jumps to the target and stops
+     */
+    void settle() {
+        mValue = mTarget;
+        mVelocity = 0D;
+    }
+
+    /**
+     * Advances the spring by given time
+     */
+    void step(long deltaMillis) {
+        double t = deltaMillis / 1000D;
+        double omega = mNaturalFrequency;
+        double zeta = mDampingRatio;
+        double x0 = mValue - mTarget;
+        double v0 = mVelocity;
+        double x;
+        double v;
+        if (zeta > 1D) {
+            double root = omega * Math.sqrt(zeta * zeta - 1D);
+            double gammaPlus = -zeta * omega + root;
+            double gammaMinus = -zeta * omega - root;
+            double b = (gammaMinus * x0 - v0) / (gammaMinus - gammaPlus);
+            double a = x0 - b;
+            double ePlus = Math.exp(gammaPlus * t);
+            double eMinus = Math.exp(gammaMinus * t);
+            x = a * eMinus + b * ePlus;
+            v = a * gammaMinus * eMinus + b * gammaPlus * ePlus;
+        } else if (zeta == 1D) {
+            double b = v0 + omega * x0;
+            double decay = Math.exp(-omega * t);
+            x = (x0 + b * t) * decay;
+            v = (b - omega * (x0 + b * t)) * decay;
+        } else {
+            double dampedFrequency = omega * Math.sqrt(1D - zeta * zeta);
+            double s = (zeta * omega * x0 + v0) / dampedFrequency;
+            double decay = Math.exp(-zeta * omega * t);
+            double cos = Math.cos(dampedFrequency * t);
+            double sin = Math.sin(dampedFrequency * t);
+            x = decay * (x0 * cos + s * sin);
+            v = -zeta * omega * x + decay * dampedFrequency * (s * cos - x0 * sin);
+        }
+        mValue = mTarget + x;
+        mVelocity = v;
+    }
+}
@@ -0,0 +1,76 @@
+package com.carl.recyclerview;
+
+import android.support.v4.os.TraceCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Steps the springs of all running {@link SwipeAnimationEngine}s from a single frame callback,
+ * so that any number of item views animate together with one callback per frame.
+ *
+ * @author carl
+ */
+class SpringAnimationDriver {
+
+    private static final String TRACE_FRAME = "SpringAnimationDriver.frame";
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final List<SwipeAnimationEngine> mEngines = new ArrayList<>();
+    private boolean mFrameCallbackPosted;
+    private long mLastFrameTimeNanos;
+    private final ChoreographerCompat.FrameCallback mFrameCallback =
+            new ChoreographerCompat.FrameCallback() {
+                @Override
+                void doFrame(long frameTimeNanos) {
+                    mFrameCallbackPosted = false;
+                    onFrame(frameTimeNanos);
+                }
+            };
+
+    /**
+     * Starts stepping given engine with the next frame, does nothing if it's already stepped
+     */
+    void add(SwipeAnimationEngine engine) {
+        if (mEngines.contains(engine)) {
+            return;
+        }
+        if (mEngines.isEmpty()) {
+            mLastFrameTimeNanos = System.nanoTime();
+        }
+        mEngines.add(engine);
+        if (!mFrameCallbackPosted) {
+            mFrameCallbackPosted = true;
+            ChoreographerCompat.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    void remove(SwipeAnimationEngine engine) {
+        mEngines.remove(engine);
+        if (mEngines.isEmpty() && mFrameCallbackPosted) {
+            ChoreographerCompat.getInstance().removeFrameCallback(mFrameCallback);
+            mFrameCallbackPosted = false;
+        }
+    }
+
+    private void onFrame(long frameTimeNanos) {
+        TraceCompat.beginSection(TRACE_FRAME);
+        try {
+            long deltaMillis = Math.max(0L,
+                    (frameTimeNanos - mLastFrameTimeNanos) / NANOS_PER_MILLI);
+            mLastFrameTimeNanos = frameTimeNanos;
+            // Engines may end during the step and remove themselves, or start other engines
+            for (int i = mEngines.size() - 1; i >= 0; i--) {
+                if (i < mEngines.size()) {
+                    mEngines.get(i).step(deltaMillis);
+                }
+            }
+            if (!mEngines.isEmpty() && !mFrameCallbackPosted) {
+                mFrameCallbackPosted = true;
+                ChoreographerCompat.getInstance().postFrameCallback(mFrameCallback);
+            }
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.carl.recyclerview;
+
+import android.support.v4.os.TraceCompat;
+import android.view.View;
+
+/**
+ * Reusable animation engine that animates scale and translation of a single item view with
+ * springs, stepped by a shared {@link SpringAnimationDriver}. Starting an animation on the view
+ * that is already animating retargets the running springs, so the current velocity is kept and
+ * there's no visual discontinuity when an animation is interrupted. Nothing is allocated per
+ * animation.
+ *
+ * @author carl
+ */
+class SwipeAnimationEngine {
+
+    private static final String TRACE_START = "SwipeAnimationEngine.start";
+    /*
+     * Scale overshoots a little, as OvershootInterpolator used to, translation doesn't
+     */
+    static final float SCALE_DAMPING_RATIO = 0.6F;
+    static final float TRANSLATION_DAMPING_RATIO = 1F;
+    private static final float SCALE_VALUE_THRESHOLD = 0.001F;
+    private static final float TRANSLATION_VALUE_THRESHOLD = 0.5F;
+    private static final float VELOCITY_THRESHOLD_RATIO = 10F;
+
+    private final SpringAnimationDriver mDriver;
+    private final Callback mCallback;
+    private final Spring mScaleSpring = new Spring();
+    private final Spring mTranslationSpring = new Spring();
+    private View mView;
+    private boolean mRunning;
+    private boolean mTranslateAlongX;
+    private boolean mAnimateScale;
+    private boolean mAnimateTranslation;
+    private Runnable mEndAction;
+
+    SwipeAnimationEngine(SpringAnimationDriver driver, Callback callback) {
+        mDriver = driver;
+        mCallback = callback;
+        mScaleSpring.setDampingRatio(SCALE_DAMPING_RATIO);
+        mScaleSpring.setRestThresholds(SCALE_VALUE_THRESHOLD,
+                SCALE_VALUE_THRESHOLD * VELOCITY_THRESHOLD_RATIO);
+        mTranslationSpring.setDampingRatio(TRANSLATION_DAMPING_RATIO);
+        mTranslationSpring.setRestThresholds(TRANSLATION_VALUE_THRESHOLD,
+                TRANSLATION_VALUE_THRESHOLD * VELOCITY_THRESHOLD_RATIO);
+    }
+
+    /**
+     * Sets the axis translation animations run along, Y by default
+     * @param alongX true to animate translationX, false to animate translationY
+     */
+    void setTranslationAlongX(boolean alongX) {
+        mTranslateAlongX = alongX;
+    }
+
+    /**
+     * Animates scale of the view to toScale, translation is left untouched. The animation starts
+     * from fromScale unless scale of the view is already animating
+     */
+    void animateScale(View view, float fromScale, float toScale, long duration) {
+        boolean retarget = prepare(view);
+        if (!retarget || !mAnimateScale) {
+            mScaleSpring.setValue(fromScale);
+            mScaleSpring.setVelocity(0F);
+        }
+        mAnimateScale = true;
+        mAnimateTranslation = false;
+        mScaleSpring.setTarget(toScale);
+        mScaleSpring.setSettleDuration(duration);
+        start(duration, null);
+    }
+
+    /**
+     * Animates the view from its current scale and translation back to its original state
+     * @param velocity initial translation velocity in pixels per second, or NaN to keep the
+     *                 velocity of a running translation
+     */
+    void animateRecover(View view, float velocity, long duration) {
+        boolean retarget = prepare(view);
+        prepareScale(view, retarget);
+        prepareTranslation(view, retarget, velocity);
+        mAnimateScale = true;
+        mAnimateTranslation = true;
+        mScaleSpring.setTarget(1.0F);
+        mScaleSpring.setSettleDuration(duration);
+        mTranslationSpring.setTarget(0F);
+        mTranslationSpring.setSettleDuration(duration);
+        start(duration, null);
+    }
+
+    /**
+     * Animates translation of the view from its current value to toTranslation, scale is left
+     * untouched
+     * @param velocity initial velocity in pixels per second, or NaN to keep the velocity of a
+     *                 running translation
+     * @param endAction action to run when the animation ends or gets interrupted, could be null
+     */
+    void animateTranslation(View view, float toTranslation, float velocity, long duration,
+                            Runnable endAction) {
+        boolean retarget = prepare(view);
+        prepareTranslation(view, retarget, velocity);
+        mAnimateScale = false;
+        mAnimateTranslation = true;
+        mTranslationSpring.setTarget(toTranslation);
+        mTranslationSpring.setSettleDuration(duration);
+        start(duration, endAction);
+    }
+
+    void cancel() {
+        if (mRunning) {
+            end();
+        }
+    }
+
+    boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Advances the springs and applies them to the view, ends the animation once they rest
+     */
+    void step(long deltaMillis) {
+        View view = mView;
+        if (view == null) {
+            end();
+            return;
+        }
+        boolean atRest = true;
+        if (mAnimateScale) {
+            mScaleSpring.step(deltaMillis);
+            if (mScaleSpring.isAtRest()) {
+                mScaleSpring.settle();
+            } else {
+                atRest = false;
+            }
+            float scale = mScaleSpring.getValue();
+            view.setScaleX(scale);
+            view.setScaleY(scale);
+        }
+        if (mAnimateTranslation) {
+            mTranslationSpring.step(deltaMillis);
+            if (mTranslationSpring.isAtRest()) {
+                mTranslationSpring.settle();
+            } else {
+                atRest = false;
+            }
+            setTranslation(view, mTranslationSpring.getValue());
+        }
+        if (atRest) {
+            end();
+        }
+    }
+
+    private void jumpToEnd() {
+        if (mView == null) {
+            return;
+        }
+        if (mAnimateScale) {
+            mScaleSpring.settle();
+            mView.setScaleX(mScaleSpring.getValue());
+            mView.setScaleY(mScaleSpring.getValue());
+        }
+        if (mAnimateTranslation) {
+            mTranslationSpring.settle();
+            setTranslation(mView, mTranslationSpring.getValue());
+        }
+    }
+
+    private float getTranslation(View view) {
+        return mTranslateAlongX ? view.getTranslationX() : view.getTranslationY();
+    }
+
+    private void setTranslation(View view, float translation) {
+        if (mTranslateAlongX) {
+            view.setTranslationX(translation);
+        } else {
+            view.setTranslationY(translation);
+        }
+    }
+
+    /**
+     * @return true if the running animation is retargeted, false if a new one starts
+     */
+    private boolean prepare(View view) {
+        if (mRunning && mView != view) {
+            // Another view, its animation jumps to its end so that the end action sees it done
+            jumpToEnd();
+            end();
+        }
+        boolean retarget = mRunning;
+        if (retarget) {
+            // The interrupted animation counts as ended for whoever waits on it
+            runEndAction();
+        }
+        mView = view;
+        return retarget;
+    }
+
+    private void prepareScale(View view, boolean retarget) {
+        if (!retarget || !mAnimateScale) {
+            mScaleSpring.setValue(view.getScaleX());
+            mScaleSpring.setVelocity(0F);
+        }
+    }
+
+    private void prepareTranslation(View view, boolean retarget, float velocity) {
+        if (!retarget || !mAnimateTranslation) {
+            mTranslationSpring.setValue(getTranslation(view));
+            mTranslationSpring.setVelocity(0F);
+        }
+        if (!Float.isNaN(velocity)) {
+            mTranslationSpring.setVelocity(velocity);
+        }
+    }
+
+    private void start(long duration, Runnable endAction) {
+        TraceCompat.beginSection(TRACE_START);
+        try {
+            mEndAction = endAction;
+            if (duration <= 0) {
+                // Nothing to animate, jump to the end state right away
+                if (!mRunning) {
+                    mRunning = true;
+                    mCallback.onEngineStart(this);
+                }
+                mScaleSpring.settle();
+                mTranslationSpring.settle();
+                step(0L);
+                return;
+            }
+            if (!mRunning) {
+                mRunning = true;
+                mCallback.onEngineStart(this);
+            }
+            mDriver.add(this);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private void end() {
+        mDriver.remove(this);
+        mRunning = false;
+        mCallback.onEngineEnd(this);
+        runEndAction();
+    }
+
+    private void runEndAction() {
+        Runnable endAction = mEndAction;
+        mEndAction = null;
+        if (endAction != null) {
+            endAction.run();
+        }
+    }
+
+    interface Callback {
+        void onEngineStart(SwipeAnimationEngine engine);
+
+        void onEngineEnd(SwipeAnimationEngine engine);
+    }
+}
@@ -0,0 +1,122 @@
+package com.carl.recyclerview;
+
+import java.util.Arrays;
+
+/**
+ * Adapter positions of item views swiped out within one batch window, sorted in ascending order.
+ * Positions are all relative to the adapter as it was before any of them is removed. The
+ * positions are also grouped into ranges of consecutive positions, ordered from the end of the
+ * adapter to the start, so that removing the ranges in order with
+ * {@link android.support.v7.widget.RecyclerView.Adapter#notifyItemRangeRemoved(int, int)} keeps
+ * the positions of the remaining ranges valid.
+ *
+ * @author carl
+ */
+public class SwipeBatch {
+
+    private int[] mPositions = new int[8];
+    private float[] mDistances = new float[8];
+    private int mCount;
+    /*
+     * Starts and lengths of ranges, in descending order of start
+     */
+    private int[] mRangeStarts = new int[8];
+    private int[] mRangeItemCounts = new int[8];
+    private int mRangeCount;
+
+    /**
+     * @return number of positions in this batch
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @param index index in range [0, {@link #getCount()})
+     * @return the adapter position at given index
+     */
+    public int getPosition(int index) {
+        return mPositions[index];
+    }
+
+    /**
+     * @param index index in range [0, {@link #getCount()})
+     * @return distance the item view at given index has been dragged along the swiping axis
+     */
+    public float getDistance(int index) {
+        return mDistances[index];
+    }
+
+    /**
+     * @return number of ranges of consecutive positions
+     */
+    public int getRangeCount() {
+        return mRangeCount;
+    }
+
+    /**
+     * @param range index in range [0, {@link #getRangeCount()}), ranges nearer to the end of the
+     *              adapter come first
+     * @return the first adapter position of given range
+     */
+    public int getRangeStart(int range) {
+        return mRangeStarts[range];
+    }
+
+    /**
+     * @param range index in range [0, {@link #getRangeCount()})
+     * @return number of positions in given range
+     */
+    public int getRangeItemCount(int range) {
+        return mRangeItemCounts[range];
+    }
+
+    /**
+     * Adds a position, keeping positions sorted, adding a position twice keeps the latest
+     * distance
+     */
+    void add(int position, float distance) {
+        int index = Arrays.binarySearch(mPositions, 0, mCount, position);
+        if (index >= 0) {
+            mDistances[index] = distance;
+            return;
+        }
+        index = -index - 1;
+        if (mCount == mPositions.length) {
+            mPositions = Arrays.copyOf(mPositions, mCount * 2);
+            mDistances = Arrays.copyOf(mDistances, mCount * 2);
+        }
+        System.arraycopy(mPositions, index, mPositions, index + 1, mCount - index);
+        System.arraycopy(mDistances, index, mDistances, index + 1, mCount - index);
+        mPositions[index] = position;
+        mDistances[index] = distance;
+        mCount++;
+        computeRanges();
+    }
+
+    void clear() {
+        mCount = 0;
+        mRangeCount = 0;
+    }
+
+    private void computeRanges() {
+        mRangeCount = 0;
+        int i = mCount - 1;
+        while (i >= 0) {
+            int end = mPositions[i];
+            int start = end;
+            while (i > 0 && mPositions[i - 1] == start - 1) {
+                start--;
+                i--;
+            }
+            i--;
+            if (mRangeCount == mRangeStarts.length) {
+                mRangeStarts = Arrays.copyOf(mRangeStarts, mRangeCount * 2);
+                mRangeItemCounts = Arrays.copyOf(mRangeItemCounts, mRangeCount * 2);
+            }
+            mRangeStarts[mRangeCount] = start;
+            mRangeItemCounts[mRangeCount] = end - start + 1;
+            mRangeCount++;
+        }
+    }
+}
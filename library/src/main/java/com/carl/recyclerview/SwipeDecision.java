@@ -0,0 +1,30 @@
+package com.carl.recyclerview;
+
+/**
+ * Android-free decision of whether a swipe gesture should be committed when the user's finger
+ * lifts. Speed takes precedence over dragging distance.
+ *
+ * @author carl
+ */
+public abstract class SwipeDecision {
+
+    /**
+     * @param pixelPerSecond release velocity along the swiping axis, in pixels per second
+     * @param density the screen density
+     * @param distance the distance the item view has been dragged along the swiping axis
+     * @param parentExtent height/width of the parent along the swiping axis
+     * @param thresholdSpeedDpPerSecond the speed threshold in dp per second
+     * @param thresholdRatio the ratio threshold between distance and parentExtent
+     * @return true if the swipe should be committed, false if the views should recover
+     */
+    public static boolean shouldCommit(float pixelPerSecond, float density, float distance,
+                                       float parentExtent, float thresholdSpeedDpPerSecond,
+                                       float thresholdRatio) {
+        float dpPerSecond = pixelPerSecond / density;
+        if (Math.abs(dpPerSecond) >= thresholdSpeedDpPerSecond) {
+            return true;
+        }
+        float ratio = distance / parentExtent;
+        return Math.abs(ratio) > thresholdRatio;
+    }
+}
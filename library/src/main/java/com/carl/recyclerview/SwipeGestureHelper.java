@@ -1,62 +1,148 @@
 package com.carl.recyclerview;
 
-import android.animation.Animator;
-import android.animation.AnimatorSet;
-import android.animation.ObjectAnimator;
-import android.animation.ValueAnimator;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.os.TraceCompat;
 import android.support.v4.view.GestureDetectorCompat;
 import android.support.v4.view.MotionEventCompat;
-import android.support.v4.view.VelocityTrackerCompat;
+import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.GestureDetector;
 import android.view.HapticFeedbackConstants;
 import android.view.MotionEvent;
-import android.view.VelocityTracker;
 import android.view.View;
-import android.view.animation.OvershootInterpolator;
+import android.view.ViewConfiguration;
 
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Helper class to setup RecyclerView for the "long press to swipe" gesture
- * TODO: Add vertical support
+ * Helper class to setup RecyclerView for the "long press to swipe" gesture. Item views are swiped
+ * along the cross axis of the layout: vertically in horizontal layouts and horizontally in
+ * vertical ones.
  * @author carl
  */
 public class SwipeGestureHelper implements View.OnTouchListener {
 
     private static final String TAG = "SwipeGestureHelper";
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    private static final String TRACE_TOUCH = "SwipeGestureHelper.onTouch";
+    private static final String TRACE_LONG_PRESS = "SwipeGestureHelper.onLongPress";
     public static final float DEFAULT_SCALE_OFFSET = 0.03F;
     public static final long DEFAULT_ANIMATION_DURATION = 300;
     public static final float DEFAULT_SWIPE_THRESHOLD_RATIO = 0.4F;
     public static final float DEFAULT_SWIPE_THRESHOLD_SPEED_DP_PER_SECOND = 800F;
+    public static final int DEFAULT_UNDO_BUFFER_SIZE = 1;
+    public static final long DEFAULT_UNDO_TIMEOUT_MILLIS = 4000;
+    /**
+     * No swipe gesture is in action and no swipe animation is running
+     */
+    public static final int SWIPE_STATE_IDLE = 0;
+    /**
+     * The user is long pressing or dragging an item view
+     */
+    public static final int SWIPE_STATE_LONG_PRESS = 1;
+    /**
+     * Item views are animating out or recovering after the user's finger lifted
+     */
+    public static final int SWIPE_STATE_ANIMATING = 2;
 
     private RecyclerView mRecyclerView;
+    private ViewOnTouchDelegate mTouchDelegate;
     private boolean mLongPressInAction;
     private final GestureDetectorCompat mGestureDetector;
     private float mTouchStartX;
     private float mTouchStartY;
-    private int mActivePointerIndex;
-    private VelocityTracker mVelocityTracker;
+    private int mActivePointerId;
+    private final VelocityEstimator mVelocityEstimator = new VelocityEstimator();
+    private final DragResampler mDragResampler = new DragResampler(new DragResampler.Callback() {
+        @Override
+        public void onDragUpdate(float x, float y) {
+            applySwipeDrag(x, y);
+        }
+    });
     private SwipeGestureAdapter mSwipeGestureAdapter;
 
     private View mSelectedView;
     private int mSelectedAdapterPos;
+    /*
+     * Steps the springs of all animator holders from one frame callback
+     */
+    private final SpringAnimationDriver mAnimationDriver = new SpringAnimationDriver();
     private AnimatorHolder mSelectedAnimatorHolder;
     private AnimatorHolder mPrevAnimatorHolder;
     private AnimatorHolder mNextAnimatorHolder;
-    private float mDy;
+    /*
+     * Plays the recover animation of items brought back by undo
+     */
+    private AnimatorHolder mUndoAnimatorHolder;
+    /*
+     * Whether item views are swiped horizontally, which is the case in vertical layouts
+     */
+    private boolean mSwipeAlongX;
+    private float mSwipeDistance;
     private float mSwipeThresholdRatio = DEFAULT_SWIPE_THRESHOLD_RATIO;
     private float mSwipeThresholdSpeedDpPerSecond = DEFAULT_SWIPE_THRESHOLD_SPEED_DP_PER_SECOND;
     private OnSwipeListener mOnSwipeListener;
+    private OnBatchSwipeListener mOnBatchSwipeListener;
+    /*
+     * Negative until set, the window then follows the long press timeout and out animation
+     */
+    private long mBatchSwipeWindowMillis = -1;
+    private final SwipeBatch mSwipeBatch = new SwipeBatch();
+    private long mBatchSwipeDeadline;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mBatchSwipeAction = new Runnable() {
+        @Override
+        public void run() {
+            // A swipe in action may still join the batch, it's rescheduled when the swipe ends
+            if (mSwipeState == SWIPE_STATE_IDLE) {
+                dispatchBatchSwipe();
+            }
+        }
+    };
     private float mScaleAnimationOffset = DEFAULT_SCALE_OFFSET;
     private long mScaleAnimationDuration = DEFAULT_ANIMATION_DURATION;
     private long mOutAnimationDuration = DEFAULT_ANIMATION_DURATION;
     private long mRecoverAnimationDuration = DEFAULT_ANIMATION_DURATION;
 
-    private List<Animator> mRunningAnimators = new ArrayList<>();
+    private int mRunningAnimationCount;
+    private int mSwipeState = SWIPE_STATE_IDLE;
+    private final List<OnSwipeStateChangeListener> mOnSwipeStateChangeListeners =
+            new ArrayList<>();
+    private SnappyStats mStats = new SnappyStats();
+    private InputLatencyTracker mInputLatencyTracker;
+    private LayerRenderPolicy mLayerRenderPolicy;
+    private boolean mUndoEnabled;
+    private int mUndoBufferSize = DEFAULT_UNDO_BUFFER_SIZE;
+    private long mUndoTimeoutMillis = DEFAULT_UNDO_TIMEOUT_MILLIS;
+    /*
+     * Swiped out items not reported yet, oldest first
+     */
+    private final List<UndoEntry> mUndoEntries = new ArrayList<>();
+    private OnSwipeUndoListener mOnSwipeUndoListener;
+    /*
+     * Commits are posted from layout and scroll callbacks, the listeners may notify the adapter
+     */
+    private final Runnable mCommitPendingSwipesAction = new Runnable() {
+        @Override
+        public void run() {
+            commitPendingSwipes();
+        }
+    };
+    private final Runnable mUndoTimeoutAction = new Runnable() {
+        @Override
+        public void run() {
+            long now = SystemClock.uptimeMillis();
+            while (!mUndoEntries.isEmpty() && mUndoEntries.get(0).mDeadline <= now) {
+                commitUndoEntry(mUndoEntries.remove(0));
+            }
+            scheduleUndoTimeout();
+        }
+    };
 
     public SwipeGestureHelper(Context context) {
         mGestureDetector = new GestureDetectorCompat(context, new LongPressGestureListener());
@@ -65,6 +151,7 @@ public class SwipeGestureHelper implements View.OnTouchListener {
         mSelectedAnimatorHolder = new AnimatorHolder();
         mPrevAnimatorHolder = new AnimatorHolder();
         mNextAnimatorHolder = new AnimatorHolder();
+        mUndoAnimatorHolder = new AnimatorHolder();
     }
 
     public float getSwipeThresholdRatio() {
@@ -146,10 +233,291 @@ public class SwipeGestureHelper implements View.OnTouchListener {
         mRecoverAnimationDuration = recoverAnimationDuration;
     }
 
+    public SnappyStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Sets the {@link SnappyStats} to report swipes and recover animations to
+     * @param stats the stats to report to
+     */
+    public void setStats(SnappyStats stats) {
+        mStats = stats;
+    }
+
+    /**
+     * Sets the tracker to report long press and drag latencies to
+     * @param tracker the tracker, or null to stop tracking
+     */
+    public void setInputLatencyTracker(InputLatencyTracker tracker) {
+        mInputLatencyTracker = tracker;
+    }
+
+    public LayerRenderPolicy getLayerRenderPolicy() {
+        return mLayerRenderPolicy;
+    }
+
+    /**
+     * Sets the policy used to promote the selected item view and its neighbours to hardware
+     * layers while they are animating, null by default which leaves layers untouched
+     * @param policy the policy to use, or null
+     */
+    public void setLayerRenderPolicy(LayerRenderPolicy policy) {
+        if (mLayerRenderPolicy != null) {
+            mSelectedAnimatorHolder.releaseLayer();
+            mPrevAnimatorHolder.releaseLayer();
+            mNextAnimatorHolder.releaseLayer();
+        }
+        mLayerRenderPolicy = policy;
+    }
+
+    /**
+     * @return one of the SWIPE_STATE_ constants
+     */
+    public int getSwipeState() {
+        return mSwipeState;
+    }
+
+    public void addOnSwipeStateChangeListener(OnSwipeStateChangeListener listener) {
+        mOnSwipeStateChangeListeners.add(listener);
+    }
+
+    public void removeOnSwipeStateChangeListener(OnSwipeStateChangeListener listener) {
+        mOnSwipeStateChangeListeners.remove(listener);
+    }
+
+    private void updateSwipeState() {
+        int state;
+        if (mLongPressInAction) {
+            state = SWIPE_STATE_LONG_PRESS;
+        } else if (mRunningAnimationCount > 0) {
+            state = SWIPE_STATE_ANIMATING;
+        } else {
+            state = SWIPE_STATE_IDLE;
+        }
+        if (state != mSwipeState) {
+            mSwipeState = state;
+            if (state == SWIPE_STATE_IDLE) {
+                scheduleBatchSwipe();
+            }
+            for (int i = mOnSwipeStateChangeListeners.size() - 1; i >= 0; i--) {
+                mOnSwipeStateChangeListeners.get(i).onSwipeStateChanged(this, state);
+            }
+        }
+    }
+
     public void setOnSwipeListener(OnSwipeListener listener) {
         this.mOnSwipeListener = listener;
     }
 
+    /**
+     * Sets a listener that receives swiped out items in batches instead of one by one. While set,
+     * {@link OnSwipeListener} is not called. Swiped out item views stay out of sight until the
+     * batch is delivered, which happens when no item has been swiped out for the batch window.
+     * @param listener the listener to set, or null to go back to {@link OnSwipeListener}
+     */
+    public void setOnBatchSwipeListener(OnBatchSwipeListener listener) {
+        mOnBatchSwipeListener = listener;
+        if (listener == null) {
+            mMainHandler.removeCallbacks(mBatchSwipeAction);
+            mSwipeBatch.clear();
+        }
+    }
+
+    /**
+     * @return the batch window set by {@link #setBatchSwipeWindowMillis(long)}, or by default the
+     * long press timeout plus the out animation duration
+     */
+    public long getBatchSwipeWindowMillis() {
+        if (mBatchSwipeWindowMillis >= 0) {
+            return mBatchSwipeWindowMillis;
+        }
+        return ViewConfiguration.getLongPressTimeout() + mOutAnimationDuration;
+    }
+
+    /**
+     * Sets how long a batch stays open after an item has been swiped out. Every swipe starts with
+     * a long press and ends with the out animation, so the window should span at least both for
+     * consecutive swipes to land in the same batch, which is the default. A batch also stays open
+     * while a swipe is in action.
+     * @param windowMillis the window in milliseconds, or a negative value for the default
+     */
+    public void setBatchSwipeWindowMillis(long windowMillis) {
+        mBatchSwipeWindowMillis = windowMillis;
+    }
+
+    private void dispatchSwipe(int adapterPos, float distance) {
+        if (mOnBatchSwipeListener != null) {
+            addToBatch(adapterPos, distance);
+        } else if (mOnSwipeListener != null) {
+            mOnSwipeListener.onSwipe(mRecyclerView, adapterPos, distance);
+        }
+    }
+
+    public boolean isUndoEnabled() {
+        return mUndoEnabled;
+    }
+
+    /**
+     * Enables the undo window. Swiped out items are then held in place, out of sight, and
+     * reported to the swipe listeners only when they are evicted from the undo buffer: when the
+     * buffer is full, when they time out, or when the list scrolls. Until then
+     * {@link #undoLastSwipe()} brings the same item view back without binding it again.
+     * Disabling commits all held items.
+     * @param undoEnabled true to enable the undo window
+     */
+    public void setUndoEnabled(boolean undoEnabled) {
+        mUndoEnabled = undoEnabled;
+        if (!undoEnabled) {
+            commitPendingSwipes();
+        }
+    }
+
+    /**
+     * Sets the maximum number of swiped out items held for undo, default is 1
+     * @param undoBufferSize number of items, at least 1
+     */
+    public void setUndoBufferSize(int undoBufferSize) {
+        mUndoBufferSize = Math.max(1, undoBufferSize);
+        while (mUndoEntries.size() > mUndoBufferSize) {
+            commitUndoEntry(mUndoEntries.remove(0));
+        }
+    }
+
+    /**
+     * Sets how long a swiped out item is held for undo before it's reported, default is 4000ms
+     * @param undoTimeoutMillis the timeout in milliseconds
+     */
+    public void setUndoTimeoutMillis(long undoTimeoutMillis) {
+        mUndoTimeoutMillis = undoTimeoutMillis;
+    }
+
+    public void setOnSwipeUndoListener(OnSwipeUndoListener listener) {
+        mOnSwipeUndoListener = listener;
+    }
+
+    /**
+     * @return number of swiped out items held for undo
+     */
+    public int getPendingSwipeCount() {
+        return mUndoEntries.size();
+    }
+
+    /**
+     * Brings back the item swiped out most recently, if it's still held for undo
+     * @return true if an item has been brought back
+     */
+    public boolean undoLastSwipe() {
+        if (mUndoEntries.isEmpty()) {
+            return false;
+        }
+        UndoEntry entry = mUndoEntries.remove(mUndoEntries.size() - 1);
+        scheduleUndoTimeout();
+        RecyclerView.ViewHolder holder = entry.mHolder;
+        holder.setIsRecyclable(true);
+        mUndoAnimatorHolder.setView(holder.itemView);
+        mUndoAnimatorHolder.setTranslationAlongX(entry.mAlongX);
+        mUndoAnimatorHolder.playRecoverAnimation(mRecoverAnimationDuration);
+        if (mOnSwipeUndoListener != null) {
+            mOnSwipeUndoListener.onSwipeUndone(mRecyclerView, holder.getAdapterPosition());
+        }
+        return true;
+    }
+
+    /**
+     * Reports all swiped out items held for undo to the swipe listeners right away
+     */
+    public void commitPendingSwipes() {
+        while (!mUndoEntries.isEmpty()) {
+            commitUndoEntry(mUndoEntries.remove(0));
+        }
+        scheduleUndoTimeout();
+    }
+
+    /*
+     * Holds the holder of a swiped out view in place instead of reporting it, the holder is
+     * made non-recyclable so that it isn't rebound while it's held
+     */
+    private boolean holdForUndo(View view, float distance, boolean alongX) {
+        if (view == null || mRecyclerView == null) {
+            return false;
+        }
+        RecyclerView.ViewHolder holder = mRecyclerView.getChildViewHolder(view);
+        if (holder == null || holder.getAdapterPosition() == RecyclerView.NO_POSITION) {
+            return false;
+        }
+        holder.setIsRecyclable(false);
+        mUndoEntries.add(new UndoEntry(holder, distance, alongX,
+                SystemClock.uptimeMillis() + mUndoTimeoutMillis));
+        while (mUndoEntries.size() > mUndoBufferSize) {
+            commitUndoEntry(mUndoEntries.remove(0));
+        }
+        scheduleUndoTimeout();
+        if (mOnSwipeUndoListener != null) {
+            mOnSwipeUndoListener.onSwipePending(mRecyclerView, holder.getAdapterPosition());
+        }
+        return true;
+    }
+
+    private void commitUndoEntry(UndoEntry entry) {
+        RecyclerView.ViewHolder holder = entry.mHolder;
+        holder.setIsRecyclable(true);
+        // Earlier commits may have shifted the item, its current position is reported
+        int adapterPos = holder.getAdapterPosition();
+        if (adapterPos != RecyclerView.NO_POSITION) {
+            dispatchSwipe(adapterPos, entry.mDistance);
+        }
+    }
+
+    private void scheduleUndoTimeout() {
+        if (mRecyclerView == null) {
+            return;
+        }
+        mRecyclerView.removeCallbacks(mUndoTimeoutAction);
+        if (!mUndoEntries.isEmpty()) {
+            long delay = mUndoEntries.get(0).mDeadline - SystemClock.uptimeMillis();
+            mRecyclerView.postDelayed(mUndoTimeoutAction, Math.max(0, delay));
+        }
+    }
+
+    private void commitHeldView(View view) {
+        for (int i = 0; i < mUndoEntries.size(); i++) {
+            if (mUndoEntries.get(i).mHolder.itemView == view) {
+                commitUndoEntry(mUndoEntries.remove(i));
+                scheduleUndoTimeout();
+                return;
+            }
+        }
+    }
+
+    private void addToBatch(int adapterPos, float distance) {
+        mSwipeBatch.add(adapterPos, distance);
+        // Every dismissal keeps the window open a little longer
+        mBatchSwipeDeadline = SystemClock.uptimeMillis() + getBatchSwipeWindowMillis();
+        scheduleBatchSwipe();
+    }
+
+    private void scheduleBatchSwipe() {
+        mMainHandler.removeCallbacks(mBatchSwipeAction);
+        if (mSwipeBatch.getCount() > 0) {
+            long delay = mBatchSwipeDeadline - SystemClock.uptimeMillis();
+            mMainHandler.postDelayed(mBatchSwipeAction, Math.max(0, delay));
+        }
+    }
+
+    private void dispatchBatchSwipe() {
+        if (mSwipeBatch.getCount() == 0) {
+            return;
+        }
+        if (DEBUG) {
+            Log.d(TAG, "dispatchBatchSwipe: " + mSwipeBatch.getCount() + " items");
+        }
+        if (mOnBatchSwipeListener != null) {
+            mOnBatchSwipeListener.onBatchSwipe(mRecyclerView, mSwipeBatch);
+        }
+        mSwipeBatch.clear();
+    }
+
     /**
      * Sets an {@link SwipeGestureAdapter} to tell SwipeGestureHelper if item views at given
      * adapter position should be swiped at all, if it returns false, not haptic feedback nor
@@ -166,118 +534,149 @@ public class SwipeGestureHelper implements View.OnTouchListener {
         } else {
             rv.setOnTouchListener(this);
         }
+        mTouchDelegate = delegate;
         rv.addOnChildAttachStateChangeListener(new RecyclerView.OnChildAttachStateChangeListener() {
             @Override
             public void onChildViewAttachedToWindow(View view) {
             }
 
             @Override
-            public void onChildViewDetachedFromWindow(View view) {
+            public void onChildViewDetachedFromWindow(final View view) {
+                if (!mUndoEntries.isEmpty()) {
+                    // Children are detached while RecyclerView computes a layout
+                    mRecyclerView.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            commitHeldView(view);
+                        }
+                    });
+                }
                 resetViewProperties(view);
                 view.clearAnimation();
             }
         });
+        rv.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                // Held views would be rebound once scrolled out, commit them beforehand
+                if (newState != RecyclerView.SCROLL_STATE_IDLE && !mUndoEntries.isEmpty()) {
+                    recyclerView.removeCallbacks(mCommitPendingSwipesAction);
+                    recyclerView.post(mCommitPendingSwipesAction);
+                }
+            }
+        });
         this.mRecyclerView = rv;
     }
 
-    private void recoverViews() {
-        recoverAnimatorHolder(mSelectedAnimatorHolder);
+    /**
+     * @param velocity release velocity of the selected view, in pixels per second
+     */
+    private void recoverViews(float velocity) {
+        if (mSelectedAnimatorHolder.getView() != null) {
+            mStats.onRecoverAnimation();
+            mSelectedAnimatorHolder.playRecoverAnimation(velocity, mRecoverAnimationDuration);
+        }
         recoverAnimatorHolder(mPrevAnimatorHolder);
         recoverAnimatorHolder(mNextAnimatorHolder);
     }
 
     private void recoverAnimatorHolder(AnimatorHolder holder) {
-        View v = holder.getView();
-        if (v != null) {
-            float currentScale = v.getScaleX();
-
-            float translationY = v.getTranslationY();
-            List<Animator> recoverAnimatorList = makeScaleAnimatorList(v, currentScale, 1.0f,
-                    mRecoverAnimationDuration);
-            if (translationY != 0) {
-                ObjectAnimator translationYAnimator =
-                        ObjectAnimator.ofFloat(v, View.TRANSLATION_Y, translationY, 0);
-                translationYAnimator.setDuration(mRecoverAnimationDuration);
-                recoverAnimatorList.add(translationYAnimator);
-            }
-
-            AnimatorSet recoverAnimatorSet = new AnimatorSet();
-            recoverAnimatorSet.playTogether(recoverAnimatorList);
-            holder.playAnimator(recoverAnimatorSet);
+        if (holder.getView() != null) {
+            mStats.onRecoverAnimation();
+            holder.playRecoverAnimation(mRecoverAnimationDuration);
         }
     }
 
     @Override
     public boolean onTouch(View v, MotionEvent e) {
+        TraceCompat.beginSection(TRACE_TOUCH);
+        try {
+            return handleTouch(v, e);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private boolean handleTouch(View v, MotionEvent e) {
         mGestureDetector.onTouchEvent(e);
         if (mLongPressInAction) {
             switch (e.getAction()) {
                 case MotionEvent.ACTION_CANCEL:
                 case MotionEvent.ACTION_UP: {
                     mLongPressInAction = false;
-
-                    mVelocityTracker.computeCurrentVelocity(1000);
-                    float pixelPerSecondY = VelocityTrackerCompat.getYVelocity(mVelocityTracker,
-                            mActivePointerIndex);
+                    // Apply the latest position so that the decision sees where the finger is
+                    mDragResampler.flush();
+                    mDragResampler.stop();
+
+                    // The up event repeats the last position, only move events are sampled
+                    float pixelPerSecond = mSwipeAlongX
+                            ? mVelocityEstimator.getXVelocity(mActivePointerId)
+                            : mVelocityEstimator.getYVelocity(mActivePointerId);
                     float density = v.getContext().getResources().getDisplayMetrics().density;
-                    float dpPerSecondY = pixelPerSecondY / density;
-
-                    float ratioY = mDy / (float) mRecyclerView.getHeight();
+                    float parentExtent = (float) (mSwipeAlongX ? mRecyclerView.getWidth()
+                            : mRecyclerView.getHeight());
 
-                    Log.d(TAG, String.format("Up event: dpPerSecondY: %f, ratioY: %f",
-                            dpPerSecondY, ratioY));
-                    if (Math.abs(dpPerSecondY) >= mSwipeThresholdSpeedDpPerSecond) {
-                        onSwipe(mRecyclerView, mSelectedAdapterPos, mDy);
-                    } else if (Math.abs(ratioY) > mSwipeThresholdRatio) {
-                        onSwipe(mRecyclerView, mSelectedAdapterPos, mDy);
+                    if (DEBUG) {
+                        Log.d(TAG, String.format("Up event: dpPerSecond: %f, ratio: %f",
+                                pixelPerSecond / density, mSwipeDistance / parentExtent));
+                    }
+                    if (SwipeDecision.shouldCommit(pixelPerSecond, density, mSwipeDistance,
+                            parentExtent, mSwipeThresholdSpeedDpPerSecond, mSwipeThresholdRatio)) {
+                        onSwipe(mRecyclerView, mSelectedAdapterPos, mSwipeDistance,
+                                pixelPerSecond);
                     } else {
-                        recoverViews();
+                        mStats.onSwipeRecovered();
+                        recoverViews(pixelPerSecond);
                     }
-                    recycleVelocityTracker();
-                    mDy = 0F;
+                    mVelocityEstimator.clear();
+                    mSwipeDistance = 0F;
+                    updateSwipeState();
                     // Intercept this event event if it's the last event of long press action
                     return true;
                 }
                 case MotionEvent.ACTION_MOVE: {
-                    float x = e.getX();
-                    float y = e.getY();
-                    mDy = y - mTouchStartY;
-                    mSelectedView.setTranslationY(mDy);
-                    mVelocityTracker.addMovement(e);
+                    // The view is moved once per frame by the resampler
+                    if (mInputLatencyTracker != null) {
+                        mInputLatencyTracker.onInput(InputLatencyTracker.GESTURE_DRAG);
+                    }
+                    mDragResampler.addMovement(e);
+                    addMovement(e);
                     break;
                 }
             }
         }
-//        Log.d(TAG, "onTouch: " + e);
-        return mLongPressInAction || mRunningAnimators.size() > 0;
+        return mLongPressInAction || mRunningAnimationCount > 0;
     }
 
-    private void onSwipe(final RecyclerView recyclerView, final int adapterPos, final float dy) {
-        Log.d(TAG, String.format("onSwipe: %s, %d, %f", recyclerView, adapterPos, dy));
-        playOutAnimation(mSelectedAnimatorHolder, recyclerView, (int) dy,
-                new Animator.AnimatorListener() {
-                    @Override
-                    public void onAnimationStart(Animator animation) {
-                    }
-
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        recoverAnimatorHolder(mPrevAnimatorHolder);
-                        recoverAnimatorHolder(mNextAnimatorHolder);
-
-                        if (mOnSwipeListener != null) {
-                            mOnSwipeListener.onSwipe(recyclerView, adapterPos, dy);
-                        }
-                    }
+    private void onSwipe(RecyclerView recyclerView, int adapterPos, float distance,
+                         float velocity) {
+        if (DEBUG) {
+            Log.d(TAG, String.format("onSwipe: %s, %d, %f", recyclerView, adapterPos, distance));
+        }
+        mStats.onSwipeCommitted();
+        // The holders may point at other views by the time the animation ends
+        playOutAnimation(mSelectedAnimatorHolder, recyclerView, (int) distance, velocity,
+                newOutAnimationEndAction(mSelectedAnimatorHolder.getView(), adapterPos,
+                        distance, mSwipeAlongX));
+    }
 
-                    @Override
-                    public void onAnimationCancel(Animator animation) {
-                    }
+    private Runnable newOutAnimationEndAction(final View view, final int adapterPos,
+                                              final float distance, final boolean alongX) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (!mLongPressInAction) {
+                    // Otherwise the holders already animate the neighbours of a new long press
+                    recoverAnimatorHolder(mPrevAnimatorHolder);
+                    recoverAnimatorHolder(mNextAnimatorHolder);
+                }
 
-                    @Override
-                    public void onAnimationRepeat(Animator animation) {
-                    }
-                });
+                if (mUndoEnabled && holdForUndo(view, distance, alongX)) {
+                    return;
+                }
+                dispatchSwipe(adapterPos, distance);
+            }
+        };
     }
 
     private void resetAllChildrenProperties(RecyclerView recyclerView) {
@@ -287,6 +686,14 @@ public class SwipeGestureHelper implements View.OnTouchListener {
         }
     }
 
+    private static void resetStaleNeighbour(View view, View selectedView, View prevView,
+                                            View nextView) {
+        if (view != null && view != selectedView && view != prevView && view != nextView) {
+            view.setScaleX(1.F);
+            view.setScaleY(1.F);
+        }
+    }
+
     private void resetViewProperties(View child) {
         child.setTranslationX(0);
         child.setTranslationY(0);
@@ -295,61 +702,150 @@ public class SwipeGestureHelper implements View.OnTouchListener {
     }
 
     private void playOutAnimation(AnimatorHolder holder, View parent, int direction,
-                                  Animator.AnimatorListener listener) {
+                                  float velocity, Runnable endAction) {
         View selectedView = holder.getView();
-        float fromY = selectedView.getTranslationY();
-        float toY;
-        if (direction > 0) {
-            toY = fromY + (parent.getBottom() - selectedView.getTop());
+        float from;
+        float to;
+        if (mSwipeAlongX) {
+            from = selectedView.getTranslationX();
+            to = direction > 0 ? from + (parent.getRight() - selectedView.getLeft())
+                    : from - selectedView.getRight();
         } else {
-            toY = fromY - selectedView.getBottom();
+            from = selectedView.getTranslationY();
+            to = direction > 0 ? from + (parent.getBottom() - selectedView.getTop())
+                    : from - selectedView.getBottom();
         }
-        ObjectAnimator outAnimation = ObjectAnimator.ofFloat(selectedView, View.TRANSLATION_Y,
-                fromY, toY);
-        if (listener != null) {
-            outAnimation.addListener(listener);
-        }
-        outAnimation.setDuration(mOutAnimationDuration);
-        holder.playAnimator(outAnimation);
+        // The view leaves at the speed the finger released it
+        holder.playTranslationAnimation(to, velocity, mOutAnimationDuration, endAction);
     }
 
-    private AnimatorSet makeScaleAnimatorSet(View view, float fromScale, float toScale, long duration) {
-        AnimatorSet animatorSet = new AnimatorSet();
-        List<Animator> animators = makeScaleAnimatorList(view, fromScale, toScale, duration);
-        animatorSet.playTogether(animators);
-        return animatorSet;
+    /*
+     * Neighbours wrap around when the layout loops
+     */
+    private static int adjacentPosition(RecyclerView.LayoutManager lm, int position, int delta) {
+        if (lm instanceof SnappyLinearLayoutManager) {
+            return ((SnappyLinearLayoutManager) lm).offsetPosition(position, delta);
+        }
+        return position + delta;
     }
 
-    private List<Animator> makeScaleAnimatorList(View view, float fromScale, float toScale, long duration) {
-        List<Animator> result = new ArrayList<>();
-        ValueAnimator scaleXAnimation = ObjectAnimator.ofFloat(view, View.SCALE_X,
-                fromScale, toScale);
-        scaleXAnimation.setInterpolator(new OvershootInterpolator());
-        scaleXAnimation.setDuration(duration);
-        result.add(scaleXAnimation);
+    private void setSwipeAlongX(boolean alongX) {
+        mSwipeAlongX = alongX;
+        mSelectedAnimatorHolder.setTranslationAlongX(alongX);
+        mPrevAnimatorHolder.setTranslationAlongX(alongX);
+        mNextAnimatorHolder.setTranslationAlongX(alongX);
+    }
 
-        ObjectAnimator scaleYAnimation = ObjectAnimator.ofFloat(view, View.SCALE_Y,
-                fromScale, toScale);
-        scaleYAnimation.setInterpolator(new OvershootInterpolator());
-        scaleYAnimation.setDuration(duration);
-        result.add(scaleYAnimation);
-        return result;
+    private void applySwipeDrag(float x, float y) {
+        if (mSelectedView == null) {
+            return;
+        }
+        if (mSwipeAlongX) {
+            mSwipeDistance = x - mTouchStartX;
+            mSelectedView.setTranslationX(mSwipeDistance);
+        } else {
+            mSwipeDistance = y - mTouchStartY;
+            mSelectedView.setTranslationY(mSwipeDistance);
+        }
+        if (mInputLatencyTracker != null) {
+            mInputLatencyTracker.onApplied(InputLatencyTracker.GESTURE_DRAG);
+        }
     }
 
-    private void recycleVelocityTracker() {
-        if (mVelocityTracker != null) {
-            mVelocityTracker.recycle();
-            mVelocityTracker = null;
+    /*
+     * Feeds all samples of an event, including its historical ones, to the velocity estimator
+     */
+    private void addMovement(MotionEvent e) {
+        int pointerCount = e.getPointerCount();
+        int historySize = e.getHistorySize();
+        for (int h = 0; h < historySize; h++) {
+            long time = e.getHistoricalEventTime(h);
+            for (int p = 0; p < pointerCount; p++) {
+                mVelocityEstimator.addSample(e.getPointerId(p), time, e.getHistoricalX(p, h),
+                        e.getHistoricalY(p, h));
+            }
+        }
+        long time = e.getEventTime();
+        for (int p = 0; p < pointerCount; p++) {
+            mVelocityEstimator.addSample(e.getPointerId(p), time, e.getX(p), e.getY(p));
         }
     }
 
     public interface OnSwipeListener {
+        /**
+         * Called when an item view has been swiped out
+         * @param rv the RecyclerView
+         * @param adapterPosition adapter position of the item
+         * @param dy distance the item view has been dragged along the swiping axis, which is Y
+         *           in horizontal layouts and X in vertical ones
+         */
         void onSwipe(RecyclerView rv, int adapterPosition, float dy);
     }
 
-    protected class AnimatorHolder implements Animator.AnimatorListener {
-        private Animator mAnimator;
+    public interface OnSwipeUndoListener {
+        /**
+         * Called when a swiped out item is held for undo, for example to show an undo button
+         * @param rv the RecyclerView
+         * @param adapterPosition adapter position of the item
+         */
+        void onSwipePending(RecyclerView rv, int adapterPosition);
+
+        /**
+         * Called when a held item has been brought back by {@link #undoLastSwipe()}
+         * @param rv the RecyclerView
+         * @param adapterPosition adapter position of the item
+         */
+        void onSwipeUndone(RecyclerView rv, int adapterPosition);
+    }
+
+    private static class UndoEntry {
+        final RecyclerView.ViewHolder mHolder;
+        final float mDistance;
+        final boolean mAlongX;
+        final long mDeadline;
+
+        UndoEntry(RecyclerView.ViewHolder holder, float distance, boolean alongX, long deadline) {
+            mHolder = holder;
+            mDistance = distance;
+            mAlongX = alongX;
+            mDeadline = deadline;
+        }
+    }
+
+    public interface OnBatchSwipeListener {
+        /**
+         * Called once for all item views swiped out within a batch window. Removing the items
+         * range by range with
+         * {@link RecyclerView.Adapter#notifyItemRangeRemoved(int, int)} costs a single layout
+         * and animation pass for the whole batch.
+         * @param rv the RecyclerView
+         * @param batch the swiped out items, only valid during this call
+         */
+        void onBatchSwipe(RecyclerView rv, SwipeBatch batch);
+    }
+
+    public interface OnSwipeStateChangeListener {
+        /**
+         * Called when the state of swipe gesture changes
+         * @param helper the helper whose state changed
+         * @param newState one of the SWIPE_STATE_ constants
+         */
+        void onSwipeStateChanged(SwipeGestureHelper helper, int newState);
+    }
+
+    /**
+     * Holds the view being animated together with the {@link SwipeAnimationEngine} that animates
+     * it. The engine is reused for every animation played on this holder, starting a new
+     * animation on the same view retargets the running one and keeps its velocity.
+     */
+    protected class AnimatorHolder implements SwipeAnimationEngine.Callback {
+        private final SwipeAnimationEngine mEngine =
+                new SwipeAnimationEngine(mAnimationDriver, this);
         private View mView;
+        /*
+         * The view promoted to a hardware layer for the running animation, if any
+         */
+        private View mLayerView;
 
         public View getView() {
             return mView;
@@ -359,32 +855,65 @@ public class SwipeGestureHelper implements View.OnTouchListener {
             this.mView = view;
         }
 
-        public void playAnimator(Animator animator) {
-            animator.addListener(this);
-            if (mAnimator != null && mAnimator.isRunning()) {
-                mAnimator.cancel();
-            }
-            animator.start();
-            mAnimator = animator;
+        /**
+         * Sets whether translation animations of this holder run along X instead of Y
+         */
+        public void setTranslationAlongX(boolean alongX) {
+            mEngine.setTranslationAlongX(alongX);
         }
 
-        @Override
-        public void onAnimationStart(Animator animation) {
-            mRunningAnimators.add(animation);
+        public void playScaleAnimation(float fromScale, float toScale, long duration) {
+            mEngine.animateScale(mView, fromScale, toScale, duration);
         }
 
-        @Override
-        public void onAnimationEnd(Animator animation) {
-            mRunningAnimators.remove(animation);
+        public void playRecoverAnimation(long duration) {
+            mEngine.animateRecover(mView, Float.NaN, duration);
+        }
+
+        /**
+         * @param velocity initial translation velocity in pixels per second
+         */
+        public void playRecoverAnimation(float velocity, long duration) {
+            mEngine.animateRecover(mView, velocity, duration);
+        }
+
+        public void playTranslationAnimation(float toTranslation, long duration,
+                                             Runnable endAction) {
+            mEngine.animateTranslation(mView, toTranslation, Float.NaN, duration, endAction);
+        }
+
+        /**
+         * @param velocity initial velocity in pixels per second
+         */
+        public void playTranslationAnimation(float toTranslation, float velocity, long duration,
+                                             Runnable endAction) {
+            mEngine.animateTranslation(mView, toTranslation, velocity, duration, endAction);
         }
 
         @Override
-        public void onAnimationCancel(Animator animation) {
-            mRunningAnimators.remove(animation);
+        public void onEngineStart(SwipeAnimationEngine engine) {
+            if (mLayerRenderPolicy != null && mLayerView == null) {
+                mLayerView = mView;
+                mLayerRenderPolicy.promote(mLayerView);
+            }
+            mRunningAnimationCount++;
+            updateSwipeState();
         }
 
         @Override
-        public void onAnimationRepeat(Animator animation) {
+        public void onEngineEnd(SwipeAnimationEngine engine) {
+            releaseLayer();
+            mRunningAnimationCount--;
+            updateSwipeState();
+        }
+
+        void releaseLayer() {
+            if (mLayerView != null) {
+                if (mLayerRenderPolicy != null) {
+                    mLayerRenderPolicy.release(mLayerView);
+                }
+                mLayerView = null;
+            }
         }
     }
 
@@ -392,8 +921,17 @@ public class SwipeGestureHelper implements View.OnTouchListener {
         @Override
         public void onLongPress(MotionEvent e) {
             super.onLongPress(e);
+            TraceCompat.beginSection(TRACE_LONG_PRESS);
+            try {
+                startLongPress(e);
+            } finally {
+                TraceCompat.endSection();
+            }
+        }
+
+        private void startLongPress(MotionEvent e) {
             int pointerIndex = MotionEventCompat.getActionIndex(e);
-            mActivePointerIndex = MotionEventCompat.getPointerId(e, pointerIndex);
+            mActivePointerId = MotionEventCompat.getPointerId(e, pointerIndex);
             if (mRecyclerView != null) {
                 RecyclerView rv = mRecyclerView;
                 View v = rv.findChildViewUnder(e.getX(), e.getY());
@@ -405,41 +943,67 @@ public class SwipeGestureHelper implements View.OnTouchListener {
                 }
                 if (v != null) {
                     mLongPressInAction = true;
-                    mTouchStartX = e.getX();
-                    mTouchStartY = e.getY();
+                    if (mTouchDelegate != null) {
+                        // Other gesture helpers only get a cancel for the rest of the stream
+                        mTouchDelegate.claim(SwipeGestureHelper.this);
+                    }
+                    updateSwipeState();
+                    mTouchStartX = MotionEventCompat.getX(e, pointerIndex);
+                    mTouchStartY = MotionEventCompat.getY(e, pointerIndex);
+                    RecyclerView.LayoutManager lm = rv.getLayoutManager();
+                    setSwipeAlongX(lm instanceof LinearLayoutManager
+                            && ((LinearLayoutManager) lm).getOrientation()
+                            == LinearLayoutManager.VERTICAL);
 
+                    View oldPrevView = mPrevAnimatorHolder.getView();
+                    View oldNextView = mNextAnimatorHolder.getView();
                     mSelectedView = v;
                     mSelectedAnimatorHolder.setView(mSelectedView);
                     if (mScaleAnimationDuration > 0) {
-                        mSelectedAnimatorHolder.playAnimator(makeScaleAnimatorSet(mSelectedView,
-                                1.0F, 1.0F + mScaleAnimationOffset, mScaleAnimationDuration));
+                        mSelectedAnimatorHolder.playScaleAnimation(1.0F,
+                                1.0F + mScaleAnimationOffset, mScaleAnimationDuration);
                     }
                     mSelectedAdapterPos = adapterPos;
-                    Log.d(TAG, "adapterPos: " + adapterPos);
+                    if (DEBUG) {
+                        Log.d(TAG, "adapterPos: " + adapterPos);
+                    }
 
-                    RecyclerView.LayoutManager lm = rv.getLayoutManager();
-                    View prevView = lm.findViewByPosition(adapterPos - 1);
+                    View prevView = lm.findViewByPosition(adjacentPosition(lm, adapterPos, -1));
                     if (prevView != null) {
                         mPrevAnimatorHolder.setView(prevView);
                         if (mScaleAnimationDuration > 0) {
-                            mPrevAnimatorHolder.playAnimator(makeScaleAnimatorSet(prevView, 1.0f,
-                                    1.0F - mScaleAnimationOffset, mScaleAnimationDuration));
+                            mPrevAnimatorHolder.playScaleAnimation(1.0f,
+                                    1.0F - mScaleAnimationOffset, mScaleAnimationDuration);
                         }
                     }
 
-                    View nextView = lm.findViewByPosition(adapterPos + 1);
+                    View nextView = lm.findViewByPosition(adjacentPosition(lm, adapterPos, 1));
                     if (nextView != null) {
                         mNextAnimatorHolder.setView(nextView);
                         if (mScaleAnimationDuration > 0) {
-                            mNextAnimatorHolder.playAnimator(makeScaleAnimatorSet(nextView, 1.0f,
-                                    1.0F - mScaleAnimationOffset, mScaleAnimationDuration));
+                            mNextAnimatorHolder.playScaleAnimation(1.0f,
+                                    1.0F - mScaleAnimationOffset, mScaleAnimationDuration);
                         }
                     }
 
-                    Log.d(TAG, String.format("onLongPress: %s, %s, %s", prevView, mSelectedView, nextView));
+                    // Neighbours of a swipe still animating out are no neighbours anymore
+                    resetStaleNeighbour(oldPrevView, v, prevView, nextView);
+                    resetStaleNeighbour(oldNextView, v, prevView, nextView);
 
-                    recycleVelocityTracker();
-                    mVelocityTracker = VelocityTracker.obtain();
+                    if (DEBUG) {
+                        Log.d(TAG, String.format("onLongPress: %s, %s, %s", prevView, mSelectedView, nextView));
+                    }
+
+                    mVelocityEstimator.clear();
+                    addMovement(e);
+                    mDragResampler.start(mActivePointerId);
+                    if (mInputLatencyTracker != null) {
+                        // The detector fires the long press after both timeouts
+                        mInputLatencyTracker.onInput(InputLatencyTracker.GESTURE_LONG_PRESS,
+                                e.getDownTime() + ViewConfiguration.getTapTimeout()
+                                        + ViewConfiguration.getLongPressTimeout());
+                        mInputLatencyTracker.onApplied(InputLatencyTracker.GESTURE_LONG_PRESS);
+                    }
                 }
                 mRecyclerView.performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
             }
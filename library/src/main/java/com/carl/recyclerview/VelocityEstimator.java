@@ -0,0 +1,144 @@
+package com.carl.recyclerview;
+
+/**
+ * Estimates pointer velocities from recent touch samples, as a replacement of VelocityTracker
+ * that allocates nothing and holds no native resources. Samples are kept per pointer id in fixed
+ * ring buffers, and the velocity is the slope of a least squares line fitted to the samples of
+ * the last {@link #HORIZON_MILLIS} milliseconds. A pointer that hasn't moved for
+ * {@link #ASSUME_STOPPED_MILLIS} milliseconds is considered at rest.
+ *
+ * @author carl
+ */
+public class VelocityEstimator {
+
+    /**
+     * Samples older than this, relative to the latest sample, are ignored
+     */
+    public static final long HORIZON_MILLIS = 100;
+    /**
+     * A gap this long between two samples means the pointer has stopped in between
+     */
+    public static final long ASSUME_STOPPED_MILLIS = 40;
+    /**
+     * Pointer ids are in range [0, MAX_POINTER_ID], as for MotionEvent
+     */
+    public static final int MAX_POINTER_ID = 31;
+    private static final int HISTORY_SIZE = 20;
+
+    /*
+     * Ring buffers of all pointers, pointer id * HISTORY_SIZE is the offset of a pointer's ring
+     */
+    private final long[] mTimes = new long[(MAX_POINTER_ID + 1) * HISTORY_SIZE];
+    private final float[] mXs = new float[(MAX_POINTER_ID + 1) * HISTORY_SIZE];
+    private final float[] mYs = new float[(MAX_POINTER_ID + 1) * HISTORY_SIZE];
+    /*
+     * Index of the latest sample and number of samples of each pointer
+     */
+    private final int[] mHeads = new int[MAX_POINTER_ID + 1];
+    private final int[] mSizes = new int[MAX_POINTER_ID + 1];
+
+    /**
+     * Adds a sample of a pointer, samples of a pointer must be added in chronological order
+     * @param pointerId the pointer id
+     * @param timeMillis time of the sample, in milliseconds
+     * @param x x coordinate of the pointer
+     * @param y y coordinate of the pointer
+     */
+    public void addSample(int pointerId, long timeMillis, float x, float y) {
+        if (pointerId < 0 || pointerId > MAX_POINTER_ID) {
+            return;
+        }
+        int size = mSizes[pointerId];
+        int head = mHeads[pointerId];
+        if (size > 0 && timeMillis < mTimes[pointerId * HISTORY_SIZE + head]) {
+            // Out of order, the stream has probably restarted
+            size = 0;
+        }
+        head = size == 0 ? 0 : (head + 1) % HISTORY_SIZE;
+        int offset = pointerId * HISTORY_SIZE + head;
+        mTimes[offset] = timeMillis;
+        mXs[offset] = x;
+        mYs[offset] = y;
+        mHeads[pointerId] = head;
+        mSizes[pointerId] = Math.min(size + 1, HISTORY_SIZE);
+    }
+
+    /**
+     * Forgets all samples of a pointer
+     */
+    public void clear(int pointerId) {
+        if (pointerId >= 0 && pointerId <= MAX_POINTER_ID) {
+            mSizes[pointerId] = 0;
+        }
+    }
+
+    /**
+     * Forgets all samples of all pointers
+     */
+    public void clear() {
+        for (int i = 0; i <= MAX_POINTER_ID; i++) {
+            mSizes[i] = 0;
+        }
+    }
+
+    /**
+     * @return velocity of given pointer along X in pixels per second, 0 if it's unknown
+     */
+    public float getXVelocity(int pointerId) {
+        return computeVelocity(pointerId, mXs);
+    }
+
+    /**
+     * @return velocity of given pointer along Y in pixels per second, 0 if it's unknown
+     */
+    public float getYVelocity(int pointerId) {
+        return computeVelocity(pointerId, mYs);
+    }
+
+    private float computeVelocity(int pointerId, float[] positions) {
+        if (pointerId < 0 || pointerId > MAX_POINTER_ID) {
+            return 0F;
+        }
+        int size = mSizes[pointerId];
+        if (size < 2) {
+            return 0F;
+        }
+        int base = pointerId * HISTORY_SIZE;
+        int index = mHeads[pointerId];
+        long latestTime = mTimes[base + index];
+        float latestPosition = positions[base + index];
+        // Sums relative to the latest sample, which keeps them small
+        double sumT = 0;
+        double sumP = 0;
+        double sumTT = 0;
+        double sumTP = 0;
+        int count = 0;
+        long previousTime = latestTime;
+        for (int i = 0; i < size; i++) {
+            long time = mTimes[base + index];
+            if (latestTime - time > HORIZON_MILLIS
+                    || previousTime - time > ASSUME_STOPPED_MILLIS) {
+                break;
+            }
+            double t = time - latestTime;
+            double p = positions[base + index] - latestPosition;
+            sumT += t;
+            sumP += p;
+            sumTT += t * t;
+            sumTP += t * p;
+            count++;
+            previousTime = time;
+            index = index == 0 ? HISTORY_SIZE - 1 : index - 1;
+        }
+        if (count < 2) {
+            return 0F;
+        }
+        double denominator = count * sumTT - sumT * sumT;
+        if (denominator <= 0) {
+            return 0F;
+        }
+        // Slope in pixels per millisecond
+        double slope = (count * sumTP - sumT * sumP) / denominator;
+        return (float) (slope * 1000D);
+    }
+}
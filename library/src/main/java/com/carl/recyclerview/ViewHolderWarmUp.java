@@ -0,0 +1,201 @@
+package com.carl.recyclerview;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.util.SparseIntArray;
+import android.view.LayoutInflater;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates view holders ahead of time and puts them into a {@link RecyclerView.RecycledViewPool},
+ * so that layouts and flings bind recycled holders instead of inflating new ones. Holders created
+ * before the first layout serve it, the later ones the first flings; to have them ready for the
+ * first layout, start as early as possible with {@link #start(Context, RecyclerView.Adapter,
+ * RecyclerView.RecycledViewPool)} and set the pool to the RecyclerView once it exists.
+ * <p>
+ * Holders are created on a background thread, with a detached parent whose context hands out a
+ * private clone of the {@link LayoutInflater}, as AsyncLayoutInflater does, so that inflating
+ * never shares the inflater of the main thread. If the adapter fails to create a holder off the
+ * main thread, for example because one of its views creates a {@link Handler}, the remaining
+ * holders are created on the main thread, one per message so that no frame is blocked for long.
+ *
+ * @author carl
+ */
+public class ViewHolderWarmUp {
+
+    private static final String TAG = "ViewHolderWarmUp";
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    /*
+     * Default number of holders kept per view type by RecycledViewPool
+     */
+    private static final int DEFAULT_MAX_SCRAP = 5;
+
+    private final SparseIntArray mCounts = new SparseIntArray();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean mCancelled;
+    private SnappyStats mStats = new SnappyStats();
+
+    /**
+     * Adds view holders of given view type to be created
+     * @param viewType the view type, as returned by {@link RecyclerView.Adapter#getItemViewType(int)}
+     * @param count number of holders to create
+     * @return this for chaining calls
+     */
+    public ViewHolderWarmUp add(int viewType, int count) {
+        mCounts.put(viewType, mCounts.get(viewType) + count);
+        return this;
+    }
+
+    /**
+     * Sets the {@link SnappyStats} to report warmed up holders to
+     * @param stats the stats to report to
+     */
+    public void setStats(SnappyStats stats) {
+        mStats = stats;
+    }
+
+    /**
+     * Starts creating holders for given RecyclerView with its current adapter, must be called on
+     * the main thread
+     * @param rv the RecyclerView whose pool is warmed up
+     */
+    public void start(RecyclerView rv) {
+        start(rv.getContext(), rv.getAdapter(), rv.getRecycledViewPool());
+    }
+
+    /**
+     * Starts creating holders into given pool, must be called on the main thread. It could be
+     * called before the RecyclerView is created or laid out, to be given the pool later.
+     * @param context the context of the RecyclerView, usually the Activity
+     * @param adapter the adapter creating the holders
+     * @param pool the pool to put holders into
+     */
+    public void start(Context context, final RecyclerView.Adapter adapter,
+                      final RecyclerView.RecycledViewPool pool) {
+        if (adapter == null || mCounts.size() == 0) {
+            return;
+        }
+        mCancelled = false;
+        // Only item views are created in the background, never the parent
+        final RecyclerView parent = new RecyclerView(new InflaterContext(context));
+        parent.setLayoutManager(new LinearLayoutManager(context));
+        final int typeCount = mCounts.size();
+        final int[] types = new int[typeCount];
+        final int[] counts = new int[typeCount];
+        for (int i = 0; i < typeCount; i++) {
+            types[i] = mCounts.keyAt(i);
+            counts[i] = mCounts.valueAt(i);
+            pool.setMaxRecycledViews(types[i], Math.max(DEFAULT_MAX_SCRAP, counts[i]));
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                createInBackground(parent, adapter, pool, types, counts);
+            }
+        }, TAG).start();
+    }
+
+    /**
+     * Stops creating holders, holders already in the pool are kept
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    private void createInBackground(RecyclerView parent, RecyclerView.Adapter adapter,
+                                    RecyclerView.RecycledViewPool pool, int[] types,
+                                    int[] counts) {
+        final List<RecyclerView.ViewHolder> holders = new ArrayList<>();
+        for (int i = 0; i < types.length; i++) {
+            while (counts[i] > 0 && !mCancelled) {
+                try {
+                    holders.add(adapter.createViewHolder(parent, types[i]));
+                    counts[i]--;
+                } catch (RuntimeException e) {
+                    if (DEBUG) {
+                        Log.d(TAG, "Can't create view type " + types[i] + " off the main thread",
+                                e);
+                    }
+                    postToPool(pool, holders);
+                    createOnMainThread(parent, adapter, pool, types, counts, i);
+                    return;
+                }
+            }
+        }
+        postToPool(pool, holders);
+    }
+
+    private void postToPool(final RecyclerView.RecycledViewPool pool,
+                            final List<RecyclerView.ViewHolder> holders) {
+        if (holders.isEmpty()) {
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < holders.size(); i++) {
+                    putToPool(pool, holders.get(i));
+                }
+            }
+        });
+    }
+
+    private void putToPool(RecyclerView.RecycledViewPool pool, RecyclerView.ViewHolder holder) {
+        if (mCancelled) {
+            return;
+        }
+        pool.putRecycledView(holder);
+        mStats.onViewHolderWarmedUp();
+    }
+
+    private void createOnMainThread(final RecyclerView parent, final RecyclerView.Adapter adapter,
+                                    final RecyclerView.RecycledViewPool pool, final int[] types,
+                                    final int[] counts, final int firstType) {
+        mMainHandler.post(new Runnable() {
+            private int mType = firstType;
+
+            @Override
+            public void run() {
+                while (mType < types.length && counts[mType] == 0) {
+                    mType++;
+                }
+                if (mCancelled || mType == types.length) {
+                    return;
+                }
+                putToPool(pool, adapter.createViewHolder(parent, types[mType]));
+                counts[mType]--;
+                mMainHandler.post(this);
+            }
+        });
+    }
+
+    /*
+     * Hands out a clone of the inflater of its base context, which isn't shared with the main
+     * thread. The constructor cache of LayoutInflater is still static, as with AsyncLayoutInflater.
+     */
+    private static class InflaterContext extends ContextWrapper {
+        private final LayoutInflater mInflater;
+
+        InflaterContext(Context base) {
+            super(base);
+            mInflater = LayoutInflater.from(base).cloneInContext(this);
+        }
+
+        @Override
+        public Object getSystemService(String name) {
+            if (LAYOUT_INFLATER_SERVICE.equals(name)) {
+                return mInflater;
+            }
+            return super.getSystemService(name);
+        }
+    }
+}
@@ -3,32 +3,208 @@ package com.carl.recyclerview;
 import android.view.MotionEvent;
 import android.view.View;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
+ * Gesture arena that dispatches touch events of a view to several listeners. Listeners receive
+ * events in order of descending priority until one of them claims the pointer stream, either by
+ * returning true from {@link View.OnTouchListener#onTouch(View, MotionEvent)} or by calling
+ * {@link #claim(View.OnTouchListener)}. From then on the other listeners receive a single
+ * {@link MotionEvent#ACTION_CANCEL} and the rest of the stream goes to the owner only, until the
+ * stream ends or the owner calls {@link #release(View.OnTouchListener)}.
+ * <p>
+ * Listeners are kept in a copy-on-write array, so they could be added and removed during
+ * dispatch and dispatching allocates nothing.
+ *
  * @author carl
  */
 public class ViewOnTouchDelegate implements View.OnTouchListener {
 
-    private List<View.OnTouchListener> mListeners = new ArrayList<>();
+    public static final int DEFAULT_PRIORITY = 0;
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    private Entry[] mEntries = EMPTY;
+    private View.OnTouchListener mOwner;
+    private boolean mCancelPending;
+    /*
+     * The owner gave up the stream, the rest of it is dropped
+     */
+    private boolean mReleased;
+    private InputLatencyTracker mInputLatencyTracker;
 
     public void addOnTouchListener(View.OnTouchListener listener){
+        addOnTouchListener(listener, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Adds a listener, listeners with higher priorities receive events first, listeners with
+     * the same priority in the order they are added
+     * @param listener the listener to add
+     * @param priority the priority of the listener
+     */
+    public void addOnTouchListener(View.OnTouchListener listener, int priority) {
         if (listener == null) {
             return;
         }
-        mListeners.add(listener);
+        Entry[] entries = mEntries;
+        Entry[] newEntries = new Entry[entries.length + 1];
+        int insertAt = entries.length;
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].mPriority < priority) {
+                insertAt = i;
+                break;
+            }
+        }
+        System.arraycopy(entries, 0, newEntries, 0, insertAt);
+        newEntries[insertAt] = new Entry(listener, priority);
+        System.arraycopy(entries, insertAt, newEntries, insertAt + 1,
+                entries.length - insertAt);
+        mEntries = newEntries;
     }
 
     public void removeOnTouchListener(View.OnTouchListener listener) {
-        mListeners.remove(listener);
+        Entry[] entries = mEntries;
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].mListener == listener) {
+                Entry[] newEntries = new Entry[entries.length - 1];
+                System.arraycopy(entries, 0, newEntries, 0, i);
+                System.arraycopy(entries, i + 1, newEntries, i, entries.length - i - 1);
+                mEntries = newEntries;
+                break;
+            }
+        }
+        if (mOwner == listener) {
+            // The others have been cancelled, the rest of the stream goes nowhere
+            mOwner = null;
+            mCancelPending = false;
+            mReleased = true;
+        }
+    }
+
+    /**
+     * Gives the current pointer stream to given listener, the other listeners receive a cancel
+     * event with the next event dispatched
+     * @param listener the listener that recognized its gesture
+     * @return true if the listener owns the stream, false if another listener already owns it
+     * or it has been released
+     */
+    public boolean claim(View.OnTouchListener listener) {
+        if (mReleased) {
+            return false;
+        }
+        if (mOwner != null) {
+            return mOwner == listener;
+        }
+        mOwner = listener;
+        mCancelPending = true;
+        return true;
+    }
+
+    /**
+     * Gives up ownership of the current pointer stream, the other listeners don't receive any
+     * event until the next stream starts
+     * @param listener the listener owning the stream
+     */
+    public void release(View.OnTouchListener listener) {
+        if (mOwner == listener) {
+            mOwner = null;
+            mCancelPending = false;
+            mReleased = true;
+        }
+    }
+
+    /**
+     * @return the listener owning the current pointer stream, or null
+     */
+    public View.OnTouchListener getOwner() {
+        return mOwner;
+    }
+
+    /**
+     * Sets the tracker that notes every event reaching this delegate, before any listener
+     * @param tracker the tracker, or null to stop tracking
+     */
+    public void setInputLatencyTracker(InputLatencyTracker tracker) {
+        mInputLatencyTracker = tracker;
     }
 
     @Override
     public boolean onTouch(View v, MotionEvent event) {
-        for (View.OnTouchListener listener : mListeners) {
-            if (listener.onTouch(v, event)) return true;
+        if (mInputLatencyTracker != null) {
+            mInputLatencyTracker.onTouchEvent(event);
+        }
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) {
+            mOwner = null;
+            mCancelPending = false;
+            mReleased = false;
+        } else if (mReleased) {
+            if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+                mReleased = false;
+            }
+            return false;
+        }
+        boolean handled;
+        View.OnTouchListener owner = mOwner;
+        if (owner != null) {
+            handled = owner.onTouch(v, event);
+        } else {
+            handled = dispatchToAll(v, event);
+        }
+        if (mCancelPending) {
+            dispatchCancel(v, event);
+        }
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            mOwner = null;
+            mCancelPending = false;
+        }
+        return handled;
+    }
+
+    private boolean dispatchToAll(View v, MotionEvent event) {
+        Entry[] entries = mEntries;
+        for (Entry entry : entries) {
+            if (entry.mListener.onTouch(v, event)) {
+                claim(entry.mListener);
+                return true;
+            }
+            if (mOwner != null) {
+                // Claimed explicitly during dispatch, the rest only get the cancel event
+                return false;
+            }
         }
         return false;
     }
+
+    /*
+     * Sends a cancel event to every listener except the owner
+     */
+    private void dispatchCancel(View v, MotionEvent event) {
+        mCancelPending = false;
+        View.OnTouchListener owner = mOwner;
+        boolean isCancel = event.getActionMasked() == MotionEvent.ACTION_CANCEL;
+        MotionEvent cancel = event;
+        if (!isCancel) {
+            cancel = MotionEvent.obtain(event);
+            cancel.setAction(MotionEvent.ACTION_CANCEL);
+        }
+        Entry[] entries = mEntries;
+        for (Entry entry : entries) {
+            if (entry.mListener != owner) {
+                entry.mListener.onTouch(v, cancel);
+            }
+        }
+        if (!isCancel) {
+            cancel.recycle();
+        }
+    }
+
+    private static class Entry {
+        final View.OnTouchListener mListener;
+        final int mPriority;
+
+        Entry(View.OnTouchListener listener, int priority) {
+            mListener = listener;
+            mPriority = priority;
+        }
+    }
 }
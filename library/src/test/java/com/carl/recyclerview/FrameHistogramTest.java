@@ -0,0 +1,45 @@
+package com.carl.recyclerview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameHistogramTest {
+
+    private static final long FRAME_NANOS = 16666667L;
+    private static final long MILLI = 1000000L;
+
+    @Test
+    public void percentiles() throws Exception {
+        FrameHistogram histogram = new FrameHistogram(FRAME_NANOS);
+        for (int i = 0; i < 90; i++) {
+            histogram.record(10 * MILLI + 500);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(20 * MILLI);
+        }
+        histogram.record(500 * MILLI);
+        assertEquals(100, histogram.getCount());
+        assertEquals(11, histogram.getP50Millis());
+        assertEquals(11, histogram.getP90Millis());
+        assertEquals(21, histogram.getP99Millis());
+        assertEquals(FrameHistogram.MAX_TRACKED_MILLIS + 1, histogram.getPercentileMillis(100));
+    }
+
+    @Test
+    public void droppedFrames() throws Exception {
+        FrameHistogram histogram = new FrameHistogram(FRAME_NANOS);
+        histogram.record(FRAME_NANOS);
+        histogram.record(FRAME_NANOS + FRAME_NANOS / 3);
+        assertEquals(0, histogram.getDroppedFrames());
+        histogram.record(FRAME_NANOS * 2);
+        assertEquals(1, histogram.getDroppedFrames());
+        histogram.record(FRAME_NANOS * 5);
+        assertEquals(5, histogram.getDroppedFrames());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getDroppedFrames());
+        assertEquals(0, histogram.getP50Millis());
+    }
+}
@@ -0,0 +1,236 @@
+package com.carl.recyclerview;
+
+import android.content.Context;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.robolectric.Robolectric;
+import org.robolectric.util.Scheduler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays a {@link GestureTrace} through a {@link SnappyRecyclerView} set up with
+ * {@link SwipeGestureHelper} and {@link PanDownTransitionGestureHelper}, on the Robolectric main
+ * looper. The clock is advanced to the time of every event before it's dispatched, so long
+ * presses, frame callbacks and animations run as they would on a device.
+ * <p>
+ * The time spent dispatching every event is written by {@link Result#writeTimings(File)} in a
+ * tab-separated format that stays the same across versions, so that runs could be compared.
+ *
+ * @author carl
+ */
+class GestureReplayHarness {
+
+    static final int WIDTH = 1080;
+    static final int HEIGHT = 1920;
+    static final int ITEM_WIDTH = 800;
+    /*
+     * Time given to animations and flings to finish after the last event
+     */
+    private static final long SETTLE_MILLIS = 3000;
+
+    private final SnappyRecyclerView mRecyclerView;
+    private final SwipeGestureHelper mSwipeGestureHelper;
+    private final SnappyStats mStats = new SnappyStats();
+    private final List<Integer> mFlingTargets = new ArrayList<>();
+    private final List<Integer> mSwipedPositions = new ArrayList<>();
+    private final List<Integer> mBatchSizes = new ArrayList<>();
+
+    GestureReplayHarness(Context context, int itemCount) {
+        this(context, itemCount, false);
+    }
+
+    GestureReplayHarness(Context context, int itemCount, boolean loop) {
+        mRecyclerView = new SnappyRecyclerView(context);
+        SnappyLinearLayoutManager lm = new SnappyLinearLayoutManager(context,
+                LinearLayoutManager.HORIZONTAL, false) {
+            @Override
+            public int computeScrollToItemIndex(int velocityX, int velocityY) {
+                int target = super.computeScrollToItemIndex(velocityX, velocityY);
+                mFlingTargets.add(target);
+                return target;
+            }
+        };
+        lm.setStats(mStats);
+        lm.setLoopEnabled(loop);
+        mRecyclerView.setStats(mStats);
+        mRecyclerView.setLayoutManager(lm);
+        mRecyclerView.setAdapter(new FixedAdapter(itemCount));
+
+        ViewOnTouchDelegate delegate = new ViewOnTouchDelegate();
+        mRecyclerView.setOnTouchListener(delegate);
+        mSwipeGestureHelper = new SwipeGestureHelper(context);
+        mSwipeGestureHelper.setStats(mStats);
+        mSwipeGestureHelper.attachToRecyclerView(mRecyclerView, delegate);
+        mSwipeGestureHelper.setOnSwipeListener(new SwipeGestureHelper.OnSwipeListener() {
+            @Override
+            public void onSwipe(RecyclerView rv, int adapterPosition, float dy) {
+                mSwipedPositions.add(adapterPosition);
+            }
+        });
+        new PanDownTransitionGestureHelper().attachToRecyclerView(mRecyclerView, delegate);
+
+        mRecyclerView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mRecyclerView.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    SnappyRecyclerView getRecyclerView() {
+        return mRecyclerView;
+    }
+
+    /**
+     * Receives swiped out items in batches from now on, their positions are still collected
+     */
+    void enableBatchSwipe() {
+        mSwipeGestureHelper.setOnBatchSwipeListener(new SwipeGestureHelper.OnBatchSwipeListener() {
+            @Override
+            public void onBatchSwipe(RecyclerView rv, SwipeBatch batch) {
+                mBatchSizes.add(batch.getCount());
+                for (int i = 0; i < batch.getCount(); i++) {
+                    mSwipedPositions.add(batch.getPosition(i));
+                }
+            }
+        });
+    }
+
+    /**
+     * Dispatches every event of the trace and waits for the resulting animations to finish
+     */
+    Result replay(GestureTrace trace) {
+        Scheduler scheduler = Robolectric.getForegroundThreadScheduler();
+        long timeBase = scheduler.getCurrentTime();
+        long[] eventNanos = new long[trace.getEventCount()];
+        for (int i = 0; i < trace.getEventCount(); i++) {
+            GestureTrace.Event event = trace.getEvent(i);
+            scheduler.advanceTo(timeBase + event.getEventTime());
+            MotionEvent e = GestureRecorder.obtainMotionEvent(event, timeBase);
+            long start = System.nanoTime();
+            mRecyclerView.dispatchTouchEvent(e);
+            eventNanos[i] = System.nanoTime() - start;
+            e.recycle();
+            // Lay out whatever the event has scrolled in
+            mRecyclerView.layout(0, 0, WIDTH, HEIGHT);
+        }
+        scheduler.advanceBy(SETTLE_MILLIS);
+        return new Result(trace, mStats.getSwipeCommittedCount(),
+                mStats.getSwipeRecoveredCount(), new ArrayList<>(mFlingTargets),
+                new ArrayList<>(mSwipedPositions), new ArrayList<>(mBatchSizes), eventNanos);
+    }
+
+    /**
+     * Decisions made while replaying a trace, and the time spent dispatching every event
+     */
+    static class Result {
+        static final String TIMINGS_HEADER = "# gesture replay timings v1";
+        static final String TIMINGS_COLUMNS = "event\taction\ttime_ms\tdispatch_us";
+
+        final GestureTrace mTrace;
+        final long mSwipesCommitted;
+        final long mSwipesRecovered;
+        final List<Integer> mFlingTargets;
+        final List<Integer> mSwipedPositions;
+        final List<Integer> mBatchSizes;
+        final long[] mEventNanos;
+
+        Result(GestureTrace trace, long swipesCommitted, long swipesRecovered,
+               List<Integer> flingTargets, List<Integer> swipedPositions,
+               List<Integer> batchSizes, long[] eventNanos) {
+            mTrace = trace;
+            mSwipesCommitted = swipesCommitted;
+            mSwipesRecovered = swipesRecovered;
+            mFlingTargets = flingTargets;
+            mSwipedPositions = swipedPositions;
+            mBatchSizes = batchSizes;
+            mEventNanos = eventNanos;
+        }
+
+        long getMaxEventNanos() {
+            long max = 0;
+            for (long nanos : mEventNanos) {
+                max = Math.max(max, nanos);
+            }
+            return max;
+        }
+
+        /**
+         * Writes one line per event: its index, action, time relative to the first event and
+         * dispatch time, after a version header and a line naming the columns
+         */
+        void writeTimings(Writer out) throws IOException {
+            out.write(TIMINGS_HEADER);
+            out.write('\n');
+            out.write(TIMINGS_COLUMNS);
+            out.write('\n');
+            for (int i = 0; i < mEventNanos.length; i++) {
+                GestureTrace.Event event = mTrace.getEvent(i);
+                out.write(i + "\t" + event.getAction() + "\t" + event.getEventTime() + "\t"
+                        + mEventNanos[i] / 1000 + "\n");
+            }
+        }
+
+        /**
+         * Writes the timings to given file, creating its directory if needed
+         */
+        void writeTimings(File file) throws IOException {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("can't create " + dir);
+            }
+            Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                writeTimings(out);
+            } finally {
+                out.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "swipesCommitted=" + mSwipesCommitted +
+                    ", swipesRecovered=" + mSwipesRecovered +
+                    ", flingTargets=" + mFlingTargets +
+                    ", swipedPositions=" + mSwipedPositions +
+                    ", batchSizes=" + mBatchSizes +
+                    ", maxEventMicros=" + getMaxEventNanos() / 1000 +
+                    '}';
+        }
+    }
+
+    private static class FixedAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        private final int mItemCount;
+
+        FixedAdapter(int itemCount) {
+            mItemCount = itemCount;
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            View view = new View(parent.getContext());
+            view.setLayoutParams(new RecyclerView.LayoutParams(ITEM_WIDTH,
+                    ViewGroup.LayoutParams.MATCH_PARENT));
+            return new RecyclerView.ViewHolder(view) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return mItemCount;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.carl.recyclerview;
+
+import android.view.MotionEvent;
+import android.view.ViewConfiguration;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class GestureReplayTest {
+
+    private static final float CENTER_X = GestureReplayHarness.WIDTH / 2F;
+    private static final float CENTER_Y = GestureReplayHarness.HEIGHT / 2F;
+    /*
+     * Timings of every replay are written here, one file per test and replay
+     */
+    private static final File TIMINGS_DIR = new File(
+            System.getProperty("gestureReplay.timingsDir", "build/gesture-replay"));
+
+    @Rule
+    public final TestName mTestName = new TestName();
+
+    private GestureReplayHarness mHarness;
+    private int mReplayCount;
+
+    @Before
+    public void setUp() {
+        mHarness = new GestureReplayHarness(RuntimeEnvironment.application, 20);
+    }
+
+    @Test
+    public void fastLongPressDragCommitsSwipe() throws Exception {
+        GestureTrace trace = new GestureTrace();
+        long longPress = ViewConfiguration.getLongPressTimeout() + 50;
+        addEvent(trace, MotionEvent.ACTION_DOWN, 0, CENTER_X, CENTER_Y);
+        for (int i = 1; i <= 8; i++) {
+            addEvent(trace, MotionEvent.ACTION_MOVE, longPress + i * 8, CENTER_X,
+                    CENTER_Y - i * 100F);
+        }
+        addEvent(trace, MotionEvent.ACTION_UP, longPress + 72, CENTER_X, CENTER_Y - 800F);
+
+        GestureReplayHarness.Result result = replay(mHarness, trace);
+        assertEquals(result.toString(), 1, result.mSwipesCommitted);
+        assertEquals(0, result.mSwipesRecovered);
+        assertEquals(1, result.mSwipedPositions.size());
+        assertTrue(result.mFlingTargets.isEmpty());
+    }
+
+    @Test
+    public void shortLongPressDragRecovers() throws Exception {
+        GestureTrace trace = new GestureTrace();
+        long longPress = ViewConfiguration.getLongPressTimeout() + 50;
+        addEvent(trace, MotionEvent.ACTION_DOWN, 0, CENTER_X, CENTER_Y);
+        addEvent(trace, MotionEvent.ACTION_MOVE, longPress + 200, CENTER_X, CENTER_Y - 40F);
+        addEvent(trace, MotionEvent.ACTION_UP, longPress + 400, CENTER_X, CENTER_Y - 40F);
+
+        GestureReplayHarness.Result result = replay(mHarness, trace);
+        assertEquals(result.toString(), 0, result.mSwipesCommitted);
+        assertEquals(1, result.mSwipesRecovered);
+    }
+
+    @Test
+    public void swipesInsideBatchWindowMakeOneBatch() throws Exception {
+        mHarness.enableBatchSwipe();
+        GestureTrace trace = new GestureTrace();
+        long longPress = ViewConfiguration.getLongPressTimeout() + 50;
+        // Swipe out the centered item, then the next one peeking in on the right
+        long start = 0;
+        for (float x : new float[]{CENTER_X, GestureReplayHarness.WIDTH - 100F}) {
+            addEvent(trace, MotionEvent.ACTION_DOWN, start, x, CENTER_Y);
+            for (int i = 1; i <= 8; i++) {
+                addEvent(trace, MotionEvent.ACTION_MOVE, start + longPress + i * 8, x,
+                        CENTER_Y - i * 100F);
+            }
+            addEvent(trace, MotionEvent.ACTION_UP, start + longPress + 72, x, CENTER_Y - 800F);
+            // Leave time for the out animation before touching down again
+            start += longPress + 72 + SwipeGestureHelper.DEFAULT_ANIMATION_DURATION + 100;
+        }
+
+        GestureReplayHarness.Result result = replay(mHarness, trace);
+        assertEquals(result.toString(), 2, result.mSwipesCommitted);
+        assertEquals(result.toString(), 1, result.mBatchSizes.size());
+        assertEquals(2, (int) result.mBatchSizes.get(0));
+        assertEquals(Arrays.asList(0, 1), result.mSwipedPositions);
+    }
+
+    @Test
+    public void flingComputesTarget() throws Exception {
+        GestureTrace trace = new GestureTrace();
+        addEvent(trace, MotionEvent.ACTION_DOWN, 0, CENTER_X + 300F, CENTER_Y);
+        for (int i = 1; i <= 6; i++) {
+            addEvent(trace, MotionEvent.ACTION_MOVE, i * 8, CENTER_X + 300F - i * 100F,
+                    CENTER_Y);
+        }
+        addEvent(trace, MotionEvent.ACTION_UP, 56, CENTER_X - 300F, CENTER_Y);
+
+        GestureReplayHarness.Result result = replay(mHarness, trace);
+        assertEquals(result.toString(), 1, result.mFlingTargets.size());
+        assertTrue(result.toString(), result.mFlingTargets.get(0) > 0);
+        assertEquals(0, result.mSwipesCommitted);
+    }
+
+    @Test
+    public void loopFlingWrapsToRealPosition() throws Exception {
+        GestureReplayHarness harness =
+                new GestureReplayHarness(RuntimeEnvironment.application, 5, true);
+        GestureTrace trace = new GestureTrace();
+        // Fling towards the start from the first item
+        addEvent(trace, MotionEvent.ACTION_DOWN, 0, CENTER_X - 300F, CENTER_Y);
+        for (int i = 1; i <= 6; i++) {
+            addEvent(trace, MotionEvent.ACTION_MOVE, i * 8, CENTER_X - 300F + i * 100F,
+                    CENTER_Y);
+        }
+        addEvent(trace, MotionEvent.ACTION_UP, 56, CENTER_X + 300F, CENTER_Y);
+
+        GestureReplayHarness.Result result = replay(harness, trace);
+        assertEquals(result.toString(), 1, result.mFlingTargets.size());
+        int target = result.mFlingTargets.get(0);
+        assertTrue(result.toString(), target > 0 && target < 5);
+        SnappyLinearLayoutManager lm =
+                (SnappyLinearLayoutManager) harness.getRecyclerView().getLayoutManager();
+        assertEquals(target, lm.findFirstCompletelyVisibleItemPosition());
+    }
+
+    @Test
+    public void recordedTraceReplaysTheSame() throws Exception {
+        GestureTrace trace = new GestureTrace();
+        addEvent(trace, MotionEvent.ACTION_DOWN, 0, CENTER_X + 300F, CENTER_Y);
+        for (int i = 1; i <= 6; i++) {
+            addEvent(trace, MotionEvent.ACTION_MOVE, i * 8, CENTER_X + 300F - i * 100F,
+                    CENTER_Y);
+        }
+        addEvent(trace, MotionEvent.ACTION_UP, 56, CENTER_X - 300F, CENTER_Y);
+
+        GestureRecorder recorder = new GestureRecorder();
+        mHarness.getRecyclerView().setGestureRecorder(recorder);
+        recorder.start();
+        GestureReplayHarness.Result first = replay(mHarness, trace);
+        recorder.stop();
+
+        GestureReplayHarness other =
+                new GestureReplayHarness(RuntimeEnvironment.application, 20);
+        GestureReplayHarness.Result second = replay(other, recorder.getTrace());
+        assertEquals(trace.getEventCount(), recorder.getTrace().getEventCount());
+        assertEquals(first.mFlingTargets, second.mFlingTargets);
+    }
+
+    private GestureReplayHarness.Result replay(GestureReplayHarness harness, GestureTrace trace)
+            throws IOException {
+        GestureReplayHarness.Result result = harness.replay(trace);
+        mReplayCount++;
+        String name = getClass().getSimpleName() + "." + mTestName.getMethodName()
+                + (mReplayCount > 1 ? "-" + mReplayCount : "");
+        result.writeTimings(new File(TIMINGS_DIR, name + ".tsv"));
+        return result;
+    }
+
+    private static void addEvent(GestureTrace trace, int action, long time, float x, float y) {
+        trace.addEvent(action, 0, new int[]{0}, new long[]{time}, new float[]{x, y});
+    }
+}
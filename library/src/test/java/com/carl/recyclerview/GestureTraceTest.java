@@ -0,0 +1,38 @@
+package com.carl.recyclerview;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class GestureTraceTest {
+
+    @Test
+    public void roundTrip() throws Exception {
+        GestureTrace trace = new GestureTrace();
+        trace.addEvent(0, 0, new int[]{0}, new long[]{0}, new float[]{10F, 20F});
+        trace.addEvent(2, 0, new int[]{0, 3}, new long[]{8, 16},
+                new float[]{11F, 21F, 100F, 200F, 12F, 22F, 101F, 201F});
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trace.writeTo(out);
+
+        GestureTrace read = GestureTrace.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2, read.getEventCount());
+        GestureTrace.Event move = read.getEvent(1);
+        assertEquals(2, move.getAction());
+        assertEquals(2, move.getPointerCount());
+        assertEquals(3, move.getPointerId(1));
+        assertEquals(2, move.getSampleCount());
+        assertEquals(16, move.getEventTime());
+        assertEquals(101F, move.getX(1, 1), 0F);
+        assertEquals(22F, move.getY(0, 1), 0F);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherData() throws Exception {
+        GestureTrace.readFrom(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9}));
+    }
+}
@@ -0,0 +1,97 @@
+package com.carl.recyclerview;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ItemExtentIndexTest {
+
+    private ItemExtentIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex = new ItemExtentIndex();
+        mIndex.reset(5);
+        // 100, 200, 300, 400, 500
+        for (int i = 0; i < 5; i++) {
+            mIndex.setExtent(i, (i + 1) * 100);
+        }
+    }
+
+    @Test
+    public void prefixSums() throws Exception {
+        assertEquals(0, mIndex.getStart(0));
+        assertEquals(100, mIndex.getStart(1));
+        assertEquals(300, mIndex.getStart(2));
+        assertEquals(1000, mIndex.getStart(4));
+        assertEquals(1500, mIndex.getTotalExtent());
+    }
+
+    @Test
+    public void findIndexAt() throws Exception {
+        assertEquals(0, mIndex.findIndexAt(-50));
+        assertEquals(0, mIndex.findIndexAt(99));
+        assertEquals(1, mIndex.findIndexAt(100));
+        assertEquals(2, mIndex.findIndexAt(599));
+        assertEquals(3, mIndex.findIndexAt(600));
+        assertEquals(4, mIndex.findIndexAt(100000));
+    }
+
+    @Test
+    public void findIndexNearestTo() throws Exception {
+        // Item 2 spans [300, 600)
+        assertEquals(2, mIndex.findIndexNearestTo(450));
+        assertEquals(3, mIndex.findIndexNearestTo(451));
+    }
+
+    @Test
+    public void unmeasuredItemsUseAverage() throws Exception {
+        mIndex.onItemsAdded(5, 2);
+        assertEquals(7, mIndex.getItemCount());
+        assertEquals(300, mIndex.getEstimatedExtent());
+        assertEquals(2100, mIndex.getTotalExtent());
+        assertEquals(6, mIndex.findIndexAt(1800));
+        mIndex.setExtent(5, 600);
+        assertEquals(350, mIndex.getEstimatedExtent());
+        assertEquals(2100, mIndex.getStart(6));
+        assertEquals(2450, mIndex.getTotalExtent());
+    }
+
+    @Test
+    public void structuralChanges() throws Exception {
+        mIndex.onItemsRemoved(1, 2);
+        // 100, 400, 500
+        assertEquals(3, mIndex.getItemCount());
+        assertEquals(100, mIndex.getStart(1));
+        assertEquals(500, mIndex.getStart(2));
+
+        mIndex.onItemsMoved(0, 2, 1);
+        // 400, 500, 100
+        assertEquals(400, mIndex.getStart(1));
+        assertEquals(900, mIndex.getStart(2));
+
+        mIndex.setExtent(1, 50);
+        assertEquals(450, mIndex.getStart(2));
+    }
+
+    @Test
+    public void largeIndexMatchesLinearScan() throws Exception {
+        ItemExtentIndex index = new ItemExtentIndex();
+        int count = 10000;
+        index.reset(count);
+        int[] extents = new int[count];
+        java.util.Random random = new java.util.Random(7);
+        for (int i = 0; i < count; i++) {
+            extents[i] = 50 + random.nextInt(500);
+            index.setExtent(i, extents[i]);
+        }
+        long start = 0;
+        for (int i = 0; i < count; i++) {
+            assertEquals(start, index.getStart(i));
+            assertEquals(i, index.findIndexAt(start));
+            assertEquals(i, index.findIndexAt(start + extents[i] - 1));
+            start += extents[i];
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.carl.recyclerview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ListDiffTest {
+
+    /*
+     * Items are ids in the high bits and contents in the low bits
+     */
+    private static ListDiff.Callback newCallback(final List<Integer> oldList,
+                                                 final List<Integer> newList) {
+        return new ListDiff.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldList.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newList.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return oldList.get(oldPosition) >> 8 == newList.get(newPosition) >> 8;
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return oldList.get(oldPosition).equals(newList.get(newPosition));
+            }
+        };
+    }
+
+    /*
+     * Applies the updates to a copy of the old list, inserted items are null and changed items
+     * take the contents of their counterpart
+     */
+    private static class ApplyingCallback implements ListDiff.UpdateCallback {
+        final List<Integer> mList;
+        final List<Integer> mNewList;
+        int mUpdates;
+        int mChangedItems;
+
+        ApplyingCallback(List<Integer> oldList, List<Integer> newList) {
+            mList = new ArrayList<>(oldList);
+            mNewList = newList;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mUpdates++;
+            for (int i = 0; i < count; i++) {
+                mList.add(position, null);
+            }
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mUpdates++;
+            for (int i = 0; i < count; i++) {
+                mList.remove(position);
+            }
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mUpdates++;
+            mList.add(toPosition, mList.remove(fromPosition));
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            mUpdates++;
+            for (int i = 0; i < count; i++) {
+                mChangedItems++;
+                mList.set(position + i, -1 - mList.get(position + i));
+            }
+        }
+    }
+
+    private static void assertApplies(List<Integer> oldList, List<Integer> newList,
+                                      boolean detectMoves) {
+        ListDiff diff = ListDiff.calculate(newCallback(oldList, newList), detectMoves);
+        ApplyingCallback callback = new ApplyingCallback(oldList, newList);
+        diff.dispatchUpdatesTo(callback);
+        assertEquals(newList.size(), callback.mList.size());
+        for (int i = 0; i < newList.size(); i++) {
+            Integer item = callback.mList.get(i);
+            int oldPosition = diff.convertNewPositionToOld(i);
+            if (item == null) {
+                assertEquals(ListDiff.NO_POSITION, oldPosition);
+                continue;
+            }
+            // Changed items are marked by a negative value
+            int original = item < 0 ? -1 - item : item;
+            assertEquals(original, (int) oldList.get(oldPosition));
+            assertEquals(i, diff.convertOldPositionToNew(oldPosition));
+            assertEquals(original >> 8, newList.get(i) >> 8);
+            assertEquals(item < 0, original != newList.get(i));
+        }
+    }
+
+    private static List<Integer> items(int... values) {
+        List<Integer> list = new ArrayList<>();
+        for (int value : values) {
+            list.add(value << 8);
+        }
+        return list;
+    }
+
+    @Test
+    public void shortestScript() throws Exception {
+        List<Integer> oldList = items(1, 2, 3, 4, 5, 6, 7, 8);
+        List<Integer> newList = items(1, 3, 4, 9, 5, 6, 8, 10);
+        ApplyingCallback callback = new ApplyingCallback(oldList, newList);
+        ListDiff.calculate(newCallback(oldList, newList), false).dispatchUpdatesTo(callback);
+        // Removal of 2 and 7, insertion of 9 and 10
+        assertEquals(4, callback.mUpdates);
+        assertApplies(oldList, newList, false);
+    }
+
+    @Test
+    public void adjacentUpdatesAreBatched() throws Exception {
+        List<Integer> oldList = items(1, 2, 3, 4, 5, 6);
+        List<Integer> newList = items(1, 7, 8, 9, 6);
+        newList.set(4, newList.get(4) + 1);
+        ApplyingCallback callback = new ApplyingCallback(oldList, newList);
+        ListDiff.calculate(newCallback(oldList, newList), false).dispatchUpdatesTo(callback);
+        // One change, one removal of 4 items and one insertion of 3
+        assertEquals(3, callback.mUpdates);
+        assertEquals(1, callback.mChangedItems);
+    }
+
+    @Test
+    public void movesAreDetected() throws Exception {
+        List<Integer> oldList = items(1, 2, 3, 4, 5);
+        List<Integer> newList = items(4, 1, 2, 3, 5);
+        newList.set(0, newList.get(0) + 1);
+        ApplyingCallback callback = new ApplyingCallback(oldList, newList);
+        ListDiff diff = ListDiff.calculate(newCallback(oldList, newList), true);
+        diff.dispatchUpdatesTo(callback);
+        assertEquals(2, callback.mUpdates);
+        assertEquals(0, diff.convertOldPositionToNew(3));
+        assertApplies(oldList, newList, true);
+    }
+
+    @Test
+    public void randomLists() throws Exception {
+        Random random = new Random(42);
+        for (int run = 0; run < 500; run++) {
+            List<Integer> oldList = new ArrayList<>();
+            int size = random.nextInt(40);
+            for (int i = 0; i < size; i++) {
+                oldList.add(i << 8);
+            }
+            List<Integer> newList = new ArrayList<>(oldList);
+            int edits = random.nextInt(10);
+            for (int e = 0; e < edits; e++) {
+                int op = random.nextInt(4);
+                if (op == 0 || newList.isEmpty()) {
+                    newList.add(random.nextInt(newList.size() + 1), (1000 + run * 10 + e) << 8);
+                } else if (op == 1) {
+                    newList.remove(random.nextInt(newList.size()));
+                } else if (op == 2) {
+                    int position = random.nextInt(newList.size());
+                    newList.set(position, newList.get(position) + 1);
+                } else {
+                    Collections.swap(newList, random.nextInt(newList.size()),
+                            random.nextInt(newList.size()));
+                }
+            }
+            assertApplies(oldList, newList, false);
+            assertApplies(oldList, newList, true);
+        }
+    }
+
+    @Test
+    public void longListFewChanges() throws Exception {
+        List<Integer> oldList = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            oldList.add(i << 8);
+        }
+        List<Integer> newList = new ArrayList<>(oldList);
+        newList.remove(5000);
+        newList.add(20, 20000 << 8);
+        newList.set(9000, newList.get(9000) + 1);
+        ApplyingCallback callback = new ApplyingCallback(oldList, newList);
+        ListDiff.calculate(newCallback(oldList, newList), true).dispatchUpdatesTo(callback);
+        assertEquals(3, callback.mUpdates);
+        assertEquals(1, callback.mChangedItems);
+    }
+}
@@ -0,0 +1,146 @@
+package com.carl.recyclerview;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MarginDecorationTest {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int ITEM_SIZE = 200;
+
+    private RecyclerView mRecyclerView;
+    private ItemAdapter mAdapter;
+    private MarginDecoration mDecoration;
+
+    @Before
+    public void setUp() {
+        mRecyclerView = new RecyclerView(RuntimeEnvironment.application);
+        mAdapter = new ItemAdapter(4);
+        mRecyclerView.setAdapter(mAdapter);
+        mDecoration = new MarginDecoration();
+        mDecoration.setMarginLeft(1);
+        mDecoration.setMarginTop(2);
+        mDecoration.setMarginRight(3);
+        mDecoration.setMarginBottom(4);
+        mDecoration.setMarginHead(10);
+        mDecoration.setMarginTail(20);
+        mDecoration.attachToRecyclerView(mRecyclerView);
+    }
+
+    @Test
+    public void headAndTailAlongHorizontalAxis() throws Exception {
+        layout(new LinearLayoutManager(RuntimeEnvironment.application,
+                LinearLayoutManager.HORIZONTAL, false));
+        assertOffsets(0, 11, 2, 3, 4);
+        assertOffsets(1, 1, 2, 3, 4);
+        assertOffsets(3, 1, 2, 23, 4);
+    }
+
+    @Test
+    public void headAndTailAlongVerticalAxis() throws Exception {
+        layout(new LinearLayoutManager(RuntimeEnvironment.application));
+        assertOffsets(0, 1, 12, 3, 4);
+        assertOffsets(2, 1, 2, 3, 4);
+        assertOffsets(3, 1, 2, 3, 24);
+    }
+
+    @Test
+    public void loopHasNoHeadOrTail() throws Exception {
+        mAdapter.mItemCount = 8;
+        SnappyLinearLayoutManager lm = new SnappyLinearLayoutManager(
+                RuntimeEnvironment.application, LinearLayoutManager.HORIZONTAL, false);
+        lm.setLoopEnabled(true);
+        layout(lm);
+        assertOffsets(0, 1, 2, 3, 4);
+        assertOffsets(4, 1, 2, 3, 4);
+    }
+
+    @Test
+    public void tailFollowsInsertedItems() throws Exception {
+        layout(new LinearLayoutManager(RuntimeEnvironment.application,
+                LinearLayoutManager.HORIZONTAL, false));
+        mAdapter.mItemCount = 5;
+        mAdapter.notifyItemInserted(4);
+        // Offsets of the former last item are cached until decorations are invalidated
+        mRecyclerView.invalidateItemDecorations();
+        layout(mRecyclerView.getLayoutManager());
+        assertOffsets(3, 1, 2, 3, 4);
+        assertOffsets(4, 1, 2, 23, 4);
+    }
+
+    @Test
+    public void rangeRulesOverrideViewTypeRules() throws Exception {
+        // Odd positions are of view type 1
+        mDecoration.setMarginsForViewType(1, 5, 5, 5, 5);
+        mDecoration.setMarginsForPositionRange(2, 2, 7, 7, 7, 7);
+        layout(new LinearLayoutManager(RuntimeEnvironment.application,
+                LinearLayoutManager.HORIZONTAL, false));
+        assertOffsets(0, 11, 2, 3, 4);
+        assertOffsets(1, 5, 5, 5, 5);
+        assertOffsets(2, 7, 7, 7, 7);
+        assertOffsets(3, 7, 7, 27, 7);
+    }
+
+    private void layout(RecyclerView.LayoutManager lm) {
+        if (mRecyclerView.getLayoutManager() != lm) {
+            mRecyclerView.setLayoutManager(lm);
+        }
+        mRecyclerView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mRecyclerView.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    private void assertOffsets(int position, int left, int top, int right, int bottom) {
+        RecyclerView.LayoutManager lm = mRecyclerView.getLayoutManager();
+        View child = lm.findViewByPosition(position);
+        assertNotNull("position " + position + " isn't laid out", child);
+        assertEquals(left, lm.getLeftDecorationWidth(child));
+        assertEquals(top, lm.getTopDecorationHeight(child));
+        assertEquals(right, lm.getRightDecorationWidth(child));
+        assertEquals(bottom, lm.getBottomDecorationHeight(child));
+    }
+
+    private static class ItemAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        int mItemCount;
+
+        ItemAdapter(int itemCount) {
+            mItemCount = itemCount;
+        }
+
+        @Override
+        public int getItemViewType(int position) {
+            return position % 2;
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            View view = new View(parent.getContext());
+            view.setLayoutParams(new RecyclerView.LayoutParams(ITEM_SIZE, ITEM_SIZE));
+            return new RecyclerView.ViewHolder(view) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return mItemCount;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.carl.recyclerview;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SlideInAnimatorTest {
+
+    private static final int ITEM_SIZE = 100;
+    /*
+     * Added to waits that should see animations finished, slots finish on the next frame
+     */
+    private static final long FRAME_SLACK_MILLIS = 50;
+
+    private RecordingAnimator mAnimator;
+    private int mAnimationsFinishedCount;
+    private final RecyclerView.ItemAnimator.ItemAnimatorFinishedListener mFinishedListener =
+            new RecyclerView.ItemAnimator.ItemAnimatorFinishedListener() {
+                @Override
+                public void onAnimationsFinished() {
+                    mAnimationsFinishedCount++;
+                }
+            };
+
+    @Before
+    public void setUp() {
+        mAnimator = new RecordingAnimator();
+    }
+
+    @Test
+    public void endAnimationInMiddleKeepsOtherSlots() throws Exception {
+        RecyclerView.ViewHolder[] holders = new RecyclerView.ViewHolder[4];
+        for (int i = 0; i < holders.length; i++) {
+            holders[i] = createHolder();
+            mAnimator.animateAdd(holders[i]);
+        }
+        mAnimator.runPendingAnimations();
+        advance(mAnimator.getAddDuration() / 2);
+        mAnimator.isRunning(mFinishedListener);
+
+        // The last slot moves into the place of the ended one
+        mAnimator.endAnimation(holders[1]);
+        assertEquals(Arrays.asList(holders[1]), mAnimator.mFinished);
+        assertNull(holders[1].itemView.getTag(R.id.slide_in_animator_slot));
+        assertEquals(1F, holders[1].itemView.getAlpha(), 0F);
+        for (int i : new int[]{0, 2, 3}) {
+            assertNotNull(holders[i].itemView.getTag(R.id.slide_in_animator_slot));
+            assertTrue(holders[i].itemView.getAlpha() < 1F);
+        }
+        assertTrue(mAnimator.isRunning());
+
+        // Every remaining holder still finds its own slot
+        for (int i : new int[]{3, 0, 2}) {
+            mAnimator.endAnimation(holders[i]);
+            assertSame(holders[i], mAnimator.mFinished.get(mAnimator.mFinished.size() - 1));
+            assertNull(holders[i].itemView.getTag(R.id.slide_in_animator_slot));
+        }
+        assertEquals(holders.length, mAnimator.mFinished.size());
+        assertFalse(mAnimator.isRunning());
+        assertEquals(1, mAnimationsFinishedCount);
+    }
+
+    @Test
+    public void endAnimationsFinishesStartedAndPendingSlots() throws Exception {
+        RecyclerView.ViewHolder removed = createHolder();
+        RecyclerView.ViewHolder added = createHolder();
+        RecyclerView.ViewHolder pending = createHolder();
+        mAnimator.animateRemove(removed);
+        mAnimator.animateAdd(added);
+        mAnimator.runPendingAnimations();
+        advance(mAnimator.getRemoveDuration() / 2);
+        mAnimator.animateAdd(pending);
+        mAnimator.isRunning(mFinishedListener);
+
+        mAnimator.endAnimations();
+        assertEquals(3, mAnimator.mFinished.size());
+        for (RecyclerView.ViewHolder holder : new RecyclerView.ViewHolder[]{removed, added,
+                pending}) {
+            assertTrue(mAnimator.mFinished.contains(holder));
+            assertNull(holder.itemView.getTag(R.id.slide_in_animator_slot));
+            assertEquals(0F, holder.itemView.getTranslationY(), 0F);
+            assertEquals(1F, holder.itemView.getAlpha(), 0F);
+        }
+        assertFalse(mAnimator.isRunning());
+        assertEquals(1, mAnimationsFinishedCount);
+
+        // Nothing is left to step once the driver would have run
+        advance(mAnimator.getAddDuration());
+        assertEquals(3, mAnimator.mFinished.size());
+        assertEquals(1, mAnimationsFinishedCount);
+    }
+
+    @Test
+    public void removalsRunBeforeMovesBeforeAdditions() throws Exception {
+        RecyclerView.ViewHolder added = createHolder();
+        RecyclerView.ViewHolder moved = createHolder();
+        RecyclerView.ViewHolder removed = createHolder();
+        // Queued in reverse to show the order doesn't depend on the calls
+        mAnimator.animateAdd(added);
+        mAnimator.animateMove(moved, 0, 0, 0, ITEM_SIZE);
+        mAnimator.animateRemove(removed);
+        mAnimator.runPendingAnimations();
+
+        long remove = mAnimator.getRemoveDuration();
+        long move = mAnimator.getMoveDuration();
+        advance(remove / 2);
+        assertTrue(removed.itemView.getAlpha() < 1F);
+        assertEquals(-ITEM_SIZE, moved.itemView.getTranslationY(), 0F);
+        assertEquals(0F, added.itemView.getAlpha(), 0F);
+
+        advance(remove / 2 + move / 2);
+        float translationY = moved.itemView.getTranslationY();
+        assertTrue(translationY > -ITEM_SIZE && translationY < 0F);
+        assertEquals(0F, added.itemView.getAlpha(), 0F);
+
+        advance(move / 2 + mAnimator.getAddDuration() + FRAME_SLACK_MILLIS);
+        assertEquals(Arrays.asList(removed, moved, added), mAnimator.mFinished);
+        assertEquals(Arrays.asList("remove", "move", "add"), mAnimator.mFinishedTypes);
+    }
+
+    @Test
+    public void runsUntilEverySlotFinishes() throws Exception {
+        RecyclerView.ViewHolder first = createHolder();
+        RecyclerView.ViewHolder second = createHolder();
+        assertFalse(mAnimator.isRunning());
+        mAnimator.animateAdd(first);
+        mAnimator.animateAdd(second);
+        // Pending animations count as running
+        assertTrue(mAnimator.isRunning());
+        mAnimator.runPendingAnimations();
+        mAnimator.isRunning(mFinishedListener);
+
+        advance(mAnimator.getAddDuration() / 2);
+        assertTrue(mAnimator.isRunning());
+        assertEquals(0, mAnimationsFinishedCount);
+
+        advance(mAnimator.getAddDuration() / 2 + FRAME_SLACK_MILLIS);
+        assertFalse(mAnimator.isRunning());
+        assertEquals(2, mAnimator.mFinished.size());
+        assertEquals(1, mAnimationsFinishedCount);
+        assertEquals(0F, first.itemView.getTranslationY(), 0F);
+        assertEquals(1F, second.itemView.getAlpha(), 0F);
+    }
+
+    private static RecyclerView.ViewHolder createHolder() {
+        View view = new View(RuntimeEnvironment.application);
+        view.layout(0, 0, ITEM_SIZE, ITEM_SIZE);
+        return new RecyclerView.ViewHolder(view) {
+        };
+    }
+
+    private static void advance(long millis) {
+        Robolectric.getForegroundThreadScheduler().advanceBy(millis);
+    }
+
+    /*
+     * Records finished holders and the kind of animation, in the order they finish
+     */
+    private static class RecordingAnimator extends SlideInAnimator {
+        final List<RecyclerView.ViewHolder> mFinished = new ArrayList<>();
+        final List<String> mFinishedTypes = new ArrayList<>();
+
+        @Override
+        public void onRemoveFinished(RecyclerView.ViewHolder item) {
+            mFinished.add(item);
+            mFinishedTypes.add("remove");
+        }
+
+        @Override
+        public void onMoveFinished(RecyclerView.ViewHolder item) {
+            mFinished.add(item);
+            mFinishedTypes.add("move");
+        }
+
+        @Override
+        public void onAddFinished(RecyclerView.ViewHolder item) {
+            mFinished.add(item);
+            mFinishedTypes.add("add");
+        }
+    }
+}
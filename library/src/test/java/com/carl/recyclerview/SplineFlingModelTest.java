@@ -0,0 +1,52 @@
+package com.carl.recyclerview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SplineFlingModelTest {
+
+    private static final int DENSITY_DPI = 480;
+    private static final double DECELERATION_RATE = Math.log(0.78D) / Math.log(0.9D);
+    private static final double FRICTION_COEFF =
+            SplineFlingModel.DEFAULT_FRICTION * 9.80665D * 39.37D * DENSITY_DPI * 0.84D;
+
+    private static double exactDistance(double velocity) {
+        double deceleration = Math.log(0.35D * velocity / FRICTION_COEFF);
+        return FRICTION_COEFF
+                * Math.exp(DECELERATION_RATE / (DECELERATION_RATE - 1D) * deceleration);
+    }
+
+    private static double exactDuration(double velocity) {
+        double deceleration = Math.log(0.35D * velocity / FRICTION_COEFF);
+        return 1000D * Math.exp(deceleration / (DECELERATION_RATE - 1D));
+    }
+
+    @Test
+    public void matchesSplineFormulas() throws Exception {
+        SplineFlingModel model = SplineFlingModel.forDensity(DENSITY_DPI);
+        for (int velocity = 500; velocity <= 24000; velocity += 500) {
+            double distance = exactDistance(velocity);
+            double duration = exactDuration(velocity);
+            assertEquals(distance, model.getDistance(velocity), distance * 0.01D);
+            assertEquals(-distance, model.getDistance(-velocity), distance * 0.01D);
+            assertEquals(duration, model.getDuration(velocity), duration * 0.01D + 1D);
+            assertEquals(duration, model.getDurationForDistance((float) distance),
+                    duration * 0.01D + 1D);
+        }
+    }
+
+    @Test
+    public void positionIsMonotonic() throws Exception {
+        assertEquals(0F, SplineFlingModel.getPosition(0F), 0F);
+        assertEquals(1F, SplineFlingModel.getPosition(1F), 0F);
+        float previous = 0F;
+        for (int i = 1; i <= 1000; i++) {
+            float position = SplineFlingModel.getPosition(i / 1000F);
+            assertTrue(position >= previous);
+            previous = position;
+        }
+        // Decelerating: more than half of the distance is covered in the first third
+        assertTrue(SplineFlingModel.getPosition(1F / 3F) > 0.5F);
+    }
+}
@@ -0,0 +1,69 @@
+package com.carl.recyclerview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SpringTest {
+
+    private static Spring newSpring(float dampingRatio, float from, float to) {
+        Spring spring = new Spring();
+        spring.setDampingRatio(dampingRatio);
+        spring.setSettleDuration(300);
+        spring.setRestThresholds(0.5F, 5F);
+        spring.setValue(from);
+        spring.setTarget(to);
+        return spring;
+    }
+
+    @Test
+    public void settlesWithinDuration() throws Exception {
+        float[] ratios = {0.6F, 1F, 1.5F};
+        for (float ratio : ratios) {
+            Spring spring = newSpring(ratio, 0F, 1000F);
+            long elapsed = 0;
+            while (!spring.isAtRest() && elapsed < 2000) {
+                spring.step(16);
+                elapsed += 16;
+            }
+            assertTrue("damping ratio " + ratio + " took " + elapsed, elapsed <= 600);
+            assertEquals(1000F, spring.getValue(), 0.5F);
+        }
+    }
+
+    @Test
+    public void criticallyDampedDoesNotOvershoot() throws Exception {
+        Spring spring = newSpring(1F, 0F, 1000F);
+        for (int i = 0; i < 60; i++) {
+            spring.step(16);
+            assertTrue(spring.getValue() <= 1000F + 0.01F);
+        }
+    }
+
+    @Test
+    public void stepSizeDoesNotMatter() throws Exception {
+        Spring fine = newSpring(0.6F, 0F, 1000F);
+        Spring coarse = newSpring(0.6F, 0F, 1000F);
+        for (int i = 0; i < 12; i++) {
+            fine.step(4);
+        }
+        coarse.step(48);
+        assertEquals(fine.getValue(), coarse.getValue(), 0.01F);
+        assertEquals(fine.getVelocity(), coarse.getVelocity(), 0.1F);
+    }
+
+    @Test
+    public void retargetKeepsVelocity() throws Exception {
+        Spring spring = newSpring(1F, 0F, 1000F);
+        spring.setVelocity(3000F);
+        spring.step(32);
+        float value = spring.getValue();
+        float velocity = spring.getVelocity();
+        spring.setTarget(0F);
+        assertEquals(value, spring.getValue(), 0F);
+        assertEquals(velocity, spring.getVelocity(), 0F);
+        // Still moving away from the new target right after retargeting
+        spring.step(1);
+        assertTrue(spring.getValue() > value);
+    }
+}
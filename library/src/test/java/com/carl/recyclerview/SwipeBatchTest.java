@@ -0,0 +1,112 @@
+package com.carl.recyclerview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SwipeBatchTest {
+
+    @Test
+    public void contiguousPositionsMakeOneRange() throws Exception {
+        SwipeBatch batch = new SwipeBatch();
+        batch.add(3, 1F);
+        batch.add(4, 2F);
+        batch.add(5, 3F);
+        assertEquals(3, batch.getCount());
+        assertEquals(1, batch.getRangeCount());
+        assertEquals(3, batch.getRangeStart(0));
+        assertEquals(3, batch.getRangeItemCount(0));
+    }
+
+    @Test
+    public void nonContiguousPositionsMakeRangesFromTheEnd() throws Exception {
+        SwipeBatch batch = new SwipeBatch();
+        batch.add(1, 0F);
+        batch.add(2, 0F);
+        batch.add(5, 0F);
+        batch.add(9, 0F);
+        assertEquals(3, batch.getRangeCount());
+        assertRange(batch, 0, 9, 1);
+        assertRange(batch, 1, 5, 1);
+        assertRange(batch, 2, 1, 2);
+    }
+
+    @Test
+    public void outOfOrderPositionsAreSorted() throws Exception {
+        SwipeBatch batch = new SwipeBatch();
+        int[] positions = {7, 2, 6, 0, 3};
+        for (int position : positions) {
+            batch.add(position, position * 10F);
+        }
+        int[] sorted = {0, 2, 3, 6, 7};
+        assertEquals(sorted.length, batch.getCount());
+        for (int i = 0; i < sorted.length; i++) {
+            assertEquals(sorted[i], batch.getPosition(i));
+            assertEquals(sorted[i] * 10F, batch.getDistance(i), 0F);
+        }
+        assertEquals(3, batch.getRangeCount());
+        assertRange(batch, 0, 6, 2);
+        assertRange(batch, 1, 2, 2);
+        assertRange(batch, 2, 0, 1);
+    }
+
+    @Test
+    public void duplicatePositionKeepsLatestDistance() throws Exception {
+        SwipeBatch batch = new SwipeBatch();
+        batch.add(4, 1F);
+        batch.add(5, 2F);
+        batch.add(4, -3F);
+        assertEquals(2, batch.getCount());
+        assertEquals(4, batch.getPosition(0));
+        assertEquals(-3F, batch.getDistance(0), 0F);
+        assertEquals(1, batch.getRangeCount());
+        assertRange(batch, 0, 4, 2);
+    }
+
+    @Test
+    public void removingRangesInOrderKeepsPositionsValid() throws Exception {
+        SwipeBatch batch = new SwipeBatch();
+        // More positions and ranges than the initial capacity
+        int[] positions = {30, 1, 17, 2, 3, 25, 9, 11, 10, 28, 0, 21, 14};
+        for (int position : positions) {
+            batch.add(position, 0F);
+        }
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            items.add(i);
+        }
+        int lastStart = Integer.MAX_VALUE;
+        for (int range = 0; range < batch.getRangeCount(); range++) {
+            int start = batch.getRangeStart(range);
+            assertTrue(start < lastStart);
+            lastStart = start;
+            for (int i = 0; i < batch.getRangeItemCount(range); i++) {
+                items.remove(start);
+            }
+        }
+        assertEquals(32 - positions.length, items.size());
+        for (int position : positions) {
+            assertFalse(items.contains(position));
+        }
+    }
+
+    @Test
+    public void clearEmptiesTheBatch() throws Exception {
+        SwipeBatch batch = new SwipeBatch();
+        batch.add(2, 0F);
+        batch.clear();
+        assertEquals(0, batch.getCount());
+        assertEquals(0, batch.getRangeCount());
+        batch.add(8, 0F);
+        assertEquals(1, batch.getCount());
+        assertRange(batch, 0, 8, 1);
+    }
+
+    private static void assertRange(SwipeBatch batch, int range, int start, int itemCount) {
+        assertEquals(start, batch.getRangeStart(range));
+        assertEquals(itemCount, batch.getRangeItemCount(range));
+    }
+}
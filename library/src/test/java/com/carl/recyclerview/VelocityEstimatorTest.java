@@ -0,0 +1,65 @@
+package com.carl.recyclerview;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VelocityEstimatorTest {
+
+    private static final float DELTA = 0.5F;
+
+    private VelocityEstimator mEstimator;
+
+    @Before
+    public void setUp() {
+        mEstimator = new VelocityEstimator();
+    }
+
+    @Test
+    public void constantVelocity() throws Exception {
+        // 2 px/ms along X, -1 px/ms along Y, sampled every 8ms
+        for (int i = 0; i < 10; i++) {
+            mEstimator.addSample(0, 1000 + i * 8, i * 16F, 500F - i * 8F);
+        }
+        assertEquals(2000F, mEstimator.getXVelocity(0), DELTA);
+        assertEquals(-1000F, mEstimator.getYVelocity(0), DELTA);
+    }
+
+    @Test
+    public void pointersAreIndependent() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            mEstimator.addSample(0, i * 8, i * 8F, 0F);
+            mEstimator.addSample(5, i * 8, 0F, i * 24F);
+        }
+        assertEquals(1000F, mEstimator.getXVelocity(0), DELTA);
+        assertEquals(0F, mEstimator.getYVelocity(0), DELTA);
+        assertEquals(0F, mEstimator.getXVelocity(5), DELTA);
+        assertEquals(3000F, mEstimator.getYVelocity(5), DELTA);
+        assertEquals(0F, mEstimator.getXVelocity(1), 0F);
+    }
+
+    @Test
+    public void onlyRecentSamplesCount() throws Exception {
+        // Slow samples wrap around the ring and fall out of the horizon
+        for (int i = 0; i < 40; i++) {
+            mEstimator.addSample(0, i * 8, i * 1F, 0F);
+        }
+        long start = 40 * 8;
+        for (int i = 0; i < 15; i++) {
+            mEstimator.addSample(0, start + i * 8, 40F + i * 40F, 0F);
+        }
+        assertEquals(5000F, mEstimator.getXVelocity(0), DELTA);
+    }
+
+    @Test
+    public void pauseStopsThePointer() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            mEstimator.addSample(0, i * 8, i * 16F, 0F);
+        }
+        mEstimator.addSample(0, 72 + VelocityEstimator.ASSUME_STOPPED_MILLIS + 1, 144F, 0F);
+        assertEquals(0F, mEstimator.getXVelocity(0), 0F);
+        mEstimator.clear(0);
+        assertEquals(0F, mEstimator.getXVelocity(0), 0F);
+    }
+}